@@ -0,0 +1,68 @@
+package my.project;
+
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.annotation.WebFilter;
+import jakarta.servlet.http.HttpFilter;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import my.project.util.ConfigUtil;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+
+/**
+ * Keeps the metrics off the public path. With METRICS_TOKEN set a request must carry it as a
+ * bearer token, otherwise only requests from the local host are let through. Behind a reverse
+ * proxy on the same host every request comes from the local host, so the token should be set.
+ * Denied requests get a 404, as if there were no metrics.
+ */
+@WebFilter("/metrics")
+public class MetricsAccessFilter extends HttpFilter {
+    private static final String BEARER = "Bearer ";
+
+    private final String token;
+
+    public MetricsAccessFilter() {
+        this(ConfigUtil.getString("METRICS_TOKEN", null));
+    }
+
+    MetricsAccessFilter(String token) {
+        this.token = token;
+    }
+
+    @Override
+    protected void doFilter(HttpServletRequest req, HttpServletResponse res, FilterChain chain) throws IOException, ServletException {
+        if (!isAllowed(req)) {
+            res.sendError(HttpServletResponse.SC_NOT_FOUND);
+            return;
+        }
+
+        chain.doFilter(req, res);
+    }
+
+    private boolean isAllowed(HttpServletRequest req) {
+        if (token != null) {
+            String authorization = req.getHeader("Authorization");
+            return authorization != null && authorization.startsWith(BEARER)
+                    && MessageDigest.isEqual(authorization.substring(BEARER.length()).getBytes(StandardCharsets.UTF_8),
+                    token.getBytes(StandardCharsets.UTF_8));
+        }
+        return isLocal(req.getRemoteAddr());
+    }
+
+    private static boolean isLocal(String remoteAddress) {
+        if (remoteAddress == null) {
+            return false;
+        }
+        try {
+            // The address is a literal, so nothing is looked up
+            return InetAddress.getByName(remoteAddress).isLoopbackAddress();
+        } catch (UnknownHostException e) {
+            return false;
+        }
+    }
+}
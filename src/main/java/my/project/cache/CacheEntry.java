@@ -0,0 +1,30 @@
+package my.project.cache;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.time.Instant;
+
+@Getter
+@AllArgsConstructor
+public class CacheEntry<V> {
+    private final V value;
+
+    private final Instant storedAt;
+
+    // Past this time the entry is still served, but should be fetched again
+    private final Instant staleAt;
+
+    private final Instant expiresAt;
+
+    // Approximate size in bytes, zero for caches bounded by entry count only
+    private final long weight;
+
+    public boolean isStaleAt(Instant time) {
+        return !time.isBefore(staleAt);
+    }
+
+    public boolean isExpiredAt(Instant time) {
+        return !time.isBefore(expiresAt);
+    }
+}
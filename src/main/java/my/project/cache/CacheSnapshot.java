@@ -0,0 +1,247 @@
+package my.project.cache;
+
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.util.ByteBufferBackedInputStream;
+import my.project.util.FileUtil;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.UserPrincipal;
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Writes the content of several caches to one file and reads it back, so a restarted application
+ * does not have to fetch everything from the api again.
+ * <p>
+ * The file starts with a magic number and a format version, followed by one section per cache:
+ * the cache name, the section length and the entries. An entry is its key, the stored, stale and
+ * expiration times in epoch millis, and the value as length-prefixed JSON. Sections of unknown
+ * caches are skipped, so caches can be added or removed between versions of the application.
+ * <p>
+ * Values are deserialized from the file, so only a regular file owned by the user of the process
+ * is read, and files and directories are created accessible to that user only.
+ */
+public class CacheSnapshot {
+    private static final int MAGIC = 0x57534E50;
+    private static final int VERSION = 1;
+
+    private final Map<String, Section<?, ?>> sections = new LinkedHashMap<>();
+    private int skippedEntries;
+
+    public <K, V> CacheSnapshot register(String name, LruCache<K, V> cache, KeyCodec<K> keyCodec,
+                                         ObjectWriter valueWriter, ObjectReader valueReader) {
+        sections.put(name, new Section<>(cache, keyCodec, valueWriter, valueReader));
+        return this;
+    }
+
+    /**
+     * Written to a temporary file first and moved in place, so a crash while writing never
+     * leaves a truncated snapshot behind
+     *
+     * @return number of written entries
+     */
+    public int write(Path path) throws IOException {
+        Path tempPath = path.resolveSibling(path.getFileName() + ".tmp");
+        int written = 0;
+
+        FileUtil.createPrivateDirectories(path.toAbsolutePath().getParent());
+        // Created anew, so a link left in its place is not followed
+        Files.deleteIfExists(tempPath);
+        FileUtil.createPrivateFile(tempPath);
+
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                Files.newOutputStream(tempPath, StandardOpenOption.WRITE, LinkOption.NOFOLLOW_LINKS)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(sections.size());
+
+            for (Map.Entry<String, Section<?, ?>> section : sections.entrySet()) {
+                ByteArrayOutputStream sectionBytes = new ByteArrayOutputStream();
+                written += section.getValue().write(new DataOutputStream(sectionBytes));
+
+                writeString(out, section.getKey());
+                out.writeInt(sectionBytes.size());
+                sectionBytes.writeTo(out);
+            }
+        }
+
+        Files.move(tempPath, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return written;
+    }
+
+    /**
+     * The file is mapped rather than read, values are parsed straight from the mapped pages.
+     * Entries whose value cannot be parsed are skipped, see {@link #getSkippedEntries()}.
+     *
+     * @return number of restored entries, expired ones are not counted
+     */
+    public int load(Path path) throws IOException {
+        skippedEntries = 0;
+        if (!Files.exists(path, LinkOption.NOFOLLOW_LINKS)) {
+            return 0;
+        }
+        checkOwnedByProcess(path);
+
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+
+            if (buffer.remaining() < 2 * Integer.BYTES || buffer.getInt() != MAGIC) {
+                throw new IOException("File " + path + " is not a cache snapshot");
+            }
+            int version = buffer.getInt();
+            if (version != VERSION) {
+                throw new IOException("Unsupported cache snapshot version " + version);
+            }
+
+            int restored = 0;
+            int sectionCount = buffer.getInt();
+
+            for (int i = 0; i < sectionCount; i++) {
+                String name = readString(buffer);
+                int length = buffer.getInt();
+
+                ByteBuffer sectionBuffer = buffer.slice();
+                sectionBuffer.limit(length);
+                buffer.position(buffer.position() + length);
+
+                Section<?, ?> section = sections.get(name);
+                if (section != null) {
+                    restored += section.load(sectionBuffer);
+                    skippedEntries += section.skipped;
+                }
+            }
+            return restored;
+
+        } catch (BufferUnderflowException | IllegalArgumentException e) {
+            throw new IOException("Cache snapshot " + path + " is truncated", e);
+        }
+    }
+
+    /**
+     * Entries of the last {@link #load(Path)} whose value could not be parsed
+     */
+    public int getSkippedEntries() {
+        return skippedEntries;
+    }
+
+    public static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    public static String readString(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.getInt()];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static void checkOwnedByProcess(Path path) throws IOException {
+        if (!Files.isRegularFile(path, LinkOption.NOFOLLOW_LINKS)) {
+            throw new IOException("Cache snapshot " + path + " is not a regular file");
+        }
+
+        UserPrincipal owner = Files.getOwner(path, LinkOption.NOFOLLOW_LINKS);
+        UserPrincipal processUser = path.getFileSystem().getUserPrincipalLookupService()
+                .lookupPrincipalByName(System.getProperty("user.name"));
+        if (!owner.equals(processUser)) {
+            throw new IOException("Cache snapshot " + path + " is owned by " + owner.getName()
+                    + " instead of " + processUser.getName());
+        }
+    }
+
+    public interface KeyCodec<K> {
+        void write(DataOutputStream out, K key) throws IOException;
+
+        K read(ByteBuffer buffer);
+    }
+
+    private static class Section<K, V> {
+        private final LruCache<K, V> cache;
+        private final KeyCodec<K> keyCodec;
+        private final ObjectWriter valueWriter;
+        private final ObjectReader valueReader;
+        // Entries of the last load whose value could not be parsed
+        private int skipped;
+
+        private Section(LruCache<K, V> cache, KeyCodec<K> keyCodec, ObjectWriter valueWriter, ObjectReader valueReader) {
+            this.cache = cache;
+            this.keyCodec = keyCodec;
+            this.valueWriter = valueWriter;
+            this.valueReader = valueReader;
+        }
+
+        private int write(DataOutputStream out) throws IOException {
+            List<Map.Entry<K, CacheEntry<V>>> entries = cache.entries();
+            out.writeInt(entries.size());
+
+            for (Map.Entry<K, CacheEntry<V>> entry : entries) {
+                CacheEntry<V> cacheEntry = entry.getValue();
+                byte[] value = valueWriter.writeValueAsBytes(cacheEntry.getValue());
+
+                keyCodec.write(out, entry.getKey());
+                out.writeLong(cacheEntry.getStoredAt().toEpochMilli());
+                out.writeLong(cacheEntry.getStaleAt().toEpochMilli());
+                out.writeLong(cacheEntry.getExpiresAt().toEpochMilli());
+                out.writeInt(value.length);
+                out.write(value);
+            }
+            return entries.size();
+        }
+
+        private int load(ByteBuffer buffer) {
+            int restored = 0;
+            skipped = 0;
+            int count = buffer.getInt();
+
+            // Written from the least recently used, so the recency order is kept
+            for (int i = 0; i < count; i++) {
+                K key = keyCodec.read(buffer);
+                Instant storedAt = Instant.ofEpochMilli(buffer.getLong());
+                Instant staleAt = Instant.ofEpochMilli(buffer.getLong());
+                Instant expiresAt = Instant.ofEpochMilli(buffer.getLong());
+                int length = buffer.getInt();
+
+                if (!Instant.now().isBefore(expiresAt)) {
+                    // Not worth parsing
+                    buffer.position(buffer.position() + length);
+                    continue;
+                }
+
+                ByteBuffer valueBuffer = buffer.slice();
+                valueBuffer.limit(length);
+                buffer.position(buffer.position() + length);
+
+                // Values are length-prefixed, so one that cannot be parsed does not stop the others
+                V value;
+                try {
+                    value = valueReader.readValue(new ByteBufferBackedInputStream(valueBuffer));
+                } catch (IOException e) {
+                    skipped++;
+                    continue;
+                }
+
+                if (cache.restore(key, value, storedAt, staleAt, expiresAt)) {
+                    restored++;
+                }
+            }
+            return restored;
+        }
+    }
+}
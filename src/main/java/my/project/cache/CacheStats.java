@@ -0,0 +1,26 @@
+package my.project.cache;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+@Getter
+@AllArgsConstructor
+public class CacheStats {
+    private final long hits;
+
+    // Included in hits
+    private final long staleHits;
+
+    private final long misses;
+
+    private final long evictions;
+
+    private final int size;
+
+    private final long weight;
+
+    public double getHitRatio() {
+        long requests = hits + misses;
+        return requests == 0 ? 0.0 : (double) hits / requests;
+    }
+}
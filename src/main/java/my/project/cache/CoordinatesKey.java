@@ -0,0 +1,42 @@
+package my.project.cache;
+
+import lombok.AccessLevel;
+import lombok.AllArgsConstructor;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.ToString;
+import my.project.model.Location;
+import my.project.util.ConfigUtil;
+
+/**
+ * Coordinates snapped to a grid, so places a few hundred meters apart share cached data and
+ * api calls. The default cell of 0.01 degrees is about 1.1 km of latitude, zero keeps
+ * the exact coordinates.
+ */
+@Getter
+@EqualsAndHashCode
+@ToString
+@AllArgsConstructor(access = AccessLevel.PRIVATE)
+public class CoordinatesKey {
+    private static final double GRID_DEGREES = ConfigUtil.getDouble("COORDINATES_GRID_DEGREES", 0.01);
+
+    private final double latitude;
+
+    private final double longitude;
+
+    public static CoordinatesKey of(Location location) {
+        return of(location.getLatitude(), location.getLongitude());
+    }
+
+    public static CoordinatesKey of(double latitude, double longitude) {
+        return new CoordinatesKey(quantize(latitude, GRID_DEGREES), quantize(longitude, GRID_DEGREES));
+    }
+
+    static double quantize(double coordinate, double gridDegrees) {
+        if (gridDegrees <= 0) {
+            return coordinate;
+        }
+        // Computed from the cell index, so all coordinates of a cell give the very same double
+        return Math.round(coordinate / gridDegrees) * gridDegrees;
+    }
+}
@@ -0,0 +1,234 @@
+package my.project.cache;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.ToLongBiFunction;
+
+/**
+ * Size-bounded cache with least recently used eviction and per-entry expiration.
+ * Expired entries are removed lazily, when they are read or pushed out by new ones.
+ * <p>
+ * Optionally an entry outlives its time to live by a max staleness. During that grace period it is
+ * still returned, but reported as stale, so callers can serve it while fetching a fresh one.
+ * <p>
+ * Optionally the cache is also bounded by the total weight of its entries, where the weight is
+ * an approximate size in bytes given by a weigher function.
+ */
+public class LruCache<K, V> {
+    private final int maxSize;
+    private final long maxWeight;
+    private final Duration timeToLive;
+    private final Duration maxStaleness;
+    private final ToLongBiFunction<K, V> weigher;
+    private final Clock clock;
+
+    // Insertion order, a use moves the entry to the end, so the eldest entry is the least recently
+    // used one. Access order would also move entries that are only peeked at.
+    private final LinkedHashMap<K, CacheEntry<V>> entries = new LinkedHashMap<>();
+    private long totalWeight;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong staleHits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    public LruCache(int maxSize, Duration timeToLive) {
+        this(maxSize, timeToLive, Clock.systemUTC());
+    }
+
+    public LruCache(int maxSize, Duration timeToLive, Clock clock) {
+        this(maxSize, timeToLive, Duration.ZERO, clock);
+    }
+
+    public LruCache(int maxSize, Duration timeToLive, Duration maxStaleness) {
+        this(maxSize, timeToLive, maxStaleness, Clock.systemUTC());
+    }
+
+    public LruCache(int maxSize, Duration timeToLive, Duration maxStaleness, Clock clock) {
+        this(maxSize, Long.MAX_VALUE, timeToLive, maxStaleness, (key, value) -> 0, clock);
+    }
+
+    public LruCache(int maxSize, long maxWeight, Duration timeToLive, ToLongBiFunction<K, V> weigher) {
+        this(maxSize, maxWeight, timeToLive, Duration.ZERO, weigher, Clock.systemUTC());
+    }
+
+    public LruCache(int maxSize, long maxWeight, Duration timeToLive, Duration maxStaleness,
+                    ToLongBiFunction<K, V> weigher, Clock clock) {
+        if (maxSize <= 0) {
+            throw new IllegalArgumentException("Max size must be positive: " + maxSize);
+        }
+        if (maxWeight <= 0) {
+            throw new IllegalArgumentException("Max weight must be positive: " + maxWeight);
+        }
+        this.maxSize = maxSize;
+        this.maxWeight = maxWeight;
+        this.timeToLive = timeToLive;
+        this.maxStaleness = maxStaleness;
+        this.weigher = weigher;
+        this.clock = clock;
+    }
+
+    public Optional<V> get(K key) {
+        return getEntry(key).map(CacheEntry::getValue);
+    }
+
+    public synchronized Optional<CacheEntry<V>> getEntry(K key) {
+        CacheEntry<V> entry = entries.get(key);
+
+        if (entry == null) {
+            misses.incrementAndGet();
+            return Optional.empty();
+        }
+
+        Instant now = clock.instant();
+        if (entry.isExpiredAt(now)) {
+            remove(key);
+            misses.incrementAndGet();
+            return Optional.empty();
+        }
+
+        moveToEnd(key, entry);
+        hits.incrementAndGet();
+        if (entry.isStaleAt(now)) {
+            staleHits.incrementAndGet();
+        }
+        return Optional.of(entry);
+    }
+
+    /**
+     * Same as {@link #getEntry(Object)} but not counted as a hit or a miss and not as a use, so
+     * the entry is not kept any longer for it. For lookups made by the application itself rather
+     * than on behalf of a user request.
+     */
+    public synchronized Optional<CacheEntry<V>> peekEntry(K key) {
+        CacheEntry<V> entry = entries.get(key);
+
+        if (entry == null || entry.isExpiredAt(clock.instant())) {
+            return Optional.empty();
+        }
+        return Optional.of(entry);
+    }
+
+    public void put(K key, V value) {
+        put(key, value, clock.instant().plus(timeToLive));
+    }
+
+    /**
+     * Stores an entry that becomes stale at the given time, it expires once the max staleness
+     * has passed after that
+     */
+    public synchronized void put(K key, V value, Instant staleAt) {
+        long weight = weigher.applyAsLong(key, value);
+        if (weight > maxWeight) {
+            // Would push out every other entry and still not fit
+            remove(key);
+            return;
+        }
+
+        CacheEntry<V> entry = new CacheEntry<>(value, clock.instant(), staleAt, staleAt.plus(maxStaleness), weight);
+
+        // Removed first, replacing the value would leave the entry where it was
+        CacheEntry<V> previous = entries.remove(key);
+        entries.put(key, entry);
+        if (previous != null) {
+            totalWeight -= previous.getWeight();
+        }
+        totalWeight += weight;
+
+        if (entries.size() > maxSize || totalWeight > maxWeight) {
+            evictEldest();
+        }
+    }
+
+    /**
+     * Copy of all unexpired entries, from the least to the most recently used
+     */
+    public synchronized List<Map.Entry<K, CacheEntry<V>>> entries() {
+        Instant now = clock.instant();
+        List<Map.Entry<K, CacheEntry<V>>> copy = new ArrayList<>(entries.size());
+
+        for (Map.Entry<K, CacheEntry<V>> entry : entries.entrySet()) {
+            if (!entry.getValue().isExpiredAt(now)) {
+                copy.add(Map.entry(entry.getKey(), entry.getValue()));
+            }
+        }
+        return copy;
+    }
+
+    /**
+     * Puts back an entry taken from {@link #entries()} with its original timestamps,
+     * entries that have expired meanwhile are dropped. The cache may already be in use while
+     * entries are restored, so an entry stored at the same time or later is kept.
+     *
+     * @return whether the entry was stored
+     */
+    public synchronized boolean restore(K key, V value, Instant storedAt, Instant staleAt, Instant expiresAt) {
+        Instant now = clock.instant();
+        long weight = weigher.applyAsLong(key, value);
+        if (!now.isBefore(expiresAt) || weight > maxWeight) {
+            return false;
+        }
+
+        CacheEntry<V> current = entries.get(key);
+        if (current != null && !current.isExpiredAt(now) && !current.getStoredAt().isBefore(storedAt)) {
+            return false;
+        }
+
+        CacheEntry<V> previous = entries.remove(key);
+        entries.put(key, new CacheEntry<>(value, storedAt, staleAt, expiresAt, weight));
+        if (previous != null) {
+            totalWeight -= previous.getWeight();
+        }
+        totalWeight += weight;
+
+        if (entries.size() > maxSize || totalWeight > maxWeight) {
+            evictEldest();
+        }
+        return true;
+    }
+
+    public synchronized void invalidate(K key) {
+        remove(key);
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public synchronized long weight() {
+        return totalWeight;
+    }
+
+    public synchronized CacheStats getStats() {
+        return new CacheStats(hits.get(), staleHits.get(), misses.get(), evictions.get(), entries.size(), totalWeight);
+    }
+
+    private void remove(K key) {
+        CacheEntry<V> removed = entries.remove(key);
+        if (removed != null) {
+            totalWeight -= removed.getWeight();
+        }
+    }
+
+    private void moveToEnd(K key, CacheEntry<V> entry) {
+        entries.remove(key);
+        entries.put(key, entry);
+    }
+
+    private void evictEldest() {
+        Iterator<Map.Entry<K, CacheEntry<V>>> iterator = entries.entrySet().iterator();
+        while ((entries.size() > maxSize || totalWeight > maxWeight) && iterator.hasNext()) {
+            totalWeight -= iterator.next().getValue().getWeight();
+            iterator.remove();
+            evictions.incrementAndGet();
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package my.project.cache;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Coalesces concurrent calls with the same key: while a call is in flight, callers asking for
+ * the same key get the result of that call instead of starting their own.
+ * Once the call completes, the next caller starts a new one.
+ */
+public class SingleFlight<K, V> {
+    private final ConcurrentMap<K, CompletableFuture<V>> inFlight = new ConcurrentHashMap<>();
+
+    private final AtomicLong calls = new AtomicLong();
+    private final AtomicLong coalescedCalls = new AtomicLong();
+
+    public CompletableFuture<V> execute(K key, Supplier<CompletableFuture<V>> call) {
+        calls.incrementAndGet();
+
+        CompletableFuture<V> flight = new CompletableFuture<>();
+        CompletableFuture<V> existingFlight = inFlight.putIfAbsent(key, flight);
+
+        if (existingFlight != null) {
+            coalescedCalls.incrementAndGet();
+            // Copy, so one caller can not complete or cancel the future shared with others
+            return existingFlight.copy();
+        }
+
+        try {
+            call.get().whenComplete((value, throwable) -> {
+                // Removed before completion, so callers woken up by it never join a finished flight
+                inFlight.remove(key, flight);
+
+                if (throwable != null) {
+                    flight.completeExceptionally(unwrap(throwable));
+                } else {
+                    flight.complete(value);
+                }
+            });
+
+        } catch (RuntimeException e) {
+            inFlight.remove(key, flight);
+            flight.completeExceptionally(e);
+        }
+
+        return flight.copy();
+    }
+
+    public long getCalls() {
+        return calls.get();
+    }
+
+    public long getCoalescedCalls() {
+        return coalescedCalls.get();
+    }
+
+    public int getInFlightCalls() {
+        return inFlight.size();
+    }
+
+    private static Throwable unwrap(Throwable throwable) {
+        if (throwable instanceof CompletionException && throwable.getCause() != null) {
+            return throwable.getCause();
+        }
+        return throwable;
+    }
+}
@@ -28,6 +28,13 @@ public class LocationDao {
         return query.getResultList();
     }
 
+    public List<Location> findTracked() {
+        TypedQuery<Location> query = entityManager.createQuery("SELECT DISTINCT l FROM Location l " +
+                        "JOIN l.users u",
+                Location.class);
+        return query.getResultList();
+    }
+
     public Optional<Location> findByCoordinates(Double latitude, Double longitude) {
         TypedQuery<Location> query = entityManager.createQuery("SELECT l FROM Location l " +
                         "WHERE l.latitude = :latitude AND " +
@@ -0,0 +1,38 @@
+package my.project.history;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Reads what {@link BitOutput} wrote, straight from a possibly memory-mapped buffer
+ */
+class BitInput {
+    private final ByteBuffer buffer;
+    private final int offset;
+    private long bitPosition;
+
+    BitInput(ByteBuffer buffer, int offset) {
+        this.buffer = buffer;
+        this.offset = offset;
+    }
+
+    boolean readBit() {
+        return readBits(1) == 1;
+    }
+
+    long readBits(int count) {
+        long value = 0;
+
+        while (count > 0) {
+            int current = buffer.get(offset + (int) (bitPosition >>> 3)) & 0xff;
+
+            int available = 8 - (int) (bitPosition & 7);
+            int taken = Math.min(available, count);
+            int bits = (current >>> (available - taken)) & ((1 << taken) - 1);
+
+            value = (value << taken) | bits;
+            bitPosition += taken;
+            count -= taken;
+        }
+        return value;
+    }
+}
@@ -0,0 +1,43 @@
+package my.project.history;
+
+import java.util.Arrays;
+
+/**
+ * Growing buffer written bit by bit, most significant bit first
+ */
+class BitOutput {
+    private byte[] bytes = new byte[256];
+    private long bitCount;
+
+    void writeBit(boolean bit) {
+        writeBits(bit ? 1 : 0, 1);
+    }
+
+    /**
+     * Writes the lowest {@code count} bits of the value, at most 64
+     */
+    void writeBits(long value, int count) {
+        while (count > 0) {
+            int byteIndex = (int) (bitCount >>> 3);
+            if (byteIndex == bytes.length) {
+                bytes = Arrays.copyOf(bytes, bytes.length * 2);
+            }
+
+            int free = 8 - (int) (bitCount & 7);
+            int taken = Math.min(free, count);
+            int bits = (int) (value >>> (count - taken)) & ((1 << taken) - 1);
+
+            bytes[byteIndex] |= (byte) (bits << (free - taken));
+            bitCount += taken;
+            count -= taken;
+        }
+    }
+
+    int byteLength() {
+        return (int) ((bitCount + 7) >>> 3);
+    }
+
+    byte[] toByteArray() {
+        return Arrays.copyOf(bytes, byteLength());
+    }
+}
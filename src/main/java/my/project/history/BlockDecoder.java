@@ -0,0 +1,98 @@
+package my.project.history;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Reads a block written by {@link BlockEncoder} one observation at a time, the values array
+ * is reused for every observation
+ */
+class BlockDecoder {
+    private static final int COLUMNS = BlockEncoder.COLUMNS;
+
+    private final BitInput in;
+    private final int count;
+    private int read;
+
+    private long time;
+    private long gap;
+
+    private final long[] bits = new long[COLUMNS];
+    private final int[] leadingZeros = new int[COLUMNS];
+    private final int[] trailingZeros = new int[COLUMNS];
+    private final double[] values = new double[COLUMNS];
+
+    BlockDecoder(ByteBuffer buffer, int offset, long firstTime, int count) {
+        this.in = new BitInput(buffer, offset);
+        this.time = firstTime;
+        this.count = count;
+        Arrays.fill(leadingZeros, -1);
+    }
+
+    boolean next() {
+        if (read == count) {
+            return false;
+        }
+
+        if (read > 0) {
+            readTime();
+        }
+
+        for (int column = 0; column < COLUMNS; column++) {
+            if (read == 0) {
+                bits[column] = in.readBits(64);
+            } else {
+                readValue(column);
+            }
+            values[column] = Double.longBitsToDouble(bits[column]);
+        }
+
+        read++;
+        return true;
+    }
+
+    long getTime() {
+        return time;
+    }
+
+    /**
+     * Metrics in their declaration order followed by the condition code
+     */
+    double[] getValues() {
+        return values;
+    }
+
+    private void readTime() {
+        long gapChange;
+
+        if (!in.readBit()) {
+            gapChange = 0;
+        } else if (!in.readBit()) {
+            gapChange = in.readBits(7) - 63;
+        } else if (!in.readBit()) {
+            gapChange = in.readBits(9) - 255;
+        } else if (!in.readBit()) {
+            gapChange = in.readBits(12) - 2047;
+        } else {
+            gapChange = in.readBits(64);
+        }
+
+        gap += gapChange;
+        time += gap;
+    }
+
+    private void readValue(int column) {
+        if (!in.readBit()) {
+            return;
+        }
+
+        if (in.readBit()) {
+            leadingZeros[column] = (int) in.readBits(5);
+            int meaningfulBits = (int) in.readBits(6) + 1;
+            trailingZeros[column] = 64 - leadingZeros[column] - meaningfulBits;
+        }
+
+        int meaningfulBits = 64 - leadingZeros[column] - trailingZeros[column];
+        bits[column] ^= in.readBits(meaningfulBits) << trailingZeros[column];
+    }
+}
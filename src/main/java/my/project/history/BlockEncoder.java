@@ -0,0 +1,135 @@
+package my.project.history;
+
+import java.util.Arrays;
+
+/**
+ * Compresses observations of one location in the way of Facebook's Gorilla. Observations come
+ * at a steady pace, so a time is stored as the change of the gap to the previous one, which is
+ * a single bit while the pace holds. A value is stored as the bits that differ from the previous
+ * value of the same metric, which is a single bit while it does not change and otherwise mostly
+ * the changed middle bits. The condition code is encoded as one more value.
+ * <p>
+ * The first time of a block is kept in its header, so it is not part of the encoded bits.
+ */
+class BlockEncoder {
+    static final int COLUMNS = Metric.values().length + 1;
+
+    private final BitOutput out = new BitOutput();
+    private final long firstTime;
+    private long lastTime;
+    private long lastGap;
+    private int count;
+
+    private final long[] lastBits = new long[COLUMNS];
+    // Window of meaningful bits of the previous value, -1 until there is one
+    private final int[] lastLeadingZeros = new int[COLUMNS];
+    private final int[] lastTrailingZeros = new int[COLUMNS];
+
+    BlockEncoder(long firstTime) {
+        this.firstTime = firstTime;
+        this.lastTime = firstTime;
+        Arrays.fill(lastLeadingZeros, -1);
+    }
+
+    /**
+     * @param time no earlier than the time of the previous observation
+     */
+    void add(long time, double[] values) {
+        if (count == 0) {
+            if (time != firstTime) {
+                throw new IllegalArgumentException("First observation must be at the block time " + firstTime);
+            }
+        } else {
+            writeTime(time);
+        }
+
+        for (int column = 0; column < COLUMNS; column++) {
+            long bits = Double.doubleToLongBits(values[column]);
+            if (count == 0) {
+                out.writeBits(bits, 64);
+            } else {
+                writeValue(column, bits);
+            }
+            lastBits[column] = bits;
+        }
+
+        lastTime = time;
+        count++;
+    }
+
+    long getFirstTime() {
+        return firstTime;
+    }
+
+    long getLastTime() {
+        return lastTime;
+    }
+
+    int getCount() {
+        return count;
+    }
+
+    int byteLength() {
+        return out.byteLength();
+    }
+
+    byte[] toByteArray() {
+        return out.toByteArray();
+    }
+
+    private void writeTime(long time) {
+        long gap = time - lastTime;
+        long gapChange = gap - lastGap;
+
+        if (gapChange == 0) {
+            out.writeBit(false);
+        } else if (gapChange >= -63 && gapChange <= 64) {
+            out.writeBits(0b10, 2);
+            out.writeBits(gapChange + 63, 7);
+        } else if (gapChange >= -255 && gapChange <= 256) {
+            out.writeBits(0b110, 3);
+            out.writeBits(gapChange + 255, 9);
+        } else if (gapChange >= -2047 && gapChange <= 2048) {
+            out.writeBits(0b1110, 4);
+            out.writeBits(gapChange + 2047, 12);
+        } else {
+            out.writeBits(0b1111, 4);
+            out.writeBits(gapChange, 64);
+        }
+
+        lastGap = gap;
+    }
+
+    private void writeValue(int column, long bits) {
+        long xor = bits ^ lastBits[column];
+        if (xor == 0) {
+            out.writeBit(false);
+            return;
+        }
+        out.writeBit(true);
+
+        // Five bits hold the count of leading zeros
+        int leadingZeros = Math.min(31, Long.numberOfLeadingZeros(xor));
+        int trailingZeros = Long.numberOfTrailingZeros(xor);
+
+        int lastLeading = lastLeadingZeros[column];
+        int lastTrailing = lastTrailingZeros[column];
+
+        if (lastLeading >= 0 && leadingZeros >= lastLeading && trailingZeros >= lastTrailing) {
+            // Fits the window of the previous value
+            out.writeBit(false);
+            out.writeBits(xor >>> lastTrailing, 64 - lastLeading - lastTrailing);
+            return;
+        }
+
+        int meaningfulBits = 64 - leadingZeros - trailingZeros;
+        out.writeBit(true);
+        out.writeBits(leadingZeros, 5);
+        // 1 to 64 in six bits
+        out.writeBits(meaningfulBits - 1, 6);
+        out.writeBits(xor >>> trailingZeros, meaningfulBits);
+
+        lastLeadingZeros[column] = leadingZeros;
+        lastTrailingZeros[column] = trailingZeros;
+    }
+}
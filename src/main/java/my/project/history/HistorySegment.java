@@ -0,0 +1,221 @@
+package my.project.history;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+
+/**
+ * One file of the history store, blocks are only ever appended to it. Reads go through a
+ * read-only mapping of the file, which is mapped again when a block beyond its end is read.
+ * <p>
+ * The file starts with a magic number and a format version. A block is its header, followed by
+ * its payload: the location id, the kind of the block, the first and the last time, the count of
+ * entries, the length and the CRC32 of the payload. Blocks of version 1 files have no kind, they
+ * all hold observations. Those files are still read, but no longer appended to.
+ */
+@Slf4j
+class HistorySegment implements Closeable {
+    static final int FILE_HEADER_BYTES = 2 * Integer.BYTES;
+    static final int BLOCK_HEADER_BYTES = 3 * Long.BYTES + 4 * Integer.BYTES;
+
+    // Kinds of blocks
+    static final int OBSERVATIONS = 0;
+    static final int ROLLUPS = 1;
+
+    private static final int MAGIC = 0x57485354;
+    private static final int VERSION = 2;
+    private static final int VERSION_WITHOUT_KINDS = 1;
+    private static final int BLOCK_HEADER_BYTES_WITHOUT_KINDS = 3 * Long.BYTES + 3 * Integer.BYTES;
+
+    private final Path path;
+    private final FileChannel channel;
+    // Set once while the segment is opened
+    private int version = VERSION;
+    private volatile MappedByteBuffer mapped;
+    private volatile long size;
+
+    private HistorySegment(Path path, FileChannel channel, long size) {
+        this.path = path;
+        this.channel = channel;
+        this.size = size;
+    }
+
+    static HistorySegment create(Path path) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE_NEW,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+
+        ByteBuffer header = ByteBuffer.allocate(FILE_HEADER_BYTES).putInt(MAGIC).putInt(VERSION).flip();
+        writeFully(channel, header, 0);
+
+        return new HistorySegment(path, channel, FILE_HEADER_BYTES);
+    }
+
+    /**
+     * Reads the headers of all blocks. A block that was cut short by a crash ends the file, so it
+     * is cut off when {@code repair} is set, which only makes sense for the last segment.
+     */
+    static HistorySegment open(Path path, boolean repair, BlockVisitor visitor) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+
+        HistorySegment segment = new HistorySegment(path, channel, channel.size());
+
+        try {
+            ByteBuffer buffer = segment.map();
+            if (buffer.limit() < FILE_HEADER_BYTES || buffer.getInt(0) != MAGIC) {
+                throw new IOException("File " + path + " is not a history segment");
+            }
+            segment.version = buffer.getInt(Integer.BYTES);
+            if (segment.version != VERSION && segment.version != VERSION_WITHOUT_KINDS) {
+                throw new IOException("Unsupported history segment version " + segment.version + " of " + path);
+            }
+
+            long validSize = segment.readBlocks(buffer, visitor);
+            if (validSize < segment.size) {
+                log.warn("History segment " + path + " is damaged after byte " + validSize
+                        + (repair ? ", cutting off the rest" : ", skipping the rest"));
+                if (repair) {
+                    channel.truncate(validSize);
+                    segment.size = validSize;
+                    segment.mapped = null;
+                }
+            }
+            return segment;
+
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * @return offset of the payload in the file
+     */
+    synchronized int append(long seriesId, int kind, long firstTime, long lastTime, int count,
+                            byte[] payload) throws IOException {
+        if (!isWritable()) {
+            throw new IllegalStateException("History segment " + path + " has an old version and is read only");
+        }
+
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+
+        ByteBuffer buffer = ByteBuffer.allocate(BLOCK_HEADER_BYTES + payload.length)
+                .putLong(seriesId)
+                .putInt(kind)
+                .putLong(firstTime)
+                .putLong(lastTime)
+                .putInt(count)
+                .putInt(payload.length)
+                .putInt((int) crc.getValue())
+                .put(payload)
+                .flip();
+
+        long offset = size;
+        writeFully(channel, buffer, offset);
+        size = offset + buffer.limit();
+
+        return (int) (offset + BLOCK_HEADER_BYTES);
+    }
+
+    /**
+     * Mapped buffer that covers the given part of the file, read with absolute gets only
+     */
+    ByteBuffer buffer(int offset, int length) throws IOException {
+        MappedByteBuffer current = mapped;
+        if (current != null && offset + length <= current.limit()) {
+            return current;
+        }
+        return map();
+    }
+
+    long size() {
+        return size;
+    }
+
+    /**
+     * Segments of older versions are only read
+     */
+    boolean isWritable() {
+        return version == VERSION;
+    }
+
+    void force() throws IOException {
+        channel.force(false);
+    }
+
+    Path getPath() {
+        return path;
+    }
+
+    @Override
+    public void close() throws IOException {
+        // The mapping stays valid until it is garbage collected
+        mapped = null;
+        channel.close();
+    }
+
+    private synchronized MappedByteBuffer map() throws IOException {
+        MappedByteBuffer current = mapped;
+        if (current == null || current.limit() < size) {
+            current = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            mapped = current;
+        }
+        return current;
+    }
+
+    private long readBlocks(ByteBuffer buffer, BlockVisitor visitor) {
+        boolean withKinds = version != VERSION_WITHOUT_KINDS;
+        int headerBytes = withKinds ? BLOCK_HEADER_BYTES : BLOCK_HEADER_BYTES_WITHOUT_KINDS;
+        int position = FILE_HEADER_BYTES;
+
+        while (position + headerBytes <= buffer.limit()) {
+            int field = position;
+            long seriesId = buffer.getLong(field);
+            field += Long.BYTES;
+
+            int kind = OBSERVATIONS;
+            if (withKinds) {
+                kind = buffer.getInt(field);
+                field += Integer.BYTES;
+            }
+
+            long firstTime = buffer.getLong(field);
+            long lastTime = buffer.getLong(field + 8);
+            int count = buffer.getInt(field + 16);
+            int length = buffer.getInt(field + 20);
+            int checksum = buffer.getInt(field + 24);
+
+            int payloadOffset = position + headerBytes;
+            if (count <= 0 || length < 0 || (long) payloadOffset + length > buffer.limit()) {
+                break;
+            }
+
+            CRC32 crc = new CRC32();
+            crc.update(buffer.duplicate().position(payloadOffset).limit(payloadOffset + length));
+            if ((int) crc.getValue() != checksum) {
+                break;
+            }
+
+            visitor.visit(seriesId, kind, firstTime, lastTime, count, payloadOffset, length);
+            position = payloadOffset + length;
+        }
+        return position;
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+    }
+
+    interface BlockVisitor {
+        void visit(long seriesId, int kind, long firstTime, long lastTime, int count, int payloadOffset, int length);
+    }
+}
@@ -0,0 +1,14 @@
+package my.project.history;
+
+/**
+ * Numbers kept for every observation. Their order is part of the file format of
+ * {@link WeatherHistoryStore}, new ones go to the end together with a new format version.
+ */
+public enum Metric {
+    TEMPERATURE,
+    FEELS_LIKE_TEMPERATURE,
+    HUMIDITY,
+    PRESSURE,
+    WIND_SPEED,
+    CLOUDINESS
+}
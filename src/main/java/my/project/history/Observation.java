@@ -0,0 +1,43 @@
+package my.project.history;
+
+import lombok.EqualsAndHashCode;
+import lombok.ToString;
+
+/**
+ * Weather observed at one location at one time. Metrics that were not observed are {@code NaN}.
+ */
+@EqualsAndHashCode
+@ToString
+public class Observation {
+    private static final int METRIC_COUNT = Metric.values().length;
+
+    // Epoch seconds
+    private final long time;
+    private final double[] values;
+    // Weather condition code of the api, 0 when unknown
+    private final int conditionCode;
+
+    /**
+     * @param values one value per {@link Metric}, in their declaration order
+     */
+    public Observation(long time, double[] values, int conditionCode) {
+        if (values.length != METRIC_COUNT) {
+            throw new IllegalArgumentException("Expected " + METRIC_COUNT + " values, got " + values.length);
+        }
+        this.time = time;
+        this.values = values.clone();
+        this.conditionCode = conditionCode;
+    }
+
+    public long getTime() {
+        return time;
+    }
+
+    public double getValue(Metric metric) {
+        return values[metric.ordinal()];
+    }
+
+    public int getConditionCode() {
+        return conditionCode;
+    }
+}
@@ -0,0 +1,54 @@
+package my.project.history;
+
+/**
+ * Time buckets of the precomputed rollups. Buckets are aligned to UTC, days start at midnight
+ * UTC and weeks on Monday.
+ */
+public enum Resolution {
+    HOUR(60 * 60, 0),
+    DAY(24 * 60 * 60, 0),
+    // The epoch was a Thursday, so weeks are shifted by four days to start on Monday
+    WEEK(7 * 24 * 60 * 60, 4 * 24 * 60 * 60);
+
+    private final long seconds;
+    private final long offsetSeconds;
+
+    Resolution(long seconds, long offsetSeconds) {
+        this.seconds = seconds;
+        this.offsetSeconds = offsetSeconds;
+    }
+
+    public long getSeconds() {
+        return seconds;
+    }
+
+    /**
+     * Start of the bucket the time falls in, both in epoch seconds
+     */
+    public long getBucketStart(long time) {
+        return Math.floorDiv(time - offsetSeconds, seconds) * seconds + offsetSeconds;
+    }
+
+    /**
+     * Count of buckets that overlap the range from {@code from} inclusive to {@code to} exclusive
+     */
+    public long countBuckets(long from, long to) {
+        if (to <= from) {
+            return 0;
+        }
+        return (getBucketStart(to - 1) - getBucketStart(from)) / seconds + 1;
+    }
+
+    /**
+     * Finest resolution with at most {@code maxPoints} buckets over the range, which is the
+     * coarsest one a chart of that many points needs. Weeks when even they do not fit.
+     */
+    public static Resolution forRange(long from, long to, int maxPoints) {
+        for (Resolution resolution : values()) {
+            if (resolution.countBuckets(from, to) <= maxPoints) {
+                return resolution;
+            }
+        }
+        return WEEK;
+    }
+}
@@ -0,0 +1,68 @@
+package my.project.history;
+
+import lombok.EqualsAndHashCode;
+import lombok.ToString;
+import my.project.model.dto.enums.WeatherCondition;
+
+/**
+ * Aggregate of the observations of one location in one time bucket. Metrics without any
+ * observed value in the bucket are {@code NaN}.
+ */
+@EqualsAndHashCode
+@ToString
+public class Rollup {
+    private final Resolution resolution;
+    // Start of the bucket in epoch seconds
+    private final long time;
+    private final int count;
+    private final double[] minimum;
+    private final double[] maximum;
+    private final double[] mean;
+    private final WeatherCondition dominantCondition;
+
+    Rollup(Resolution resolution, long time, int count, double[] minimum, double[] maximum, double[] mean,
+           WeatherCondition dominantCondition) {
+        this.resolution = resolution;
+        this.time = time;
+        this.count = count;
+        this.minimum = minimum;
+        this.maximum = maximum;
+        this.mean = mean;
+        this.dominantCondition = dominantCondition;
+    }
+
+    public Resolution getResolution() {
+        return resolution;
+    }
+
+    public long getTime() {
+        return time;
+    }
+
+    /**
+     * Count of observations in the bucket
+     */
+    public int getCount() {
+        return count;
+    }
+
+    public double getMinimum(Metric metric) {
+        return minimum[metric.ordinal()];
+    }
+
+    public double getMaximum(Metric metric) {
+        return maximum[metric.ordinal()];
+    }
+
+    public double getMean(Metric metric) {
+        return mean[metric.ordinal()];
+    }
+
+    /**
+     * Most frequently observed condition, {@link WeatherCondition#UNDEFINED} when no condition
+     * was known
+     */
+    public WeatherCondition getDominantCondition() {
+        return dominantCondition;
+    }
+}
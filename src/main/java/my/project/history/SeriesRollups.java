@@ -0,0 +1,324 @@
+package my.project.history;
+
+import my.project.model.dto.enums.WeatherCondition;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Rollups of one location that are not written yet: the buckets of the current hour, day and
+ * week, and the finished hours of the day. Once the day is over it is sealed into a rollup block
+ * of {@link WeatherHistoryStore}, so only about a day of rollups per location is kept in memory.
+ * Not thread-safe, guarded by the lock of its series.
+ * <p>
+ * A rollup block starts with the count of metrics and of weather conditions its records were
+ * written with, followed by a sequence of records: the daily one, the weekly one up to the end of
+ * the day, then the hourly ones. The weekly rollup is the weekly record of the last day of the
+ * week. A record is the resolution, the bucket start, the count of observations, the minimum,
+ * maximum, sum and count of values of every metric and the count of every weather condition. The
+ * order of metrics and weather conditions is part of the format, a block written with other counts
+ * can not be read.
+ */
+class SeriesRollups {
+    private static final Metric[] METRICS = Metric.values();
+    private static final WeatherCondition[] CONDITIONS = WeatherCondition.values();
+
+    static final int RECORD_BYTES = 1 + Long.BYTES + Integer.BYTES
+            + METRICS.length * (3 * Double.BYTES + Integer.BYTES)
+            + CONDITIONS.length * Integer.BYTES;
+
+    static final int LAYOUT_BYTES = 2 * Integer.BYTES;
+
+    // Positions of the records in a rollup block
+    static final int DAY_RECORD = 0;
+    static final int WEEK_RECORD = 1;
+    static final int FIRST_HOUR_RECORD = 2;
+
+    private static final int HOURS_PER_DAY = (int) (Resolution.DAY.getSeconds() / Resolution.HOUR.getSeconds());
+
+    private Bucket hour;
+    private Bucket day;
+    private Bucket week;
+
+    // Records of the finished hours of the current day
+    private byte[] finishedHours = new byte[0];
+    private int finishedHourCount;
+
+    private long lastTime = Long.MIN_VALUE;
+    // Observations before it belong to days that are already written
+    private long sealedUntil;
+
+    SeriesRollups(long sealedUntil) {
+        this.sealedUntil = sealedUntil;
+    }
+
+    /**
+     * Adds an observation that is no earlier than the previous one. The day must have been sealed
+     * when the observation is of a later day. Observations of days that are already written are
+     * skipped, they only come late after a day was sealed on a flush.
+     *
+     * @return false when the observation was skipped
+     */
+    boolean add(Observation observation) {
+        long time = observation.getTime();
+        if (time < sealedUntil) {
+            return false;
+        }
+        if (isDayOver(time)) {
+            throw new IllegalStateException("Day of " + day.start + " must be sealed before adding " + time);
+        }
+
+        long hourStart = Resolution.HOUR.getBucketStart(time);
+        if (hour != null && hour.start != hourStart) {
+            finishHour();
+        }
+        if (hour == null) {
+            hour = new Bucket(hourStart);
+        }
+        if (day == null) {
+            day = new Bucket(Resolution.DAY.getBucketStart(time));
+        }
+        long weekStart = Resolution.WEEK.getBucketStart(time);
+        if (week == null || week.start != weekStart) {
+            week = new Bucket(weekStart);
+        }
+
+        hour.add(observation);
+        day.add(observation);
+        week.add(observation);
+        lastTime = time;
+        return true;
+    }
+
+    /**
+     * Whether the current day is over at the given time, it is then to be sealed
+     */
+    boolean isDayOver(long time) {
+        return day != null && Resolution.DAY.getBucketStart(time) > day.start;
+    }
+
+    long getDayStart() {
+        return day.start;
+    }
+
+    long getLastTime() {
+        return lastTime;
+    }
+
+    long getSealedUntil() {
+        return sealedUntil;
+    }
+
+    /**
+     * Count of records in {@link #encodeDay()}
+     */
+    int countDayRecords() {
+        return FIRST_HOUR_RECORD + finishedHourCount + 1;
+    }
+
+    /**
+     * Rollup block of the current day. Nothing changes until {@link #sealDay()}, so a failed
+     * write can be repeated.
+     */
+    byte[] encodeDay() {
+        ByteBuffer buffer = ByteBuffer.allocate(LAYOUT_BYTES + countDayRecords() * RECORD_BYTES);
+
+        buffer.putInt(METRICS.length);
+        buffer.putInt(CONDITIONS.length);
+
+        day.write(buffer, Resolution.DAY);
+        week.write(buffer, Resolution.WEEK);
+        buffer.put(finishedHours, 0, finishedHourCount * RECORD_BYTES);
+        hour.write(buffer, Resolution.HOUR);
+        return buffer.array();
+    }
+
+    /**
+     * Forgets the current day once its rollup block is written, the week goes on
+     */
+    void sealDay() {
+        sealedUntil = day.start + Resolution.DAY.getSeconds();
+        day = null;
+        hour = null;
+        finishedHours = new byte[0];
+        finishedHourCount = 0;
+    }
+
+    /**
+     * Continues the week from the weekly record of the last written day
+     */
+    void restoreWeek(ByteBuffer buffer, int blockOffset) {
+        week = Bucket.read(buffer, getRecordOffset(blockOffset, WEEK_RECORD));
+    }
+
+    /**
+     * Adds the rollups of the buckets that overlap the range from {@code from} inclusive to
+     * {@code to} exclusive, in time order
+     */
+    void query(Resolution resolution, long from, long to, List<Rollup> rollups) {
+        switch (resolution) {
+            case HOUR:
+                ByteBuffer buffer = ByteBuffer.wrap(finishedHours);
+                for (int i = 0; i < finishedHourCount; i++) {
+                    addIfInRange(Bucket.read(buffer, i * RECORD_BYTES), resolution, from, to, rollups);
+                }
+                addIfInRange(hour, resolution, from, to, rollups);
+                break;
+            case DAY:
+                addIfInRange(day, resolution, from, to, rollups);
+                break;
+            default:
+                addIfInRange(week, resolution, from, to, rollups);
+        }
+    }
+
+    /**
+     * Whether a rollup block of {@code count} records was written with the current metrics and
+     * weather conditions
+     */
+    static boolean hasCurrentLayout(ByteBuffer buffer, int blockOffset, int length, int count) {
+        return length == LAYOUT_BYTES + (long) count * RECORD_BYTES
+                && buffer.getInt(blockOffset) == METRICS.length
+                && buffer.getInt(blockOffset + Integer.BYTES) == CONDITIONS.length;
+    }
+
+    static int getRecordOffset(int blockOffset, int record) {
+        return blockOffset + LAYOUT_BYTES + record * RECORD_BYTES;
+    }
+
+    /**
+     * Resolution of the record at the offset
+     */
+    static Resolution readResolution(ByteBuffer buffer, int offset) {
+        return Resolution.values()[buffer.get(offset)];
+    }
+
+    static Rollup readRollup(ByteBuffer buffer, int offset) {
+        return Bucket.read(buffer, offset).toRollup(readResolution(buffer, offset));
+    }
+
+    private void finishHour() {
+        int length = finishedHourCount * RECORD_BYTES;
+        if (finishedHours.length < length + RECORD_BYTES) {
+            int capacity = Math.min(HOURS_PER_DAY * RECORD_BYTES, Math.max(4 * RECORD_BYTES, 2 * finishedHours.length));
+            finishedHours = Arrays.copyOf(finishedHours, capacity);
+        }
+
+        hour.write(ByteBuffer.wrap(finishedHours, length, RECORD_BYTES), Resolution.HOUR);
+        finishedHourCount++;
+        hour = null;
+    }
+
+    private static void addIfInRange(Bucket bucket, Resolution resolution, long from, long to, List<Rollup> rollups) {
+        if (bucket != null && bucket.start >= resolution.getBucketStart(from) && bucket.start < to) {
+            rollups.add(bucket.toRollup(resolution));
+        }
+    }
+
+    private static class Bucket {
+        private final long start;
+        private int count;
+        private final double[] minimum = new double[METRICS.length];
+        private final double[] maximum = new double[METRICS.length];
+        private final double[] sum = new double[METRICS.length];
+        // Observed values per metric, which are fewer than count when some were missing
+        private final int[] valueCounts = new int[METRICS.length];
+        private final int[] conditionCounts = new int[CONDITIONS.length];
+
+        private Bucket(long start) {
+            this.start = start;
+        }
+
+        private void add(Observation observation) {
+            count++;
+
+            for (Metric metric : METRICS) {
+                double value = observation.getValue(metric);
+                if (Double.isNaN(value)) {
+                    continue;
+                }
+
+                int column = metric.ordinal();
+                if (valueCounts[column] == 0) {
+                    minimum[column] = value;
+                    maximum[column] = value;
+                } else {
+                    minimum[column] = Math.min(minimum[column], value);
+                    maximum[column] = Math.max(maximum[column], value);
+                }
+                sum[column] += value;
+                valueCounts[column]++;
+            }
+
+            conditionCounts[WeatherCondition.getWeatherConditionForCode(observation.getConditionCode()).ordinal()]++;
+        }
+
+        private void write(ByteBuffer buffer, Resolution resolution) {
+            buffer.put((byte) resolution.ordinal());
+            buffer.putLong(start);
+            buffer.putInt(count);
+            for (int column = 0; column < METRICS.length; column++) {
+                buffer.putDouble(minimum[column]);
+                buffer.putDouble(maximum[column]);
+                buffer.putDouble(sum[column]);
+                buffer.putInt(valueCounts[column]);
+            }
+            for (int conditionCount : conditionCounts) {
+                buffer.putInt(conditionCount);
+            }
+        }
+
+        // Absolute gets only, the buffer may be a shared mapping
+        private static Bucket read(ByteBuffer buffer, int offset) {
+            int position = offset + 1;
+            Bucket bucket = new Bucket(buffer.getLong(position));
+            position += Long.BYTES;
+            bucket.count = buffer.getInt(position);
+            position += Integer.BYTES;
+
+            for (int column = 0; column < METRICS.length; column++) {
+                bucket.minimum[column] = buffer.getDouble(position);
+                bucket.maximum[column] = buffer.getDouble(position + 8);
+                bucket.sum[column] = buffer.getDouble(position + 16);
+                bucket.valueCounts[column] = buffer.getInt(position + 24);
+                position += 3 * Double.BYTES + Integer.BYTES;
+            }
+            for (int condition = 0; condition < CONDITIONS.length; condition++) {
+                bucket.conditionCounts[condition] = buffer.getInt(position);
+                position += Integer.BYTES;
+            }
+            return bucket;
+        }
+
+        private Rollup toRollup(Resolution resolution) {
+            double[] bucketMinimum = new double[METRICS.length];
+            double[] bucketMaximum = new double[METRICS.length];
+            double[] mean = new double[METRICS.length];
+
+            for (int column = 0; column < METRICS.length; column++) {
+                boolean observed = valueCounts[column] > 0;
+                bucketMinimum[column] = observed ? minimum[column] : Double.NaN;
+                bucketMaximum[column] = observed ? maximum[column] : Double.NaN;
+                mean[column] = observed ? sum[column] / valueCounts[column] : Double.NaN;
+            }
+
+            return new Rollup(resolution, start, count, bucketMinimum, bucketMaximum, mean, getDominantCondition());
+        }
+
+        // Ties go to the condition declared first
+        private WeatherCondition getDominantCondition() {
+            WeatherCondition dominant = WeatherCondition.UNDEFINED;
+            int dominantCount = 0;
+
+            for (WeatherCondition condition : CONDITIONS) {
+                int conditionCount = conditionCounts[condition.ordinal()];
+                if (condition != WeatherCondition.UNDEFINED && conditionCount > dominantCount) {
+                    dominant = condition;
+                    dominantCount = conditionCount;
+                }
+            }
+            return dominant;
+        }
+    }
+}
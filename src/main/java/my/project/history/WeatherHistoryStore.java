@@ -0,0 +1,655 @@
+package my.project.history;
+
+import lombok.extern.slf4j.Slf4j;
+import my.project.util.FileUtil;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Append-only store of observations per location, kept in segment files of one directory.
+ * <p>
+ * Observations of a location are collected in an open block, compressed by {@link BlockEncoder}
+ * as they come. A block covers a fixed span of time and is written to the current segment once
+ * an observation of a later span comes, once the span is over when {@link #flush(Instant)} runs,
+ * or when the store is closed. Observations of open blocks are lost on a crash, which is the
+ * price of writing whole compressed blocks instead of single observations.
+ * <p>
+ * On opening, the block headers of every segment are read into an index, so a range query only
+ * decodes the blocks that overlap the range, straight from the mapped segment.
+ * <p>
+ * Longer periods are read from hourly, daily and weekly rollups instead. Rollups are computed as
+ * observations are appended and written as one rollup block per location and day once the day
+ * is over, so only the rollups of the current day are kept in memory, see {@link SeriesRollups}.
+ * Those of a day that was not over when the store was closed are built again from its
+ * observations, as are those of observations written before rollups were stored.
+ */
+@Slf4j
+public class WeatherHistoryStore implements Closeable {
+    private static final String SEGMENT_PREFIX = "history-";
+    private static final String SEGMENT_SUFFIX = ".seg";
+
+    // Bounds the memory of an open block when observations come much faster than expected
+    private static final int MAX_BLOCK_OBSERVATIONS = 4096;
+
+    // Observations come with the time of the api data, which lags, so a day is only written on a
+    // flush an hour after it ended
+    private static final long ROLLUP_SEAL_DELAY_SECONDS = 60 * 60;
+
+    private final Path directory;
+    private final long blockSpanSeconds;
+    private final long maxSegmentBytes;
+
+    private final Map<Long, Series> series = new ConcurrentHashMap<>();
+    private final List<HistorySegment> segments = new ArrayList<>();
+    private HistorySegment currentSegment;
+    private long lastSegmentNumber;
+    private volatile boolean closed;
+
+    private final AtomicLong appendedObservations = new AtomicLong();
+    private final AtomicLong skippedObservations = new AtomicLong();
+    private final AtomicLong blocks = new AtomicLong();
+    private final AtomicLong rollupBlocks = new AtomicLong();
+    private final AtomicInteger rollupLocations = new AtomicInteger();
+
+    private WeatherHistoryStore(Path directory, Duration blockSpan, long maxSegmentBytes) {
+        if (blockSpan.getSeconds() <= 0) {
+            throw new IllegalArgumentException("Block span must be at least a second: " + blockSpan);
+        }
+        if (maxSegmentBytes <= HistorySegment.FILE_HEADER_BYTES || maxSegmentBytes > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Segment size must fit a mapped buffer: " + maxSegmentBytes);
+        }
+        this.directory = directory;
+        this.blockSpanSeconds = blockSpan.getSeconds();
+        this.maxSegmentBytes = maxSegmentBytes;
+    }
+
+    /**
+     * Opens the store in the directory, creating it for the user of the process only when needed,
+     * and indexes the existing segments
+     *
+     * @param blockSpan       time covered by a block
+     * @param maxSegmentBytes size after which a new segment is started
+     */
+    public static WeatherHistoryStore open(Path directory, Duration blockSpan, long maxSegmentBytes) throws IOException {
+        WeatherHistoryStore store = new WeatherHistoryStore(directory, blockSpan, maxSegmentBytes);
+        FileUtil.createPrivateDirectories(directory);
+
+        List<Path> paths;
+        try (Stream<Path> files = Files.list(directory)) {
+            paths = files.filter(WeatherHistoryStore::isSegment)
+                    .sorted(Comparator.comparingLong(WeatherHistoryStore::getSegmentNumber))
+                    .collect(Collectors.toList());
+        }
+
+        try {
+            for (int i = 0; i < paths.size(); i++) {
+                boolean last = i == paths.size() - 1;
+                store.openSegment(paths.get(i), last);
+            }
+            if (store.currentSegment == null) {
+                store.startSegment();
+            }
+
+        } catch (IOException | RuntimeException e) {
+            store.close();
+            throw e;
+        }
+
+        log.info("Opened weather history in " + directory + " with " + store.series.size() + " locations, "
+                + store.blocks.get() + " blocks and " + store.rollupBlocks.get() + " rollup blocks in "
+                + store.segments.size() + " segments");
+        return store;
+    }
+
+    /**
+     * Adds an observation of a location. Observations must come in time order, one that is not
+     * later than the last one of its location is skipped, so the same api response can be
+     * appended from several places.
+     *
+     * @return false when the observation was skipped
+     */
+    public boolean append(long seriesId, Observation observation) throws IOException {
+        checkOpen();
+        Series current = series.computeIfAbsent(seriesId, Series::new);
+        long time = observation.getTime();
+
+        synchronized (current) {
+            if (time <= current.lastTime) {
+                skippedObservations.incrementAndGet();
+                return false;
+            }
+
+            // Loaded before the observation is in a block, so it is not counted twice
+            SeriesRollups rollups = loadRollups(current);
+
+            BlockEncoder block = current.openBlock;
+            if (block != null && (getSpan(time) != getSpan(block.getFirstTime())
+                    || block.getCount() == MAX_BLOCK_OBSERVATIONS)) {
+                writeBlock(current);
+                block = null;
+            }
+            if (block == null) {
+                block = new BlockEncoder(time);
+                current.openBlock = block;
+            }
+
+            block.add(time, toColumns(observation));
+            current.lastTime = time;
+
+            addRollups(current, rollups, observation);
+        }
+
+        appendedObservations.incrementAndGet();
+        return true;
+    }
+
+    /**
+     * Observations of a location from {@code from} inclusive to {@code to} exclusive, in time order
+     */
+    public List<Observation> query(long seriesId, Instant from, Instant to) {
+        List<Observation> observations = new ArrayList<>();
+        scan(seriesId, from, to, observations::add);
+        return observations;
+    }
+
+    /**
+     * Like {@link #query(long, Instant, Instant)} without collecting the observations
+     */
+    public void scan(long seriesId, Instant from, Instant to, Consumer<Observation> consumer) {
+        Series current = series.get(seriesId);
+        if (current != null) {
+            scan(current, from.getEpochSecond(), to.getEpochSecond(), consumer);
+        }
+    }
+
+    /**
+     * Rollups of a location with a resolution that fits the range in {@code maxPoints}, see
+     * {@link Resolution#forRange(long, long, int)}
+     */
+    public List<Rollup> queryRollups(long seriesId, Instant from, Instant to, int maxPoints) {
+        Resolution resolution = Resolution.forRange(from.getEpochSecond(), to.getEpochSecond(), maxPoints);
+        return queryRollups(seriesId, resolution, from, to);
+    }
+
+    /**
+     * Rollups of the buckets of a location that overlap the range from {@code from} inclusive to
+     * {@code to} exclusive, in time order. Buckets without observations are left out.
+     */
+    public List<Rollup> queryRollups(long seriesId, Resolution resolution, Instant from, Instant to) {
+        List<Rollup> rollups = new ArrayList<>();
+        Series current = series.get(seriesId);
+        long fromTime = from.getEpochSecond();
+        long toTime = to.getEpochSecond();
+        if (current == null || toTime <= fromTime) {
+            return rollups;
+        }
+
+        // Days are found by the start of their block, the days of a week up to its last one
+        long firstDay = resolution == Resolution.WEEK
+                ? Resolution.WEEK.getBucketStart(fromTime)
+                : Resolution.DAY.getBucketStart(fromTime);
+        long endDay = resolution == Resolution.WEEK
+                ? Resolution.WEEK.getBucketStart(toTime - 1) + Resolution.WEEK.getSeconds()
+                : toTime;
+
+        // Collected under the lock and decoded without it
+        List<BlockRef> days;
+        List<Rollup> open = new ArrayList<>();
+
+        synchronized (current) {
+            SeriesRollups openRollups;
+            try {
+                openRollups = loadRollups(current);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            openRollups.query(resolution, fromTime, toTime, open);
+
+            List<BlockRef> written = current.rollupBlocks;
+            int first = findFirstBlock(written, firstDay);
+            int end = findFirstBlock(written, endDay);
+            days = new ArrayList<>(written.subList(first, end));
+        }
+
+        long firstBucket = resolution.getBucketStart(fromTime);
+        for (BlockRef day : days) {
+            ByteBuffer buffer;
+            try {
+                buffer = day.segment.buffer(day.offset, day.length);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+
+            int firstRecord;
+            int endRecord;
+            switch (resolution) {
+                case HOUR:
+                    firstRecord = SeriesRollups.FIRST_HOUR_RECORD;
+                    endRecord = day.count;
+                    break;
+                case DAY:
+                    firstRecord = SeriesRollups.DAY_RECORD;
+                    endRecord = firstRecord + 1;
+                    break;
+                default:
+                    firstRecord = SeriesRollups.WEEK_RECORD;
+                    endRecord = firstRecord + 1;
+            }
+
+            for (int record = firstRecord; record < endRecord; record++) {
+                Rollup rollup = SeriesRollups.readRollup(buffer, SeriesRollups.getRecordOffset(day.offset, record));
+                if (rollup.getTime() < firstBucket || rollup.getTime() >= toTime) {
+                    continue;
+                }
+
+                // A later day of the same week replaces the weekly rollup so far
+                int last = rollups.size() - 1;
+                if (last >= 0 && rollups.get(last).getTime() == rollup.getTime()) {
+                    rollups.set(last, rollup);
+                } else {
+                    rollups.add(rollup);
+                }
+            }
+        }
+
+        // The open week goes on from the written days of it
+        if (!open.isEmpty() && !rollups.isEmpty()
+                && rollups.get(rollups.size() - 1).getTime() == open.get(0).getTime()) {
+            rollups.remove(rollups.size() - 1);
+        }
+        rollups.addAll(open);
+        return rollups;
+    }
+
+    private void scan(Series current, long fromTime, long toTime, Consumer<Observation> consumer) {
+        // Collected under the lock and decoded without it
+        List<BlockRef> overlapping = new ArrayList<>();
+        BlockRef openBlock = null;
+
+        synchronized (current) {
+            for (BlockRef block : current.blocks) {
+                if (block.lastTime >= fromTime && block.firstTime < toTime) {
+                    overlapping.add(block);
+                }
+            }
+
+            BlockEncoder encoder = current.openBlock;
+            if (encoder != null && encoder.getLastTime() >= fromTime && encoder.getFirstTime() < toTime) {
+                openBlock = new BlockRef(null, encoder.getFirstTime(), encoder.getLastTime(),
+                        encoder.getCount(), 0, encoder.byteLength());
+                openBlock.bytes = ByteBuffer.wrap(encoder.toByteArray());
+            }
+        }
+        if (openBlock != null) {
+            overlapping.add(openBlock);
+        }
+
+        for (BlockRef block : overlapping) {
+            ByteBuffer buffer;
+            try {
+                buffer = block.bytes != null ? block.bytes : block.segment.buffer(block.offset, block.length);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+
+            BlockDecoder decoder = new BlockDecoder(buffer, block.offset, block.firstTime, block.count);
+            while (decoder.next()) {
+                long time = decoder.getTime();
+                if (time >= toTime) {
+                    break;
+                }
+                if (time >= fromTime) {
+                    consumer.accept(toObservation(time, decoder.getValues()));
+                }
+            }
+        }
+    }
+
+    /**
+     * Writes the open blocks whose span is over before {@code now} and the rollups of the days
+     * that are over, then forces the segment to disk
+     */
+    public void flush(Instant now) throws IOException {
+        checkOpen();
+        long currentSpan = getSpan(now.getEpochSecond());
+        long sealTime = now.getEpochSecond() - ROLLUP_SEAL_DELAY_SECONDS;
+
+        for (Series current : series.values()) {
+            synchronized (current) {
+                BlockEncoder block = current.openBlock;
+                if (block != null && getSpan(block.getFirstTime()) < currentSpan) {
+                    writeBlock(current);
+                }
+
+                SeriesRollups rollups = current.rollups;
+                if (rollups != null && rollups.isDayOver(sealTime)) {
+                    writeRollupBlock(current, rollups);
+                }
+            }
+        }
+        force();
+    }
+
+    /**
+     * Writes every open block, also the ones whose span is not over yet. Rollups of days that are
+     * not over are not written, they are built again from the observations.
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+
+        try {
+            if (currentSegment != null) {
+                for (Series current : series.values()) {
+                    synchronized (current) {
+                        if (current.openBlock != null) {
+                            writeBlock(current);
+                        }
+                    }
+                }
+                force();
+            }
+
+        } finally {
+            closed = true;
+            synchronized (this) {
+                for (HistorySegment segment : segments) {
+                    segment.close();
+                }
+            }
+        }
+    }
+
+    public int getLocations() {
+        return series.size();
+    }
+
+    public long getAppendedObservations() {
+        return appendedObservations.get();
+    }
+
+    public long getSkippedObservations() {
+        return skippedObservations.get();
+    }
+
+    public long getBlocks() {
+        return blocks.get();
+    }
+
+    public long getRollupBlocks() {
+        return rollupBlocks.get();
+    }
+
+    public int getRollupLocations() {
+        return rollupLocations.get();
+    }
+
+    public synchronized int getSegments() {
+        return segments.size();
+    }
+
+    public synchronized long getStoredBytes() {
+        long bytes = 0;
+        for (HistorySegment segment : segments) {
+            bytes += segment.size();
+        }
+        return bytes;
+    }
+
+    private void openSegment(Path path, boolean last) throws IOException {
+        List<BlockRef> found = new ArrayList<>();
+        List<Long> seriesIds = new ArrayList<>();
+        List<Integer> kinds = new ArrayList<>();
+
+        HistorySegment segment = HistorySegment.open(path, last, (seriesId, kind, firstTime, lastTime, count, offset, length) -> {
+            seriesIds.add(seriesId);
+            kinds.add(kind);
+            found.add(new BlockRef(null, firstTime, lastTime, count, offset, length));
+        });
+
+        int observationBlocks = 0;
+        int rollupBlockCount = 0;
+        int skippedRollupBlocks = 0;
+        for (int i = 0; i < found.size(); i++) {
+            BlockRef block = found.get(i);
+            block.segment = segment;
+
+            Series current = series.computeIfAbsent(seriesIds.get(i), Series::new);
+            int kind = kinds.get(i);
+            if (kind == HistorySegment.OBSERVATIONS) {
+                current.blocks.add(block);
+                current.lastTime = Math.max(current.lastTime, block.lastTime);
+                observationBlocks++;
+            } else if (kind == HistorySegment.ROLLUPS) {
+                // Rollups of days whose blocks are skipped are built again from the observations
+                if (!SeriesRollups.hasCurrentLayout(segment.buffer(block.offset, block.length),
+                        block.offset, block.length, block.count)) {
+                    skippedRollupBlocks++;
+                    continue;
+                }
+                current.rollupBlocks.add(block);
+                rollupBlockCount++;
+            }
+        }
+
+        if (skippedRollupBlocks > 0) {
+            log.warn("Skipped " + skippedRollupBlocks + " rollup blocks of " + path
+                    + " that were written with other metrics or weather conditions");
+        }
+
+        synchronized (this) {
+            segments.add(segment);
+            blocks.addAndGet(observationBlocks);
+            rollupBlocks.addAndGet(rollupBlockCount);
+            lastSegmentNumber = Math.max(lastSegmentNumber, getSegmentNumber(path));
+            if (last && segment.isWritable()) {
+                currentSegment = segment;
+            }
+        }
+    }
+
+    // Called with the lock of the series held
+    private SeriesRollups loadRollups(Series current) throws IOException {
+        if (current.rollups != null) {
+            return current.rollups;
+        }
+
+        List<BlockRef> written = current.rollupBlocks;
+        SeriesRollups rollups;
+        if (written.isEmpty()) {
+            rollups = new SeriesRollups(Long.MIN_VALUE);
+        } else {
+            BlockRef lastDay = written.get(written.size() - 1);
+            rollups = new SeriesRollups(lastDay.firstTime + Resolution.DAY.getSeconds());
+            rollups.restoreWeek(lastDay.segment.buffer(lastDay.offset, lastDay.length), lastDay.offset);
+        }
+
+        // Observations after the last written day, which writes the days among them that are over
+        try {
+            scan(current, rollups.getSealedUntil(), Long.MAX_VALUE, observation -> {
+                try {
+                    addRollups(current, rollups, observation);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+
+        current.rollups = rollups;
+        rollupLocations.incrementAndGet();
+        return rollups;
+    }
+
+    // Called with the lock of the series held
+    private void addRollups(Series current, SeriesRollups rollups, Observation observation) throws IOException {
+        if (rollups.isDayOver(observation.getTime())) {
+            writeRollupBlock(current, rollups);
+        }
+        // Skipped when its day was already written by a flush
+        rollups.add(observation);
+    }
+
+    // Called with the lock of the series held
+    private void writeRollupBlock(Series current, SeriesRollups rollups) throws IOException {
+        BlockRef block = appendBlock(current.id, HistorySegment.ROLLUPS, rollups.getDayStart(),
+                rollups.getLastTime(), rollups.countDayRecords(), rollups.encodeDay());
+
+        current.rollupBlocks.add(block);
+        rollupBlocks.incrementAndGet();
+        rollups.sealDay();
+    }
+
+    // Called with the lock of the series held
+    private void writeBlock(Series current) throws IOException {
+        BlockEncoder block = current.openBlock;
+        BlockRef written = appendBlock(current.id, HistorySegment.OBSERVATIONS, block.getFirstTime(),
+                block.getLastTime(), block.getCount(), block.toByteArray());
+
+        // Kept open when writing failed, so it is written again later
+        current.openBlock = null;
+
+        current.blocks.add(written);
+        blocks.incrementAndGet();
+    }
+
+    private synchronized BlockRef appendBlock(long seriesId, int kind, long firstTime, long lastTime, int count,
+                                              byte[] payload) throws IOException {
+        long blockBytes = HistorySegment.BLOCK_HEADER_BYTES + payload.length;
+        if (currentSegment.size() + blockBytes > maxSegmentBytes && currentSegment.size() > HistorySegment.FILE_HEADER_BYTES) {
+            startSegment();
+        }
+
+        int offset = currentSegment.append(seriesId, kind, firstTime, lastTime, count, payload);
+        return new BlockRef(currentSegment, firstTime, lastTime, count, offset, payload.length);
+    }
+
+    private synchronized void startSegment() throws IOException {
+        if (currentSegment != null) {
+            currentSegment.force();
+        }
+
+        // Numbered, so the segments are read back in the order they were written
+        lastSegmentNumber++;
+        Path path = directory.resolve(String.format("%s%08d%s", SEGMENT_PREFIX, lastSegmentNumber, SEGMENT_SUFFIX));
+
+        currentSegment = HistorySegment.create(path);
+        segments.add(currentSegment);
+    }
+
+    private synchronized void force() throws IOException {
+        currentSegment.force();
+    }
+
+    // Index of the first block that starts at or after the time
+    private static int findFirstBlock(List<BlockRef> blocks, long time) {
+        int low = 0;
+        int high = blocks.size();
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (blocks.get(middle).firstTime < time) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    private long getSpan(long time) {
+        return Math.floorDiv(time, blockSpanSeconds);
+    }
+
+    private void checkOpen() {
+        if (closed) {
+            throw new IllegalStateException("Weather history store is closed");
+        }
+    }
+
+    private static boolean isSegment(Path path) {
+        return getSegmentNumber(path) >= 0;
+    }
+
+    private static long getSegmentNumber(Path path) {
+        String name = path.getFileName().toString();
+        if (!name.startsWith(SEGMENT_PREFIX) || !name.endsWith(SEGMENT_SUFFIX)) {
+            return -1;
+        }
+
+        try {
+            return Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private static double[] toColumns(Observation observation) {
+        double[] columns = new double[BlockEncoder.COLUMNS];
+        for (Metric metric : Metric.values()) {
+            columns[metric.ordinal()] = observation.getValue(metric);
+        }
+        columns[columns.length - 1] = observation.getConditionCode();
+        return columns;
+    }
+
+    private static Observation toObservation(long time, double[] columns) {
+        return new Observation(time, Arrays.copyOf(columns, columns.length - 1), (int) columns[columns.length - 1]);
+    }
+
+    private static class Series {
+        private final long id;
+        // Written blocks in time order
+        private final List<BlockRef> blocks = new ArrayList<>();
+        private BlockEncoder openBlock;
+        private long lastTime = Long.MIN_VALUE;
+        // Written rollup blocks, one per day in time order
+        private final List<BlockRef> rollupBlocks = new ArrayList<>();
+        // Loaded on the first append or rollup query
+        private SeriesRollups rollups;
+
+        private Series(long id) {
+            this.id = id;
+        }
+    }
+
+    private static class BlockRef {
+        private HistorySegment segment;
+        private final long firstTime;
+        private final long lastTime;
+        private final int count;
+        private final int offset;
+        private final int length;
+        // Copy of an open block, which is not in a segment yet
+        private ByteBuffer bytes;
+
+        private BlockRef(HistorySegment segment, long firstTime, long lastTime, int count, int offset, int length) {
+            this.segment = segment;
+            this.firstTime = firstTime;
+            this.lastTime = lastTime;
+            this.count = count;
+            this.offset = offset;
+            this.length = length;
+        }
+    }
+}
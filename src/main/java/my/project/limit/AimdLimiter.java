@@ -0,0 +1,88 @@
+package my.project.limit;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Limits concurrent calls to an upstream by an additive-increase/multiplicative-decrease rule.
+ * Every fast call grows the limit by about one per window of calls, every slow or dropped call
+ * shrinks it by the backoff ratio. Calls above the limit are rejected instead of queued.
+ */
+public class AimdLimiter {
+    private final int minLimit;
+    private final int maxLimit;
+    private final long latencyThresholdNanos;
+    private final double backoffRatio;
+
+    private double limit;
+    private int inFlight;
+    private long rejections;
+
+    public AimdLimiter(int initialLimit, int minLimit, int maxLimit, long latencyThresholdMillis, double backoffRatio) {
+        if (minLimit < 1 || minLimit > maxLimit || initialLimit < minLimit || initialLimit > maxLimit) {
+            throw new IllegalArgumentException("Limits must satisfy 1 <= min <= initial <= max");
+        }
+        if (backoffRatio <= 0 || backoffRatio >= 1) {
+            throw new IllegalArgumentException("Backoff ratio must be between 0 and 1");
+        }
+
+        this.limit = initialLimit;
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.latencyThresholdNanos = TimeUnit.MILLISECONDS.toNanos(latencyThresholdMillis);
+        this.backoffRatio = backoffRatio;
+    }
+
+    public synchronized boolean tryAcquire() {
+        if (inFlight >= (int) limit) {
+            rejections++;
+            return false;
+        }
+
+        inFlight++;
+        return true;
+    }
+
+    /**
+     * Call completed with a response, slow responses count as a sign of overload as well
+     */
+    public synchronized void onSuccess(long latencyNanos) {
+        inFlight--;
+
+        if (latencyNanos > latencyThresholdNanos) {
+            decrease();
+        } else {
+            limit = Math.min(maxLimit, limit + 1 / limit);
+        }
+    }
+
+    /**
+     * Call timed out, failed or was throttled by the upstream
+     */
+    public synchronized void onDropped() {
+        inFlight--;
+        decrease();
+    }
+
+    /**
+     * Call ended without telling anything about the upstream, e.g. it was never sent
+     */
+    public synchronized void onIgnored() {
+        inFlight--;
+    }
+
+    public synchronized int getLimit() {
+        return (int) limit;
+    }
+
+    public synchronized int getInFlight() {
+        return inFlight;
+    }
+
+    public synchronized long getRejections() {
+        return rejections;
+    }
+
+    private void decrease() {
+        limit = Math.max(minLimit, limit * backoffRatio);
+    }
+}
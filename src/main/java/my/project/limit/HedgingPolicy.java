@@ -0,0 +1,141 @@
+package my.project.limit;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decides when a slow call gets a duplicate. The delay is a percentile of recent latencies, so
+ * only calls slower than most of their peers are hedged. Every call earns a fraction of a hedge
+ * and every hedge spends a whole one, which caps hedges at that fraction of the traffic even
+ * when the upstream slows down as a whole.
+ */
+public class HedgingPolicy {
+    // Recomputing the percentile on every sample would sort the window on every call
+    private static final int RECOMPUTE_INTERVAL = 16;
+    private static final double MAX_SAVED_HEDGES = 10;
+    // Sums of fractions such as 0.1 fall just short of whole numbers
+    private static final double TOKEN_EPSILON = 1e-9;
+
+    private final double percentile;
+    private final double maxHedgeRatio;
+    private final long minDelayNanos;
+    private final int minSamples;
+
+    private final long[] latencies;
+    private int samples;
+    private int nextSample;
+    private long recordedSamples;
+    private long delayNanos = -1;
+
+    private double hedgeTokens;
+    private long calls;
+    private long hedgesFired;
+    private long hedgesWon;
+    private long hedgesRejected;
+
+    /**
+     * @param percentile    latency percentile after which a call is hedged, between 0 and 100
+     * @param maxHedgeRatio largest share of calls that may be hedged
+     * @param windowSize    number of recent latencies the percentile is taken from
+     * @param minSamples    latencies needed before any call is hedged
+     */
+    public HedgingPolicy(double percentile, double maxHedgeRatio, long minDelayMillis, int windowSize, int minSamples) {
+        if (percentile <= 0 || percentile >= 100) {
+            throw new IllegalArgumentException("Percentile must be between 0 and 100");
+        }
+        if (maxHedgeRatio < 0 || maxHedgeRatio > 1) {
+            throw new IllegalArgumentException("Hedge ratio must be between 0 and 1");
+        }
+        if (windowSize < 1 || minSamples < 1 || minSamples > windowSize) {
+            throw new IllegalArgumentException("Samples must satisfy 1 <= min samples <= window size");
+        }
+
+        this.percentile = percentile;
+        this.maxHedgeRatio = maxHedgeRatio;
+        this.minDelayNanos = TimeUnit.MILLISECONDS.toNanos(minDelayMillis);
+        this.latencies = new long[windowSize];
+        this.minSamples = minSamples;
+    }
+
+    /**
+     * Latency of a call that completed with a response
+     */
+    public synchronized void recordLatency(long latencyNanos) {
+        boolean windowFilling = samples < latencies.length;
+
+        latencies[nextSample] = latencyNanos;
+        nextSample = (nextSample + 1) % latencies.length;
+        samples = Math.min(samples + 1, latencies.length);
+        recordedSamples++;
+
+        if (samples >= minSamples && (windowFilling || recordedSamples % RECOMPUTE_INTERVAL == 0)) {
+            long[] window = Arrays.copyOf(latencies, samples);
+            Arrays.sort(window);
+
+            int index = (int) Math.ceil(percentile / 100 * samples) - 1;
+            delayNanos = Math.max(minDelayNanos, window[Math.max(0, index)]);
+        }
+    }
+
+    /**
+     * Counts a call that may be hedged and tells how long to wait for it before hedging,
+     * empty until enough latencies are known
+     */
+    public synchronized Optional<Duration> onCall() {
+        calls++;
+        hedgeTokens = Math.min(MAX_SAVED_HEDGES, hedgeTokens + maxHedgeRatio);
+
+        return delayNanos < 0 ? Optional.empty() : Optional.of(Duration.ofNanos(delayNanos));
+    }
+
+    /**
+     * Takes a hedge out of the budget, false when hedges already reached their share of calls
+     */
+    public synchronized boolean tryHedge() {
+        if (hedgeTokens < 1 - TOKEN_EPSILON) {
+            return false;
+        }
+
+        hedgeTokens = Math.max(0, hedgeTokens - 1);
+        hedgesFired++;
+        return true;
+    }
+
+    /**
+     * Hedge taken by {@link #tryHedge()} was not sent after all, for example for lack of quota
+     */
+    public synchronized void onHedgeRejected() {
+        hedgeTokens = Math.min(MAX_SAVED_HEDGES, hedgeTokens + 1);
+        hedgesFired--;
+        hedgesRejected++;
+    }
+
+    /**
+     * Hedge responded before the call it duplicated
+     */
+    public synchronized void onHedgeWon() {
+        hedgesWon++;
+    }
+
+    public synchronized Optional<Duration> getHedgeDelay() {
+        return delayNanos < 0 ? Optional.empty() : Optional.of(Duration.ofNanos(delayNanos));
+    }
+
+    public synchronized long getCalls() {
+        return calls;
+    }
+
+    public synchronized long getHedgesFired() {
+        return hedgesFired;
+    }
+
+    public synchronized long getHedgesWon() {
+        return hedgesWon;
+    }
+
+    public synchronized long getHedgesRejected() {
+        return hedgesRejected;
+    }
+}
@@ -0,0 +1,11 @@
+package my.project.limit;
+
+/**
+ * Importance of an api call, in descending order. Lower priorities leave a larger part of
+ * the quota untouched, so they are shed first when it runs low.
+ */
+public enum Priority {
+    INTERACTIVE,
+    SEARCH,
+    BACKGROUND
+}
@@ -0,0 +1,120 @@
+package my.project.limit;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Keeps api usage within a per-minute and a per-day quota by two token buckets that every call
+ * takes a token from. A call of a given priority is granted only while both buckets keep more
+ * than the reserve of that priority, so searches and background work can not use up the quota
+ * left for interactive page loads.
+ */
+public class QuotaBudget {
+    private final TokenBucket minuteBucket;
+    private final TokenBucket dayBucket;
+    private final Map<Priority, Double> reserves;
+    private final Clock clock;
+
+    private final long[] granted = new long[Priority.values().length];
+    private final long[] rejected = new long[Priority.values().length];
+
+    /**
+     * @param reserves share of each bucket, from 0 to 1, that calls of the priority must leave
+     *                 untouched, priorities without a reserve may use the whole bucket
+     */
+    public QuotaBudget(long callsPerMinute, long callsPerDay, Map<Priority, Double> reserves) {
+        this(callsPerMinute, callsPerDay, reserves, Clock.systemUTC());
+    }
+
+    public QuotaBudget(long callsPerMinute, long callsPerDay, Map<Priority, Double> reserves, Clock clock) {
+        if (callsPerMinute <= 0 || callsPerDay <= 0) {
+            throw new IllegalArgumentException("Quota must be positive");
+        }
+        this.clock = clock;
+        this.minuteBucket = new TokenBucket(callsPerMinute, Duration.ofMinutes(1), clock.millis());
+        this.dayBucket = new TokenBucket(callsPerDay, Duration.ofDays(1), clock.millis());
+        this.reserves = new EnumMap<>(Priority.class);
+        this.reserves.putAll(reserves);
+    }
+
+    public synchronized boolean tryAcquire(Priority priority) {
+        if (!hasBudget(priority, 1)) {
+            rejected[priority.ordinal()]++;
+            return false;
+        }
+
+        minuteBucket.tokens--;
+        dayBucket.tokens--;
+        granted[priority.ordinal()]++;
+        return true;
+    }
+
+    /**
+     * Gives back a token taken by {@link #tryAcquire(Priority)} for a call that was not sent
+     * after all
+     */
+    public synchronized void release(Priority priority) {
+        long now = clock.millis();
+        minuteBucket.refill(now);
+        dayBucket.refill(now);
+
+        minuteBucket.tokens = Math.min(minuteBucket.capacity, minuteBucket.tokens + 1);
+        dayBucket.tokens = Math.min(dayBucket.capacity, dayBucket.tokens + 1);
+        granted[priority.ordinal()]--;
+    }
+
+    /**
+     * Whether {@code calls} calls of the priority would be granted now, without taking any tokens
+     */
+    public synchronized boolean hasBudget(Priority priority, int calls) {
+        long now = clock.millis();
+        minuteBucket.refill(now);
+        dayBucket.refill(now);
+
+        double reserve = reserves.getOrDefault(priority, 0.0);
+        return minuteBucket.tokens - calls >= minuteBucket.capacity * reserve
+                && dayBucket.tokens - calls >= dayBucket.capacity * reserve;
+    }
+
+    public synchronized long getGranted(Priority priority) {
+        return granted[priority.ordinal()];
+    }
+
+    public synchronized long getRejected(Priority priority) {
+        return rejected[priority.ordinal()];
+    }
+
+    public synchronized long getMinuteTokens() {
+        minuteBucket.refill(clock.millis());
+        return (long) minuteBucket.tokens;
+    }
+
+    public synchronized long getDayTokens() {
+        dayBucket.refill(clock.millis());
+        return (long) dayBucket.tokens;
+    }
+
+    private static class TokenBucket {
+        private final long capacity;
+        private final double tokensPerMilli;
+
+        private double tokens;
+        private long lastRefill;
+
+        private TokenBucket(long capacity, Duration period, long now) {
+            this.capacity = capacity;
+            this.tokensPerMilli = (double) capacity / period.toMillis();
+            this.tokens = capacity;
+            this.lastRefill = now;
+        }
+
+        private void refill(long now) {
+            if (now > lastRefill) {
+                tokens = Math.min(capacity, tokens + (now - lastRefill) * tokensPerMilli);
+                lastRefill = now;
+            }
+        }
+    }
+}
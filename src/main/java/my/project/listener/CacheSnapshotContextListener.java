@@ -0,0 +1,41 @@
+package my.project.listener;
+
+import jakarta.servlet.ServletContextEvent;
+import jakarta.servlet.ServletContextListener;
+import jakarta.servlet.annotation.WebListener;
+import my.project.service.CacheSnapshotService;
+import my.project.util.ConfigUtil;
+
+import java.nio.file.Path;
+
+@WebListener
+public class CacheSnapshotContextListener implements ServletContextListener {
+    private CacheSnapshotService cacheSnapshotService;
+
+    @Override
+    public void contextInitialized(ServletContextEvent sce) {
+        if (!ConfigUtil.getBoolean("CACHE_SNAPSHOT_ENABLED", true)) {
+            return;
+        }
+
+        // A directory of the application user rather than the shared temporary one, which anyone
+        // could place a snapshot in
+        String defaultPath = Path.of(System.getProperty("user.home"), ".weather-app", "cache.snapshot").toString();
+        Path path = Path.of(ConfigUtil.getString("CACHE_SNAPSHOT_PATH", defaultPath));
+        long intervalSeconds = ConfigUtil.getLong("CACHE_SNAPSHOT_INTERVAL_SECONDS", 5 * 60);
+
+        cacheSnapshotService = new CacheSnapshotService(path);
+        cacheSnapshotService.loadSnapshot();
+
+        // Seconds to millis
+        cacheSnapshotService.scheduleSnapshots(intervalSeconds * 1000);
+    }
+
+    @Override
+    public void contextDestroyed(ServletContextEvent sce) {
+        if (cacheSnapshotService != null) {
+            cacheSnapshotService.cancelSnapshots();
+            cacheSnapshotService.writeSnapshot();
+        }
+    }
+}
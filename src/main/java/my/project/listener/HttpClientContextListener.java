@@ -0,0 +1,33 @@
+package my.project.listener;
+
+import jakarta.servlet.ServletContextEvent;
+import jakarta.servlet.ServletContextListener;
+import jakarta.servlet.annotation.WebListener;
+import lombok.extern.slf4j.Slf4j;
+import my.project.service.WeatherApiService;
+import my.project.util.ConfigUtil;
+import my.project.util.HttpClientUtil;
+
+@Slf4j
+@WebListener
+public class HttpClientContextListener implements ServletContextListener {
+    @Override
+    public void contextInitialized(ServletContextEvent sce) {
+        if (!ConfigUtil.getBoolean("HTTP_CLIENT_WARM_UP_ENABLED", true)) {
+            return;
+        }
+
+        // Not awaited, the application must start even when the api is unreachable
+        new WeatherApiService().warmUpConnection()
+                .whenComplete((ignored, throwable) -> {
+                    if (throwable != null) {
+                        log.warn("Failed to warm up connection to weather api", throwable);
+                    }
+                });
+    }
+
+    @Override
+    public void contextDestroyed(ServletContextEvent sce) {
+        HttpClientUtil.shutdown();
+    }
+}
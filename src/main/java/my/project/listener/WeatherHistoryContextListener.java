@@ -0,0 +1,57 @@
+package my.project.listener;
+
+import jakarta.servlet.ServletContextEvent;
+import jakarta.servlet.ServletContextListener;
+import jakarta.servlet.annotation.WebListener;
+import lombok.extern.slf4j.Slf4j;
+import my.project.service.WeatherHistoryService;
+import my.project.util.ConfigUtil;
+import my.project.util.HistoryUtil;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+@Slf4j
+@WebListener
+public class WeatherHistoryContextListener implements ServletContextListener {
+    private WeatherHistoryService weatherHistoryService;
+
+    @Override
+    public void contextInitialized(ServletContextEvent sce) {
+        if (!ConfigUtil.getBoolean("WEATHER_HISTORY_ENABLED", true)) {
+            return;
+        }
+
+        // Kept with the cache snapshot in a directory of the application user, the shared temporary
+        // one is cleared by the system and open to other users
+        String defaultPath = Path.of(System.getProperty("user.home"), ".weather-app", "history").toString();
+        Path path = Path.of(ConfigUtil.getString("WEATHER_HISTORY_PATH", defaultPath));
+        long flushIntervalSeconds = ConfigUtil.getLong("WEATHER_HISTORY_FLUSH_INTERVAL_SECONDS", 5 * 60);
+
+        // The application works without history, it is just not kept
+        try {
+            HistoryUtil.open(path);
+        } catch (IOException | RuntimeException e) {
+            log.error("Failed to open weather history at " + path + ": " + e.getMessage());
+            return;
+        }
+
+        weatherHistoryService = new WeatherHistoryService();
+
+        // Seconds to millis
+        weatherHistoryService.scheduleFlushes(flushIntervalSeconds * 1000);
+    }
+
+    @Override
+    public void contextDestroyed(ServletContextEvent sce) {
+        if (weatherHistoryService != null) {
+            weatherHistoryService.cancelFlushes();
+        }
+
+        try {
+            HistoryUtil.close();
+        } catch (IOException e) {
+            log.error("Failed to close weather history: " + e.getMessage());
+        }
+    }
+}
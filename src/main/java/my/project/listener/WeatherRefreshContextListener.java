@@ -0,0 +1,40 @@
+package my.project.listener;
+
+import jakarta.servlet.ServletContextEvent;
+import jakarta.servlet.ServletContextListener;
+import jakarta.servlet.annotation.WebListener;
+import my.project.service.WeatherRefreshService;
+import my.project.util.ConfigUtil;
+
+import java.time.Duration;
+
+@WebListener
+public class WeatherRefreshContextListener implements ServletContextListener {
+    private WeatherRefreshService weatherRefreshService;
+
+    @Override
+    public void contextInitialized(ServletContextEvent sce) {
+        if (!ConfigUtil.getBoolean("WEATHER_REFRESH_ENABLED", true)) {
+            return;
+        }
+
+        // Must stay below WEATHER_CACHE_TTL_SECONDS, otherwise entries become stale before they are refreshed
+        long freshnessSeconds = ConfigUtil.getLong("WEATHER_REFRESH_FRESHNESS_SECONDS", 5 * 60);
+        long intervalSeconds = ConfigUtil.getLong("WEATHER_REFRESH_INTERVAL_SECONDS", 60);
+        int parallelism = ConfigUtil.getInt("WEATHER_REFRESH_PARALLELISM", 8);
+
+        weatherRefreshService = new WeatherRefreshService(Duration.ofSeconds(freshnessSeconds), parallelism);
+
+        // Seconds to millis
+        weatherRefreshService.scheduleWeatherRefresh(intervalSeconds * 1000);
+
+        sce.getServletContext().setAttribute("weatherRefreshService", weatherRefreshService);
+    }
+
+    @Override
+    public void contextDestroyed(ServletContextEvent sce) {
+        if (weatherRefreshService != null) {
+            weatherRefreshService.cancelWeatherRefresh();
+        }
+    }
+}
@@ -3,10 +3,14 @@ package my.project.model.api;
 import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
 import lombok.Getter;
+import my.project.model.api.entity.Clouds;
 import my.project.model.api.entity.Main;
 import my.project.model.api.entity.Weather;
+import my.project.model.api.entity.Wind;
 import my.project.model.api.util.UnixTimestampDeserializer;
+import my.project.model.api.util.UnixTimestampSerializer;
 
 import java.time.LocalDateTime;
 import java.util.List;
@@ -18,11 +22,15 @@ public class ForecastApiResponse {
     @JsonProperty("list")
     private List<HourlyForecast> forecasts;
 
+    @JsonProperty("city")
+    private City city;
+
     @Getter
     @JsonIgnoreProperties(ignoreUnknown = true)
     public static class HourlyForecast {
         @JsonProperty("dt")
         @JsonDeserialize(using = UnixTimestampDeserializer.class)
+        @JsonSerialize(using = UnixTimestampSerializer.class)
         private LocalDateTime date;
 
         @JsonProperty("main")
@@ -30,5 +38,25 @@ public class ForecastApiResponse {
 
         @JsonProperty("weather")
         private List<Weather> weathers;
+
+        @JsonProperty("wind")
+        private Wind wind;
+
+        @JsonProperty("clouds")
+        private Clouds clouds;
+    }
+
+    @Getter
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    public static class City {
+        @JsonProperty("sunrise")
+        @JsonDeserialize(using = UnixTimestampDeserializer.class)
+        @JsonSerialize(using = UnixTimestampSerializer.class)
+        private LocalDateTime sunriseTime;
+
+        @JsonProperty("sunset")
+        @JsonDeserialize(using = UnixTimestampDeserializer.class)
+        @JsonSerialize(using = UnixTimestampSerializer.class)
+        private LocalDateTime sunsetTime;
     }
 }
@@ -0,0 +1,379 @@
+package my.project.model.api;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Forecast kept column by column in primitive arrays instead of one object graph per step, so a
+ * cached forecast takes a few kilobytes. Decimal values of the api have at most two decimals and
+ * are stored exactly as hundredths in shorts. Values the api did not send are stored as
+ * {@link #MISSING}, which getters of whole numbers return as it is and getters of decimals
+ * return as {@code NaN}, so reading a step boxes nothing. Descriptions repeat a lot, so every
+ * step only holds an index into a small table of distinct ones.
+ * <p>
+ * Built while the api response is parsed, see
+ * {@link my.project.model.api.util.ForecastSeriesDeserializer}. The arrays are never exposed,
+ * so a series can be shared between threads.
+ */
+public class ForecastSeries {
+    public static final short MISSING = Short.MIN_VALUE;
+
+    private static final double SCALE = 100;
+
+    // Epoch seconds
+    @JsonProperty("times")
+    private final long[] times;
+
+    // Hundredths of a degree
+    @JsonProperty("temperatures")
+    private final short[] temperatures;
+
+    @JsonProperty("feelsLikeTemperatures")
+    private final short[] feelsLikeTemperatures;
+
+    @JsonProperty("minimumTemperatures")
+    private final short[] minimumTemperatures;
+
+    @JsonProperty("maximumTemperatures")
+    private final short[] maximumTemperatures;
+
+    @JsonProperty("humidities")
+    private final short[] humidities;
+
+    @JsonProperty("pressures")
+    private final short[] pressures;
+
+    // Hundredths of the speed unit
+    @JsonProperty("windSpeeds")
+    private final short[] windSpeeds;
+
+    @JsonProperty("windDirections")
+    private final short[] windDirections;
+
+    @JsonProperty("windGusts")
+    private final short[] windGusts;
+
+    @JsonProperty("cloudiness")
+    private final short[] cloudiness;
+
+    // Weather condition codes of the api
+    @JsonProperty("conditionCodes")
+    private final short[] conditionCodes;
+
+    @JsonProperty("descriptionIndexes")
+    private final byte[] descriptionIndexes;
+
+    @JsonProperty("descriptions")
+    private final String[] descriptions;
+
+    // Epoch seconds, 0 when the api did not send them
+    @JsonProperty("sunriseTime")
+    private final long sunriseTime;
+
+    @JsonProperty("sunsetTime")
+    private final long sunsetTime;
+
+    @JsonCreator
+    private ForecastSeries(@JsonProperty("times") long[] times,
+                           @JsonProperty("temperatures") short[] temperatures,
+                           @JsonProperty("feelsLikeTemperatures") short[] feelsLikeTemperatures,
+                           @JsonProperty("minimumTemperatures") short[] minimumTemperatures,
+                           @JsonProperty("maximumTemperatures") short[] maximumTemperatures,
+                           @JsonProperty("humidities") short[] humidities,
+                           @JsonProperty("pressures") short[] pressures,
+                           @JsonProperty("windSpeeds") short[] windSpeeds,
+                           @JsonProperty("windDirections") short[] windDirections,
+                           @JsonProperty("windGusts") short[] windGusts,
+                           @JsonProperty("cloudiness") short[] cloudiness,
+                           @JsonProperty("conditionCodes") short[] conditionCodes,
+                           @JsonProperty("descriptionIndexes") byte[] descriptionIndexes,
+                           @JsonProperty("descriptions") String[] descriptions,
+                           @JsonProperty("sunriseTime") long sunriseTime,
+                           @JsonProperty("sunsetTime") long sunsetTime) {
+        this.times = times;
+        this.temperatures = temperatures;
+        this.feelsLikeTemperatures = feelsLikeTemperatures;
+        this.minimumTemperatures = minimumTemperatures;
+        this.maximumTemperatures = maximumTemperatures;
+        this.humidities = humidities;
+        this.pressures = pressures;
+        this.windSpeeds = windSpeeds;
+        this.windDirections = windDirections;
+        this.windGusts = windGusts;
+        this.cloudiness = cloudiness;
+        this.conditionCodes = conditionCodes;
+        this.descriptionIndexes = descriptionIndexes;
+        this.descriptions = descriptions;
+        // Shared by every cached forecast, also when restored from a snapshot
+        for (int i = 0; i < descriptions.length; i++) {
+            if (descriptions[i] != null) {
+                descriptions[i] = descriptions[i].intern();
+            }
+        }
+        this.sunriseTime = sunriseTime;
+        this.sunsetTime = sunsetTime;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public int size() {
+        return times.length;
+    }
+
+    public long getTime(int step) {
+        return times[step];
+    }
+
+    public double getTemperature(int step) {
+        return toDecimal(temperatures[step]);
+    }
+
+    public double getFeelsLikeTemperature(int step) {
+        return toDecimal(feelsLikeTemperatures[step]);
+    }
+
+    public double getMinimumTemperature(int step) {
+        return toDecimal(minimumTemperatures[step]);
+    }
+
+    public double getMaximumTemperature(int step) {
+        return toDecimal(maximumTemperatures[step]);
+    }
+
+    public int getHumidity(int step) {
+        return humidities[step];
+    }
+
+    public int getPressure(int step) {
+        return pressures[step];
+    }
+
+    public double getWindSpeed(int step) {
+        return toDecimal(windSpeeds[step]);
+    }
+
+    public int getWindDirection(int step) {
+        return windDirections[step];
+    }
+
+    public double getWindGust(int step) {
+        return toDecimal(windGusts[step]);
+    }
+
+    public int getCloudiness(int step) {
+        return cloudiness[step];
+    }
+
+    /**
+     * Hundredths of a degree, for aggregations
+     */
+    public short getTemperatureHundredths(int step) {
+        return temperatures[step];
+    }
+
+    public int getConditionCode(int step) {
+        return conditionCodes[step];
+    }
+
+    public String getDescription(int step) {
+        return descriptions[descriptionIndexes[step] & 0xff];
+    }
+
+    public long getSunriseTime() {
+        return sunriseTime;
+    }
+
+    public long getSunsetTime() {
+        return sunsetTime;
+    }
+
+    private static double toDecimal(short value) {
+        return value == MISSING ? Double.NaN : value / SCALE;
+    }
+
+    /**
+     * Collects steps one by one, a value that is not set stays missing
+     */
+    public static class Builder {
+        // Descriptions are indexed by an unsigned byte
+        private static final int MAX_DESCRIPTIONS = 256;
+
+        private int size;
+        private long[] times = new long[40];
+        private short[][] columns = new short[Column.values().length][40];
+        private byte[] descriptionIndexes = new byte[40];
+
+        // Index 0 stands for a step without a description
+        private final List<String> descriptions = new ArrayList<>(List.of(""));
+        private final Map<String, Integer> descriptionIndexByText = new HashMap<>();
+
+        private long sunriseTime;
+        private long sunsetTime;
+
+        private Builder() {
+            for (short[] column : columns) {
+                Arrays.fill(column, MISSING);
+            }
+        }
+
+        public Builder addStep(long time) {
+            if (size == times.length) {
+                grow();
+            }
+            times[size++] = time;
+            return this;
+        }
+
+        public Builder temperature(double value) {
+            return setDecimal(Column.TEMPERATURE, value);
+        }
+
+        public Builder feelsLikeTemperature(double value) {
+            return setDecimal(Column.FEELS_LIKE_TEMPERATURE, value);
+        }
+
+        public Builder minimumTemperature(double value) {
+            return setDecimal(Column.MINIMUM_TEMPERATURE, value);
+        }
+
+        public Builder maximumTemperature(double value) {
+            return setDecimal(Column.MAXIMUM_TEMPERATURE, value);
+        }
+
+        public Builder humidity(int value) {
+            return setInteger(Column.HUMIDITY, value);
+        }
+
+        public Builder pressure(int value) {
+            return setInteger(Column.PRESSURE, value);
+        }
+
+        public Builder windSpeed(double value) {
+            return setDecimal(Column.WIND_SPEED, value);
+        }
+
+        public Builder windDirection(int value) {
+            return setInteger(Column.WIND_DIRECTION, value);
+        }
+
+        public Builder windGust(double value) {
+            return setDecimal(Column.WIND_GUST, value);
+        }
+
+        public Builder cloudiness(int value) {
+            return setInteger(Column.CLOUDINESS, value);
+        }
+
+        public Builder conditionCode(int value) {
+            return setInteger(Column.CONDITION_CODE, value);
+        }
+
+        public Builder description(String value) {
+            Integer index = descriptionIndexByText.get(value);
+            if (index == null) {
+                if (descriptions.size() == MAX_DESCRIPTIONS) {
+                    throw new IllegalStateException("Too many distinct descriptions in one forecast");
+                }
+                index = descriptions.size();
+                descriptions.add(value);
+                descriptionIndexByText.put(value, index);
+            }
+            descriptionIndexes[currentStep()] = (byte) (int) index;
+            return this;
+        }
+
+        public Builder sunriseTime(long value) {
+            sunriseTime = value;
+            return this;
+        }
+
+        public Builder sunsetTime(long value) {
+            sunsetTime = value;
+            return this;
+        }
+
+        public ForecastSeries build() {
+            String[] descriptionTable = descriptions.toArray(new String[0]);
+            descriptionTable[0] = null;
+
+            return new ForecastSeries(
+                    Arrays.copyOf(times, size),
+                    column(Column.TEMPERATURE),
+                    column(Column.FEELS_LIKE_TEMPERATURE),
+                    column(Column.MINIMUM_TEMPERATURE),
+                    column(Column.MAXIMUM_TEMPERATURE),
+                    column(Column.HUMIDITY),
+                    column(Column.PRESSURE),
+                    column(Column.WIND_SPEED),
+                    column(Column.WIND_DIRECTION),
+                    column(Column.WIND_GUST),
+                    column(Column.CLOUDINESS),
+                    column(Column.CONDITION_CODE),
+                    Arrays.copyOf(descriptionIndexes, size),
+                    descriptionTable,
+                    sunriseTime,
+                    sunsetTime
+            );
+        }
+
+        private Builder setDecimal(Column column, double value) {
+            // Math.round turns NaN into 0
+            return setShort(column, Double.isNaN(value) ? MISSING : Math.round(value * SCALE));
+        }
+
+        private Builder setInteger(Column column, int value) {
+            return setShort(column, value);
+        }
+
+        // A value out of range is kept as missing, so one odd value does not fail the whole forecast
+        private Builder setShort(Column column, long value) {
+            boolean inRange = value > MISSING && value <= Short.MAX_VALUE;
+            columns[column.ordinal()][currentStep()] = inRange ? (short) value : MISSING;
+            return this;
+        }
+
+        private int currentStep() {
+            if (size == 0) {
+                throw new IllegalStateException("No step has been added");
+            }
+            return size - 1;
+        }
+
+        private short[] column(Column column) {
+            return Arrays.copyOf(columns[column.ordinal()], size);
+        }
+
+        private void grow() {
+            int capacity = times.length * 2;
+
+            times = Arrays.copyOf(times, capacity);
+            descriptionIndexes = Arrays.copyOf(descriptionIndexes, capacity);
+            for (int i = 0; i < columns.length; i++) {
+                columns[i] = Arrays.copyOf(columns[i], capacity);
+                Arrays.fill(columns[i], size, capacity, MISSING);
+            }
+        }
+
+        private enum Column {
+            TEMPERATURE,
+            FEELS_LIKE_TEMPERATURE,
+            MINIMUM_TEMPERATURE,
+            MAXIMUM_TEMPERATURE,
+            HUMIDITY,
+            PRESSURE,
+            WIND_SPEED,
+            WIND_DIRECTION,
+            WIND_GUST,
+            CLOUDINESS,
+            CONDITION_CODE
+        }
+    }
+}
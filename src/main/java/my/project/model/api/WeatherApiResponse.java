@@ -3,12 +3,14 @@ package my.project.model.api;
 import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
 import lombok.Getter;
 import my.project.model.api.entity.Clouds;
 import my.project.model.api.entity.Main;
 import my.project.model.api.entity.Weather;
 import my.project.model.api.entity.Wind;
 import my.project.model.api.util.UnixTimestampDeserializer;
+import my.project.model.api.util.UnixTimestampSerializer;
 
 import java.time.LocalDateTime;
 import java.util.List;
@@ -30,6 +32,7 @@ public class WeatherApiResponse {
 
     @JsonProperty("dt")
     @JsonDeserialize(using = UnixTimestampDeserializer.class)
+    @JsonSerialize(using = UnixTimestampSerializer.class)
     private LocalDateTime date;
 
     @JsonProperty("sys")
@@ -40,10 +43,12 @@ public class WeatherApiResponse {
     public static class Sys {
         @JsonProperty("sunrise")
         @JsonDeserialize(using = UnixTimestampDeserializer.class)
+        @JsonSerialize(using = UnixTimestampSerializer.class)
         private LocalDateTime sunriseTime;
 
         @JsonProperty("sunset")
         @JsonDeserialize(using = UnixTimestampDeserializer.class)
+        @JsonSerialize(using = UnixTimestampSerializer.class)
         private LocalDateTime sunsetTime;
     }
 }
@@ -0,0 +1,228 @@
+package my.project.model.api.util;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.JsonDeserializer;
+import com.fasterxml.jackson.databind.util.TokenBuffer;
+import my.project.model.api.ForecastSeries;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Reads a forecast response of the api straight into a {@link ForecastSeries}, token by token,
+ * so no object is created for the steps. Fields that are not kept are skipped, as are null values.
+ * <p>
+ * Not registered on the class, since cache snapshots store the series in its own format.
+ */
+public class ForecastSeriesDeserializer extends JsonDeserializer<ForecastSeries> {
+    @Override
+    public ForecastSeries deserialize(JsonParser parser, DeserializationContext context) throws IOException {
+        ForecastSeries.Builder builder = ForecastSeries.builder();
+
+        expect(parser, parser.currentToken(), JsonToken.START_OBJECT, context);
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.getCurrentName();
+            JsonToken value = parser.nextToken();
+
+            if ("list".equals(field) && value == JsonToken.START_ARRAY) {
+                while (parser.nextToken() == JsonToken.START_OBJECT) {
+                    readStep(parser, builder, context);
+                }
+            } else if ("city".equals(field) && value == JsonToken.START_OBJECT) {
+                readCity(parser, builder);
+            } else {
+                parser.skipChildren();
+            }
+        }
+
+        return builder.build();
+    }
+
+    private static void readStep(JsonParser parser, ForecastSeries.Builder builder,
+                                 DeserializationContext context) throws IOException {
+        // The time comes first in api responses, sections before it are buffered just in case
+        boolean stepAdded = false;
+        Map<String, TokenBuffer> bufferedSections = null;
+
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.getCurrentName();
+            JsonToken value = parser.nextToken();
+
+            if ("dt".equals(field)) {
+                builder.addStep(parser.getValueAsLong());
+                stepAdded = true;
+
+                if (bufferedSections != null) {
+                    for (Map.Entry<String, TokenBuffer> section : bufferedSections.entrySet()) {
+                        JsonParser sectionParser = section.getValue().asParser(parser.getCodec());
+                        sectionParser.nextToken();
+                        readSection(section.getKey(), sectionParser, builder);
+                    }
+                }
+            } else if (value != JsonToken.START_OBJECT && value != JsonToken.START_ARRAY) {
+                // Scalars of a step such as visibility are not kept
+                continue;
+            } else if (stepAdded) {
+                readSection(field, parser, builder);
+            } else {
+                if (bufferedSections == null) {
+                    bufferedSections = new LinkedHashMap<>();
+                }
+                bufferedSections.put(field, context.bufferAsCopyOfValue(parser));
+            }
+        }
+
+        if (!stepAdded) {
+            context.reportInputMismatch(ForecastSeries.class, "Forecast step without time");
+        }
+    }
+
+    private static void readSection(String section, JsonParser parser, ForecastSeries.Builder step) throws IOException {
+        switch (section) {
+            case "main":
+                readMain(parser, step);
+                break;
+            case "weather":
+                readWeather(parser, step);
+                break;
+            case "wind":
+                readWind(parser, step);
+                break;
+            case "clouds":
+                readClouds(parser, step);
+                break;
+            default:
+                parser.skipChildren();
+        }
+    }
+
+    private static void readMain(JsonParser parser, ForecastSeries.Builder step) throws IOException {
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.getCurrentName();
+            if (parser.nextToken() == JsonToken.VALUE_NULL) {
+                // Read as a number it would be 0, the value stays missing instead
+                continue;
+            }
+
+            switch (field) {
+                case "temp":
+                    step.temperature(parser.getValueAsDouble());
+                    break;
+                case "feels_like":
+                    step.feelsLikeTemperature(parser.getValueAsDouble());
+                    break;
+                case "temp_min":
+                    step.minimumTemperature(parser.getValueAsDouble());
+                    break;
+                case "temp_max":
+                    step.maximumTemperature(parser.getValueAsDouble());
+                    break;
+                case "humidity":
+                    step.humidity(parser.getValueAsInt());
+                    break;
+                case "pressure":
+                    step.pressure(parser.getValueAsInt());
+                    break;
+                default:
+                    parser.skipChildren();
+            }
+        }
+    }
+
+    private static void readWeather(JsonParser parser, ForecastSeries.Builder step) throws IOException {
+        if (parser.currentToken() != JsonToken.START_ARRAY) {
+            parser.skipChildren();
+            return;
+        }
+
+        boolean first = true;
+        while (parser.nextToken() == JsonToken.START_OBJECT) {
+            // Only the primary condition is shown
+            if (!first) {
+                parser.skipChildren();
+                continue;
+            }
+            first = false;
+
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.getCurrentName();
+                if (parser.nextToken() == JsonToken.VALUE_NULL) {
+                    continue;
+                }
+
+                if ("id".equals(field)) {
+                    step.conditionCode(parser.getValueAsInt());
+                } else if ("description".equals(field)) {
+                    step.description(parser.getValueAsString());
+                } else {
+                    parser.skipChildren();
+                }
+            }
+        }
+    }
+
+    private static void readWind(JsonParser parser, ForecastSeries.Builder step) throws IOException {
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.getCurrentName();
+            if (parser.nextToken() == JsonToken.VALUE_NULL) {
+                continue;
+            }
+
+            switch (field) {
+                case "speed":
+                    step.windSpeed(parser.getValueAsDouble());
+                    break;
+                case "deg":
+                    step.windDirection(parser.getValueAsInt());
+                    break;
+                case "gust":
+                    step.windGust(parser.getValueAsDouble());
+                    break;
+                default:
+                    parser.skipChildren();
+            }
+        }
+    }
+
+    private static void readClouds(JsonParser parser, ForecastSeries.Builder step) throws IOException {
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.getCurrentName();
+            if (parser.nextToken() == JsonToken.VALUE_NULL) {
+                continue;
+            }
+
+            if ("all".equals(field)) {
+                step.cloudiness(parser.getValueAsInt());
+            } else {
+                parser.skipChildren();
+            }
+        }
+    }
+
+    private static void readCity(JsonParser parser, ForecastSeries.Builder builder) throws IOException {
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.getCurrentName();
+            if (parser.nextToken() == JsonToken.VALUE_NULL) {
+                continue;
+            }
+
+            if ("sunrise".equals(field)) {
+                builder.sunriseTime(parser.getValueAsLong());
+            } else if ("sunset".equals(field)) {
+                builder.sunsetTime(parser.getValueAsLong());
+            } else {
+                parser.skipChildren();
+            }
+        }
+    }
+
+    private static void expect(JsonParser parser, JsonToken actual, JsonToken expected,
+                               DeserializationContext context) throws IOException {
+        if (actual != expected) {
+            context.reportWrongTokenException(ForecastSeries.class, expected, "Unexpected token " + actual);
+        }
+    }
+}
@@ -10,13 +10,16 @@ import java.time.LocalDateTime;
 import java.time.ZoneId;
 
 public class UnixTimestampDeserializer extends JsonDeserializer<LocalDateTime> {
+    // Looked up once instead of for every timestamp, a forecast alone has 40 of them
+    private static final ZoneId ZONE_ID = ZoneId.systemDefault();
+
     @Override
     public LocalDateTime deserialize(JsonParser jsonParser, DeserializationContext deserializationContext) throws IOException {
         long timestampInSeconds = jsonParser.getValueAsLong();
 
         return LocalDateTime.ofInstant(
                 Instant.ofEpochSecond(timestampInSeconds),
-                ZoneId.systemDefault()
+                ZONE_ID
         );
     }
 }
@@ -0,0 +1,22 @@
+package my.project.model.api.util;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.JsonSerializer;
+import com.fasterxml.jackson.databind.SerializerProvider;
+
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+
+/**
+ * Counterpart of {@link UnixTimestampDeserializer}, so api responses can be written back
+ * in the form they were received
+ */
+public class UnixTimestampSerializer extends JsonSerializer<LocalDateTime> {
+    private static final ZoneId ZONE_ID = ZoneId.systemDefault();
+
+    @Override
+    public void serialize(LocalDateTime dateTime, JsonGenerator jsonGenerator, SerializerProvider serializerProvider) throws IOException {
+        jsonGenerator.writeNumber(dateTime.atZone(ZONE_ID).toEpochSecond());
+    }
+}
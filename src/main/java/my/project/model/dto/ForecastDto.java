@@ -0,0 +1,30 @@
+package my.project.model.dto;
+
+import lombok.Getter;
+
+import java.time.Instant;
+import java.util.Collections;
+import java.util.List;
+
+@Getter
+public class ForecastDto {
+    private final List<WeatherDto> hourlyForecast;
+
+    private final List<WeatherDto> dailyForecast;
+
+    // Of the day the forecast was received, null when the api did not send them
+    private final Instant sunrise;
+
+    private final Instant sunset;
+
+    public ForecastDto(List<WeatherDto> hourlyForecast, List<WeatherDto> dailyForecast) {
+        this(hourlyForecast, dailyForecast, null, null);
+    }
+
+    public ForecastDto(List<WeatherDto> hourlyForecast, List<WeatherDto> dailyForecast, Instant sunrise, Instant sunset) {
+        this.hourlyForecast = hourlyForecast == null ? null : Collections.unmodifiableList(hourlyForecast);
+        this.dailyForecast = dailyForecast == null ? null : Collections.unmodifiableList(dailyForecast);
+        this.sunrise = sunrise;
+        this.sunset = sunset;
+    }
+}
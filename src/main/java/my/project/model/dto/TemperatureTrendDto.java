@@ -0,0 +1,25 @@
+package my.project.model.dto;
+
+import lombok.Builder;
+import lombok.Value;
+
+import java.time.Instant;
+
+/**
+ * Observed temperatures of a location over a recent period
+ */
+@Value
+@Builder
+public class TemperatureTrendDto {
+    private final double minimum;
+
+    private final double maximum;
+
+    // Mean temperature of the last hour minus the one of the first hour of the period
+    private final double change;
+
+    // Start of the first hour of the period with observations
+    private final Instant since;
+
+    private final int observations;
+}
@@ -4,43 +4,186 @@ import lombok.*;
 import my.project.model.dto.enums.WeatherCondition;
 import my.project.model.dto.enums.TimeOfDay;
 
-import java.util.Date;
-
-@Getter
-@Setter
-@AllArgsConstructor
-@NoArgsConstructor
-@Builder
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+
+/**
+ * Weather as shown on the pages. Instances can not be changed once built, so one of them can
+ * be shared by every request that renders it. Numbers are primitives: decimals the api did not
+ * send are {@code NaN} and whole numbers are {@link #MISSING}.
+ */
+@Value
 public class WeatherDto {
-    private WeatherCondition weatherCondition;
+    public static final int MISSING = Integer.MIN_VALUE;
+
+    // Shown in place of a missing number
+    public static final String MISSING_TEXT = "–";
+
+    // Template utilities parse the pattern on every call, times read the same in every locale
+    private static final DateTimeFormatter TIME_FORMATTER = DateTimeFormatter.ofPattern("HH:mm:ss")
+            .withZone(ZoneId.systemDefault());
+    private static final DateTimeFormatter HOUR_FORMATTER = DateTimeFormatter.ofPattern("HH:mm")
+            .withZone(ZoneId.systemDefault());
+
+    private final WeatherCondition weatherCondition;
+
+    private final TimeOfDay timeOfDay;
+
+    private final String description;
+
+    private final double temperature;
+
+    private final double temperatureFeelsLike;
+
+    private final double temperatureMinimum;
+
+    private final double temperatureMaximum;
+
+    private final int humidity;
+
+    private final int pressure;
+
+    private final double windSpeed;
+
+    private final int windDirection;
+
+    private final double windGust;
+
+    private final int cloudiness;
+
+    private final Instant date;
 
-    private TimeOfDay timeOfDay;
+    private final Instant sunrise;
 
-    private String description;
+    private final Instant sunset;
 
-    private Double temperature;
+    // Time since the data was received from the api, negative when unknown
+    private final long dataAgeMinutes;
 
-    private Double temperatureFeelsLike;
+    @Builder(toBuilder = true)
+    private WeatherDto(WeatherCondition weatherCondition, TimeOfDay timeOfDay, String description,
+                       double temperature, double temperatureFeelsLike, double temperatureMinimum,
+                       double temperatureMaximum, int humidity, int pressure, double windSpeed,
+                       int windDirection, double windGust, int cloudiness, Instant date, Instant sunrise,
+                       Instant sunset, long dataAgeMinutes) {
+        this.weatherCondition = weatherCondition;
+        this.timeOfDay = timeOfDay;
+        // A handful of descriptions repeat for every location and every step
+        this.description = description == null ? null : description.intern();
+        this.temperature = temperature;
+        this.temperatureFeelsLike = temperatureFeelsLike;
+        this.temperatureMinimum = temperatureMinimum;
+        this.temperatureMaximum = temperatureMaximum;
+        this.humidity = humidity;
+        this.pressure = pressure;
+        this.windSpeed = windSpeed;
+        this.windDirection = windDirection;
+        this.windGust = windGust;
+        this.cloudiness = cloudiness;
+        this.date = date;
+        this.sunrise = sunrise;
+        this.sunset = sunset;
+        this.dataAgeMinutes = dataAgeMinutes;
+    }
 
-    private Double temperatureMinimum;
+    // Exposed as properties, templates read those far faster than they call methods
+    public boolean isWindGustKnown() {
+        return !Double.isNaN(windGust);
+    }
 
-    private Double temperatureMaximum;
+    public boolean isDataAgeKnown() {
+        return dataAgeMinutes >= 0;
+    }
 
-    private Integer humidity;
+    public boolean isTemperatureKnown() {
+        return !Double.isNaN(temperature);
+    }
 
-    private Integer pressure;
+    public boolean isTemperatureMinimumKnown() {
+        return !Double.isNaN(temperatureMinimum);
+    }
 
-    private Double windSpeed;
+    public boolean isTemperatureMaximumKnown() {
+        return !Double.isNaN(temperatureMaximum);
+    }
 
-    private Integer windDirection;
+    public String getTemperatureText() {
+        return toText(temperature);
+    }
 
-    private Double windGust;
+    public String getTemperatureFeelsLikeText() {
+        return toText(temperatureFeelsLike);
+    }
 
-    private Integer cloudiness;
+    public String getTemperatureMinimumText() {
+        return toText(temperatureMinimum);
+    }
 
-    private Date date;
+    public String getTemperatureMaximumText() {
+        return toText(temperatureMaximum);
+    }
 
-    private Date sunrise;
+    public String getHumidityText() {
+        return toText(humidity);
+    }
 
-    private Date sunset;
+    public String getPressureText() {
+        return toText(pressure);
+    }
+
+    public String getWindSpeedText() {
+        return toText(windSpeed);
+    }
+
+    public String getWindDirectionText() {
+        return toText(windDirection);
+    }
+
+    public String getCloudinessText() {
+        return toText(cloudiness);
+    }
+
+    public String getTimeText() {
+        return format(TIME_FORMATTER, date);
+    }
+
+    public String getHourText() {
+        return format(HOUR_FORMATTER, date);
+    }
+
+    public String getSunriseText() {
+        return format(TIME_FORMATTER, sunrise);
+    }
+
+    public String getSunsetText() {
+        return format(TIME_FORMATTER, sunset);
+    }
+
+    private static String toText(double value) {
+        return Double.isNaN(value) ? MISSING_TEXT : String.valueOf(value);
+    }
+
+    private static String toText(int value) {
+        return value == MISSING ? MISSING_TEXT : String.valueOf(value);
+    }
+
+    private static String format(DateTimeFormatter formatter, Instant time) {
+        return time == null ? null : formatter.format(time);
+    }
+
+    // Values that are not set are missing rather than zero
+    public static class WeatherDtoBuilder {
+        private double temperature = Double.NaN;
+        private double temperatureFeelsLike = Double.NaN;
+        private double temperatureMinimum = Double.NaN;
+        private double temperatureMaximum = Double.NaN;
+        private int humidity = MISSING;
+        private int pressure = MISSING;
+        private double windSpeed = Double.NaN;
+        private int windDirection = MISSING;
+        private double windGust = Double.NaN;
+        private int cloudiness = MISSING;
+        private long dataAgeMinutes = -1;
+    }
 }
@@ -10,30 +10,60 @@ public enum WeatherCondition {
     CLOUDS,
     UNDEFINED;
 
-    public static WeatherCondition getWeatherConditionForCode(Integer code) {
-        String codeStr = String.valueOf(code);
+    // Codes of the api have three digits
+    private static final WeatherCondition[] BY_CODE = new WeatherCondition[1000];
 
-        if (codeStr.startsWith("2")) {
-            return THUNDERSTORM;
-        }
-        if (codeStr.startsWith("3")) {
-            return DRIZZLE;
+    static {
+        for (int code = 0; code < BY_CODE.length; code++) {
+            BY_CODE[code] = getWeatherConditionForFirstDigit(code);
         }
-        if (codeStr.startsWith("5")) {
-            return RAIN;
-        }
-        if (codeStr.startsWith("6")) {
-            return SNOW;
+    }
+
+    public static WeatherCondition getWeatherConditionForCode(Integer code) {
+        return code == null ? UNDEFINED : getWeatherConditionForCode(code.intValue());
+    }
+
+    /**
+     * Looked up in a table, since it runs for every forecast step
+     */
+    public static WeatherCondition getWeatherConditionForCode(int code) {
+        if (code >= 0 && code < BY_CODE.length) {
+            return BY_CODE[code];
         }
-        if (codeStr.startsWith("7")) {
-            return ATMOSPHERE;
+        return getWeatherConditionForFirstDigit(code);
+    }
+
+    /**
+     * Condition groups of the api are told apart by the first digit of the code
+     */
+    private static WeatherCondition getWeatherConditionForFirstDigit(int code) {
+        if (code <= 0) {
+            return UNDEFINED;
         }
-        if (codeStr.equals("800")) {
+        if (code == 800) {
             return CLEAR;
         }
-        if (codeStr.startsWith("8")) {
-            return CLOUDS;
+
+        int firstDigit = code;
+        while (firstDigit >= 10) {
+            firstDigit /= 10;
+        }
+
+        switch (firstDigit) {
+            case 2:
+                return THUNDERSTORM;
+            case 3:
+                return DRIZZLE;
+            case 5:
+                return RAIN;
+            case 6:
+                return SNOW;
+            case 7:
+                return ATMOSPHERE;
+            case 8:
+                return CLOUDS;
+            default:
+                return UNDEFINED;
         }
-        return UNDEFINED;
     }
 }
@@ -0,0 +1,125 @@
+package my.project.service;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+import my.project.cache.CacheSnapshot;
+import my.project.cache.CacheSnapshot.KeyCodec;
+import my.project.cache.CoordinatesKey;
+import my.project.model.api.ForecastSeries;
+import my.project.model.api.LocationApiResponse;
+import my.project.model.api.WeatherApiResponse;
+import my.project.util.CacheUtil;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Timer;
+import java.util.TimerTask;
+
+/**
+ * Saves the application-wide caches to disk and loads them on startup, so a redeploy does not
+ * start with empty caches and a burst of api calls
+ */
+@Slf4j
+public class CacheSnapshotService {
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+    private static final KeyCodec<CoordinatesKey> COORDINATES_KEY_CODEC = new KeyCodec<>() {
+        @Override
+        public void write(DataOutputStream out, CoordinatesKey key) throws IOException {
+            out.writeDouble(key.getLatitude());
+            out.writeDouble(key.getLongitude());
+        }
+
+        @Override
+        public CoordinatesKey read(ByteBuffer buffer) {
+            return CoordinatesKey.of(buffer.getDouble(), buffer.getDouble());
+        }
+    };
+
+    private static final KeyCodec<String> STRING_KEY_CODEC = new KeyCodec<>() {
+        @Override
+        public void write(DataOutputStream out, String key) throws IOException {
+            CacheSnapshot.writeString(out, key);
+        }
+
+        @Override
+        public String read(ByteBuffer buffer) {
+            return CacheSnapshot.readString(buffer);
+        }
+    };
+
+    private final Path path;
+    private final CacheSnapshot snapshot = new CacheSnapshot()
+            .register("weather", CacheUtil.getWeatherCache(), COORDINATES_KEY_CODEC,
+                    OBJECT_MAPPER.writerFor(WeatherApiResponse.class),
+                    OBJECT_MAPPER.readerFor(WeatherApiResponse.class))
+            // Renamed with the change of the cached form, sections of older snapshots are skipped
+            .register("forecastSeries", CacheUtil.getForecastCache(), COORDINATES_KEY_CODEC,
+                    OBJECT_MAPPER.writerFor(ForecastSeries.class),
+                    OBJECT_MAPPER.readerFor(ForecastSeries.class))
+            .register("geocoding", CacheUtil.getGeocodingCache(), STRING_KEY_CODEC,
+                    OBJECT_MAPPER.writerFor(new TypeReference<List<LocationApiResponse>>() {}),
+                    OBJECT_MAPPER.readerFor(new TypeReference<List<LocationApiResponse>>() {}));
+
+    private Timer timer;
+
+    public CacheSnapshotService(Path path) {
+        this.path = path;
+    }
+
+    public synchronized void scheduleSnapshots(long interval) {
+        if (timer != null) {
+            timer.cancel();
+        }
+
+        CacheSnapshotTask cacheSnapshotTask = new CacheSnapshotTask();
+        timer = new Timer("cache-snapshot", true);
+
+        timer.schedule(cacheSnapshotTask, interval, interval);
+    }
+
+    public synchronized void cancelSnapshots() {
+        if (timer != null) {
+            timer.cancel();
+            timer = null;
+        }
+    }
+
+    public void loadSnapshot() {
+        long startTime = System.nanoTime();
+
+        try {
+            int restored = snapshot.load(path);
+            log.info("Restored " + restored + " cache entries from " + path
+                    + " in " + (System.nanoTime() - startTime) / 1_000_000 + " ms");
+            if (snapshot.getSkippedEntries() > 0) {
+                log.warn("Skipped " + snapshot.getSkippedEntries() + " unreadable cache entries of " + path);
+            }
+
+        } catch (IOException e) {
+            // The caches are filled from the api as usual
+            log.warn("Failed to load cache snapshot: " + e.getMessage());
+        }
+    }
+
+    public synchronized void writeSnapshot() {
+        try {
+            int written = snapshot.write(path);
+            log.info("Saved " + written + " cache entries to " + path);
+
+        } catch (IOException e) {
+            log.warn("Failed to save cache snapshot: " + e.getMessage());
+        }
+    }
+
+    private class CacheSnapshotTask extends TimerTask {
+        @Override
+        public void run() {
+            writeSnapshot();
+        }
+    }
+}
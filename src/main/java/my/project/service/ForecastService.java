@@ -1,120 +1,224 @@
 package my.project.service;
 
 import my.project.model.dto.enums.WeatherCondition;
-import my.project.model.api.ForecastApiResponse;
-import my.project.model.api.ForecastApiResponse.HourlyForecast;
-import my.project.model.api.entity.Weather;
+import my.project.model.api.ForecastSeries;
+import my.project.model.dto.ForecastDto;
 import my.project.model.dto.WeatherDto;
 import my.project.model.dto.enums.TimeOfDay;
 
+import java.time.Duration;
+import java.time.Instant;
 import java.time.LocalDate;
+import java.time.LocalDateTime;
 import java.time.ZoneId;
-import java.util.*;
-import java.util.stream.Collectors;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
 
 import static my.project.model.dto.enums.TimeOfDay.UNDEFINED;
 
 public class ForecastService {
-    public List<WeatherDto> getHourlyForecast(ForecastApiResponse response) {
-        return response.getForecasts().stream()
-                .map(ForecastService::buildWeatherDto)
-                .collect(Collectors.toList());
+    /**
+     * Hourly and daily forecasts built in one pass over the series, which holds the steps in
+     * chronological order. The last day is usually cut short by the end of the forecast, so it
+     * is left out of the daily forecast. Lists of the result can not be modified.
+     */
+    public ForecastDto getForecast(ForecastSeries series) {
+        ZoneId zoneId = ZoneId.systemDefault();
+
+        List<WeatherDto> hourlyForecast = new ArrayList<>(series.size());
+        List<WeatherDto> dailyForecast = new ArrayList<>();
+
+        LocalDate lastDay = series.size() == 0 ? null : toLocalDateTime(series.getTime(series.size() - 1), zoneId).toLocalDate();
+        DailyAggregate day = null;
+
+        for (int step = 0; step < series.size(); step++) {
+            LocalDateTime time = toLocalDateTime(series.getTime(step), zoneId);
+            WeatherDto weatherDto = buildWeatherDto(series, step, time);
+            hourlyForecast.add(weatherDto);
+
+            LocalDate date = time.toLocalDate();
+            if (!date.isBefore(lastDay)) {
+                continue;
+            }
+
+            if (day == null || !date.isEqual(day.date)) {
+                if (day != null) {
+                    dailyForecast.add(day.toWeatherDto());
+                }
+                day = new DailyAggregate(date, weatherDto.getDate());
+            }
+            day.add(series.getTemperatureHundredths(step), weatherDto.getWeatherCondition());
+        }
+
+        if (day != null) {
+            dailyForecast.add(day.toWeatherDto());
+        }
+
+        return new ForecastDto(
+                hourlyForecast,
+                dailyForecast,
+                toInstant(series.getSunriseTime()),
+                toInstant(series.getSunsetTime())
+        );
     }
 
-    public List<WeatherDto> getDailyForecast(ForecastApiResponse response) {
-        List<HourlyForecast> hourlyForecasts = response.getForecasts();
+    /**
+     * Weather at the given time estimated from the hourly forecast. Numbers are interpolated
+     * linearly between the steps around the time and conditions are taken from the nearer step.
+     * Before the first step its values are used as they are, as long as it is no further away
+     * than {@code maxGap}.
+     */
+    public Optional<WeatherDto> getWeatherAt(ForecastSeries series, Instant time, Duration maxGap) {
+        if (series.size() == 0) {
+            return Optional.empty();
+        }
 
-        Map<LocalDate, List<HourlyForecast>> dailyForecasts = getDailyForecasts(hourlyForecasts);
+        ZoneId zoneId = ZoneId.systemDefault();
+        long seconds = time.getEpochSecond();
 
-        return dailyForecasts.values()
-                .stream()
-                .map(ForecastService::buildWeatherDto)
-                .collect(Collectors.toList());
-    }
+        long firstTime = series.getTime(0);
+        if (seconds < firstTime) {
+            boolean closeEnough = firstTime - seconds <= maxGap.getSeconds();
+            WeatherDto first = buildWeatherDto(series, 0, toLocalDateTime(firstTime, zoneId));
+            return closeEnough ? Optional.of(interpolate(first, first, 0, time)) : Optional.empty();
+        }
 
-    private static Map<LocalDate, List<HourlyForecast>> getDailyForecasts(List<HourlyForecast> hourlyForecasts) {
-        Map<LocalDate, List<HourlyForecast>> dailyForecasts = new HashMap<>();
+        for (int step = 0; step + 1 < series.size(); step++) {
+            long start = series.getTime(step);
+            long end = series.getTime(step + 1);
 
-        LocalDate currentDay = LocalDate.from(hourlyForecasts.get(0).getDate());
-        LocalDate lastDay = LocalDate.from(hourlyForecasts.get(hourlyForecasts.size() - 1).getDate());
+            if (seconds < end) {
+                WeatherDto before = buildWeatherDto(series, step, toLocalDateTime(start, zoneId));
+                WeatherDto after = buildWeatherDto(series, step + 1, toLocalDateTime(end, zoneId));
 
-        while (currentDay.isBefore(lastDay)) {
-            dailyForecasts.put(currentDay, getForecastsForDay(hourlyForecasts, currentDay));
-            currentDay = currentDay.plusDays(1);
+                double fraction = (time.toEpochMilli() - start * 1000.0) / ((end - start) * 1000.0);
+                return Optional.of(interpolate(before, after, fraction, time));
+            }
         }
 
-        return dailyForecasts.entrySet()
-                .stream()
-                .sorted(Map.Entry.comparingByKey(LocalDate::compareTo))
-                .collect(Collectors.toMap(
-                        Map.Entry::getKey, Map.Entry::getValue,
-                        (oldValue, newValue) -> oldValue,
-                        LinkedHashMap::new)
-                );
+        return Optional.empty();
     }
 
-    private static WeatherDto buildWeatherDto(HourlyForecast hourlyForecast) {
-        Weather weather = hourlyForecast.getWeathers().get(0);
+    private static WeatherDto interpolate(WeatherDto before, WeatherDto after, double fraction, Instant time) {
+        WeatherDto nearer = fraction < 0.5 ? before : after;
+        LocalDateTime localTime = LocalDateTime.ofInstant(time, ZoneId.systemDefault());
+
         return WeatherDto.builder()
-                .date(Date.from(hourlyForecast.getDate().atZone(ZoneId.systemDefault()).toInstant()))
-                .description(weather.getDescription())
-                .temperature(hourlyForecast.getMain().getTemperature())
-                .timeOfDay(TimeOfDay.getTimeOfDayForTime(hourlyForecast.getDate()))
-                .weatherCondition(WeatherCondition.getWeatherConditionForCode(weather.getId()))
+                .date(time)
+                .timeOfDay(TimeOfDay.getTimeOfDayForTime(localTime))
+                .weatherCondition(nearer.getWeatherCondition())
+                .description(nearer.getDescription())
+                .temperature(interpolate(before.getTemperature(), after.getTemperature(), fraction))
+                .temperatureFeelsLike(interpolate(before.getTemperatureFeelsLike(), after.getTemperatureFeelsLike(), fraction))
+                .temperatureMinimum(interpolate(before.getTemperatureMinimum(), after.getTemperatureMinimum(), fraction))
+                .temperatureMaximum(interpolate(before.getTemperatureMaximum(), after.getTemperatureMaximum(), fraction))
+                .humidity(interpolate(before.getHumidity(), after.getHumidity(), fraction))
+                .pressure(interpolate(before.getPressure(), after.getPressure(), fraction))
+                .windSpeed(interpolate(before.getWindSpeed(), after.getWindSpeed(), fraction))
+                // Angles do not interpolate linearly across north
+                .windDirection(nearer.getWindDirection())
+                .windGust(interpolate(before.getWindGust(), after.getWindGust(), fraction))
+                .cloudiness(interpolate(before.getCloudiness(), after.getCloudiness(), fraction))
                 .build();
     }
 
-    private static WeatherDto buildWeatherDto(List<HourlyForecast> hourlyForecasts) {
-        return WeatherDto.builder()
-                .date(Date.from(hourlyForecasts.get(0).getDate().atZone(ZoneId.systemDefault()).toInstant()))
-                .temperature(getAverageTemperature(hourlyForecasts))
-                .temperatureMaximum(getMaxTemperature(hourlyForecasts))
-                .temperatureMinimum(getMinTemperature(hourlyForecasts))
-                .timeOfDay(UNDEFINED)
-                .weatherCondition(getAverageWeather(hourlyForecasts))
-                .build();
+    private static double interpolate(double before, double after, double fraction) {
+        if (Double.isNaN(before) || Double.isNaN(after)) {
+            return fraction < 0.5 ? before : after;
+        }
+        // Rounded like the values sent by the api
+        return Math.round((before + (after - before) * fraction) * 100) / 100.0;
     }
 
-    private static List<HourlyForecast> getForecastsForDay(List<HourlyForecast> forecasts, LocalDate day) {
-        return forecasts.stream()
-                .filter(forecast -> forecast.getDate().toLocalDate().isEqual(day))
-                .collect(Collectors.toList());
+    private static int interpolate(int before, int after, double fraction) {
+        if (before == WeatherDto.MISSING || after == WeatherDto.MISSING) {
+            return fraction < 0.5 ? before : after;
+        }
+        return (int) Math.round(before + (after - before) * fraction);
     }
 
-    private static Double getAverageTemperature(List<HourlyForecast> forecasts) {
-        return forecasts.stream()
-                .map(forecast -> forecast.getMain().getTemperature())
-                .mapToDouble(Double::doubleValue)
-                .average()
-                .orElse(Double.NaN);
+    private static LocalDateTime toLocalDateTime(long epochSecond, ZoneId zoneId) {
+        return LocalDateTime.ofInstant(Instant.ofEpochSecond(epochSecond), zoneId);
     }
 
-    private static Double getMinTemperature(List<HourlyForecast> forecasts) {
-        return forecasts.stream()
-                .map(forecast -> forecast.getMain().getTemperature())
-                .min(Double::compareTo)
-                .orElse(Double.NaN);
+    private static Instant toInstant(long epochSecond) {
+        return epochSecond == 0 ? null : Instant.ofEpochSecond(epochSecond);
     }
 
-    private static Double getMaxTemperature(List<HourlyForecast> forecasts) {
-        return forecasts.stream()
-                .map(forecast -> forecast.getMain().getTemperature())
-                .max(Double::compareTo)
-                .orElse(Double.NaN);
+    // Series store missing values in a short, the dto in an int
+    private static int toWholeNumber(int value) {
+        return value == ForecastSeries.MISSING ? WeatherDto.MISSING : value;
     }
 
-    private static WeatherCondition getAverageWeather(List<HourlyForecast> forecasts) {
-        return forecasts.stream()
-                .map(forecast -> forecast.getWeathers().get(0).getId())
-                .map(WeatherCondition::getWeatherConditionForCode)
-                .collect(Collectors.groupingBy(
-                        weatherCondition -> weatherCondition,
-                        Collectors.counting()
-                ))
-                .entrySet()
-                .stream()
-                .max(Comparator.comparingLong(Map.Entry::getValue))
-                .map(Map.Entry::getKey)
-                .orElse(WeatherCondition.UNDEFINED);
+    private static WeatherDto buildWeatherDto(ForecastSeries series, int step, LocalDateTime time) {
+        return WeatherDto.builder()
+                .date(Instant.ofEpochSecond(series.getTime(step)))
+                .description(series.getDescription(step))
+                .temperature(series.getTemperature(step))
+                .temperatureFeelsLike(series.getFeelsLikeTemperature(step))
+                .temperatureMinimum(series.getMinimumTemperature(step))
+                .temperatureMaximum(series.getMaximumTemperature(step))
+                .humidity(toWholeNumber(series.getHumidity(step)))
+                .pressure(toWholeNumber(series.getPressure(step)))
+                .windSpeed(series.getWindSpeed(step))
+                .windDirection(toWholeNumber(series.getWindDirection(step)))
+                .windGust(series.getWindGust(step))
+                .cloudiness(toWholeNumber(series.getCloudiness(step)))
+                .timeOfDay(TimeOfDay.getTimeOfDayForTime(time))
+                .weatherCondition(WeatherCondition.getWeatherConditionForCode(series.getConditionCode(step)))
+                .build();
+    }
+
+    private static class DailyAggregate {
+        private static final WeatherCondition[] CONDITIONS = WeatherCondition.values();
+
+        private final LocalDate date;
+        private final Instant firstTime;
+
+        // Temperatures in hundredths of a degree
+        private final int[] conditionCounts = new int[CONDITIONS.length];
+        private long temperatureSum;
+        private int temperatureMinimum = Integer.MAX_VALUE;
+        private int temperatureMaximum = Integer.MIN_VALUE;
+        private int temperatureCount;
+
+        private DailyAggregate(LocalDate date, Instant firstTime) {
+            this.date = date;
+            this.firstTime = firstTime;
+        }
+
+        private void add(short temperature, WeatherCondition condition) {
+            if (temperature != ForecastSeries.MISSING) {
+                temperatureSum += temperature;
+                temperatureMinimum = Math.min(temperatureMinimum, temperature);
+                temperatureMaximum = Math.max(temperatureMaximum, temperature);
+                temperatureCount++;
+            }
+
+            conditionCounts[condition.ordinal()]++;
+        }
+
+        private WeatherDto toWeatherDto() {
+            return WeatherDto.builder()
+                    .date(firstTime)
+                    .temperature(temperatureCount == 0 ? Double.NaN : temperatureSum / (temperatureCount * 100.0))
+                    .temperatureMaximum(temperatureCount == 0 ? Double.NaN : temperatureMaximum / 100.0)
+                    .temperatureMinimum(temperatureCount == 0 ? Double.NaN : temperatureMinimum / 100.0)
+                    .timeOfDay(UNDEFINED)
+                    .weatherCondition(getMostFrequentCondition())
+                    .build();
+        }
+
+        // Ties go to the condition declared first
+        private WeatherCondition getMostFrequentCondition() {
+            int mostFrequent = 0;
+            for (int i = 1; i < conditionCounts.length; i++) {
+                if (conditionCounts[i] > conditionCounts[mostFrequent]) {
+                    mostFrequent = i;
+                }
+            }
+            return CONDITIONS[mostFrequent];
+        }
     }
 }
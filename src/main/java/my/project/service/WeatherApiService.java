@@ -2,37 +2,136 @@ package my.project.service;
 
 import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.module.SimpleModule;
+import jakarta.servlet.ServletException;
 import my.project.exception.api.ForecastApiCallException;
 import my.project.exception.api.GeocodingApiCallException;
 import my.project.exception.api.WeatherApiCallException;
+import my.project.limit.AimdLimiter;
+import my.project.limit.HedgingPolicy;
+import my.project.limit.Priority;
+import my.project.limit.QuotaBudget;
 import my.project.model.Location;
 import my.project.model.api.ForecastApiResponse;
+import my.project.model.api.ForecastSeries;
 import my.project.model.api.LocationApiResponse;
 import my.project.model.api.WeatherApiResponse;
+import my.project.model.api.util.ForecastSeriesDeserializer;
+import my.project.util.ConfigUtil;
+import my.project.util.ContentEncodingUtil;
+import my.project.util.HttpClientUtil;
 
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
 import java.net.URI;
+import java.net.URLEncoder;
 import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
 
 public class WeatherApiService {
-    private static final String APP_ID = "ff54fce37c4721c1b5e9e22bbd8e9274";
-    private static final String BASE_API_URL = "https://api.openweathermap.org";
+    private static final String APP_ID = ConfigUtil.getString("OPENWEATHER_APP_ID", "ff54fce37c4721c1b5e9e22bbd8e9274");
+    private static final String BASE_API_URL = ConfigUtil.getString("WEATHER_API_BASE_URL", "https://api.openweathermap.org");
     private static final String WEATHER_API_URL_SUFFIX = "/data/2.5/weather";
     private static final String FORECAST_API_URL_SUFFIX = "/data/2.5/forecast";
     private static final String GEOCODING_API_URL_SUFFIX = "/geo/1.0/direct";
 
-    private final HttpClient client = HttpClient.newHttpClient();
-    private final ObjectMapper objectMapper = new ObjectMapper();
+    // Shared by every instance, so the limit applies to the whole application. When the api slows
+    // down the limit shrinks and excess calls fail fast instead of holding request threads.
+    private static final AimdLimiter CONCURRENCY_LIMITER = new AimdLimiter(
+            ConfigUtil.getInt("WEATHER_API_INITIAL_IN_FLIGHT_CALLS", 32),
+            ConfigUtil.getInt("WEATHER_API_MIN_IN_FLIGHT_CALLS", 4),
+            ConfigUtil.getInt("WEATHER_API_MAX_IN_FLIGHT_CALLS", 64),
+            ConfigUtil.getLong("WEATHER_API_LATENCY_THRESHOLD_MILLIS", 1000),
+            ConfigUtil.getDouble("WEATHER_API_LIMIT_BACKOFF_RATIO", 0.9)
+    );
+
+    // Every call of the application counts against the quota of the same APP_ID
+    private static final QuotaBudget QUOTA_BUDGET = new QuotaBudget(
+            ConfigUtil.getLong("WEATHER_API_CALLS_PER_MINUTE", 60),
+            ConfigUtil.getLong("WEATHER_API_CALLS_PER_DAY", 30_000),
+            Map.of(
+                    Priority.SEARCH, ConfigUtil.getDouble("WEATHER_API_SEARCH_QUOTA_RESERVE", 0.2),
+                    Priority.BACKGROUND, ConfigUtil.getDouble("WEATHER_API_BACKGROUND_QUOTA_RESERVE", 0.5)
+            )
+    );
+
+    // Page loads wait for their calls, so a call slower than most recent ones is sent once more
+    // and the first response is used. Background calls are never hedged.
+    private static final boolean HEDGING_ENABLED = ConfigUtil.getBoolean("WEATHER_API_HEDGING_ENABLED", true);
+    private static final HedgingPolicy HEDGING_POLICY = new HedgingPolicy(
+            ConfigUtil.getDouble("WEATHER_API_HEDGE_PERCENTILE", 95),
+            ConfigUtil.getDouble("WEATHER_API_MAX_HEDGE_RATIO", 0.05),
+            ConfigUtil.getLong("WEATHER_API_MIN_HEDGE_DELAY_MILLIS", 50),
+            ConfigUtil.getInt("WEATHER_API_HEDGE_LATENCY_WINDOW", 200),
+            ConfigUtil.getInt("WEATHER_API_HEDGE_MIN_SAMPLES", 20)
+    );
+
+    // Readers are immutable and thread-safe, so they are built once and parse UTF-8 bytes directly
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+    private static final ObjectReader WEATHER_READER = OBJECT_MAPPER.readerFor(WeatherApiResponse.class);
+    private static final ObjectReader FORECAST_READER = OBJECT_MAPPER.readerFor(ForecastApiResponse.class);
+    // Registered on a reader of its own, cache snapshots read the series in its own format
+    private static final ObjectReader FORECAST_SERIES_READER = new ObjectMapper()
+            .registerModule(new SimpleModule().addDeserializer(ForecastSeries.class, new ForecastSeriesDeserializer()))
+            .readerFor(ForecastSeries.class);
+    private static final ObjectReader LOCATIONS_READER =
+            OBJECT_MAPPER.readerFor(new TypeReference<List<LocationApiResponse>>() {});
+
+    private final HttpClient client = HttpClientUtil.getHttpClient();
+    private final String baseApiUrl;
+    private final AimdLimiter concurrencyLimiter;
+    private final QuotaBudget quotaBudget;
+    private final HedgingPolicy hedgingPolicy;
+
+    public WeatherApiService() {
+        this(BASE_API_URL);
+    }
+
+    public WeatherApiService(String baseApiUrl) {
+        this(baseApiUrl, CONCURRENCY_LIMITER, QUOTA_BUDGET, HEDGING_POLICY);
+    }
+
+    /**
+     * Limits of its own instead of the application-wide ones, for tests
+     */
+    WeatherApiService(String baseApiUrl, AimdLimiter concurrencyLimiter, QuotaBudget quotaBudget,
+                      HedgingPolicy hedgingPolicy) {
+        this.baseApiUrl = baseApiUrl;
+        this.concurrencyLimiter = concurrencyLimiter;
+        this.quotaBudget = quotaBudget;
+        this.hedgingPolicy = hedgingPolicy;
+    }
+
+    public static AimdLimiter getConcurrencyLimiter() {
+        return CONCURRENCY_LIMITER;
+    }
+
+    public static QuotaBudget getQuotaBudget() {
+        return QUOTA_BUDGET;
+    }
+
+    public static HedgingPolicy getHedgingPolicy() {
+        return HEDGING_POLICY;
+    }
 
     public WeatherApiResponse getWeatherForLocation(Location location) throws WeatherApiCallException {
         try {
             URI uri = buildUriForWeatherRequest(location);
-            HttpRequest request = buildRequest(uri);
-            HttpResponse<String> response = client.send(request, HttpResponse.BodyHandlers.ofString());
-
-            return objectMapper.readValue(response.body(), WeatherApiResponse.class);
+            return send(uri, WEATHER_READER, Priority.INTERACTIVE);
 
         } catch (Exception e) {
             throw new WeatherApiCallException("Issues with calling api for location with id = " + location.getId());
@@ -42,13 +141,7 @@ public class WeatherApiService {
     public List<LocationApiResponse> getLocationsByName(String nameOfLocation) throws GeocodingApiCallException {
         try {
             URI uri = buildUriForGeocodingRequest(nameOfLocation);
-            HttpRequest request = buildRequest(uri);
-            HttpResponse<String> response = client.send(request, HttpResponse.BodyHandlers.ofString());
-
-            return objectMapper.readValue(
-                    response.body(),
-                    new TypeReference<List<LocationApiResponse>>() {}
-            );
+            return send(uri, LOCATIONS_READER, Priority.SEARCH);
 
         } catch (Exception e) {
             throw new GeocodingApiCallException("Issues with calling geocoding api for name = " + nameOfLocation);
@@ -58,42 +151,338 @@ public class WeatherApiService {
     public ForecastApiResponse getForecastForLocation(Location location) throws ForecastApiCallException {
         try {
             URI uri = buildUriForForecastRequest(location);
-            HttpRequest request = buildRequest(uri);
-            HttpResponse<String> response = client.send(request, HttpResponse.BodyHandlers.ofString());
-
-            return objectMapper.readValue(response.body(), ForecastApiResponse.class);
+            return send(uri, FORECAST_READER, Priority.INTERACTIVE);
 
         } catch (Exception e) {
             throw new ForecastApiCallException("Issues with calling api for location with id = " + location.getId());
         }
     }
 
+    public CompletableFuture<WeatherApiResponse> getWeatherForLocationAsync(Location location) {
+        return getWeatherForLocationAsync(location, Priority.INTERACTIVE);
+    }
+
+    /**
+     * Completes exceptionally with {@link WeatherApiCallException}
+     */
+    public CompletableFuture<WeatherApiResponse> getWeatherForLocationAsync(Location location, Priority priority) {
+        return sendAsync(
+                buildUriForWeatherRequest(location),
+                WEATHER_READER,
+                priority,
+                WeatherApiCallException::new,
+                "for location with id = " + location.getId()
+        );
+    }
+
+    public CompletableFuture<Map<Location, WeatherApiResponse>> getWeatherForLocationsAsync(List<Location> locations) {
+        return getWeatherForLocationsAsync(locations, Priority.INTERACTIVE);
+    }
+
+    /**
+     * Current weather for several locations at once. The group endpoint of the api accepts city ids
+     * only, while locations are stored by coordinates, so the calls are sent individually without
+     * waiting for each other. Locations whose call failed are missing from the result.
+     */
+    public CompletableFuture<Map<Location, WeatherApiResponse>> getWeatherForLocationsAsync(List<Location> locations,
+                                                                                           Priority priority) {
+        Map<Location, CompletableFuture<WeatherApiResponse>> weatherFutures = new LinkedHashMap<>();
+
+        for (Location location : locations) {
+            weatherFutures.put(location, getWeatherForLocationAsync(location, priority));
+        }
+
+        return CompletableFuture.allOf(weatherFutures.values().toArray(new CompletableFuture[0]))
+                .handle((ignored, throwable) -> {
+                    Map<Location, WeatherApiResponse> weatherByLocation = new LinkedHashMap<>();
+
+                    weatherFutures.forEach((location, weatherFuture) -> {
+                        if (!weatherFuture.isCompletedExceptionally()) {
+                            weatherByLocation.put(location, weatherFuture.join());
+                        }
+                    });
+
+                    return weatherByLocation;
+                });
+    }
+
+    public CompletableFuture<List<LocationApiResponse>> getLocationsByNameAsync(String nameOfLocation) {
+        return getLocationsByNameAsync(nameOfLocation, Priority.SEARCH);
+    }
+
+    /**
+     * Completes exceptionally with {@link GeocodingApiCallException}
+     */
+    public CompletableFuture<List<LocationApiResponse>> getLocationsByNameAsync(String nameOfLocation, Priority priority) {
+        return sendAsync(
+                buildUriForGeocodingRequest(nameOfLocation),
+                LOCATIONS_READER,
+                priority,
+                GeocodingApiCallException::new,
+                "for name = " + nameOfLocation
+        );
+    }
+
+    public CompletableFuture<ForecastApiResponse> getForecastForLocationAsync(Location location) {
+        return getForecastForLocationAsync(location, Priority.INTERACTIVE);
+    }
+
+    /**
+     * Completes exceptionally with {@link ForecastApiCallException}
+     */
+    public CompletableFuture<ForecastApiResponse> getForecastForLocationAsync(Location location, Priority priority) {
+        return sendAsync(
+                buildUriForForecastRequest(location),
+                FORECAST_READER,
+                priority,
+                ForecastApiCallException::new,
+                "for location with id = " + location.getId()
+        );
+    }
+
+    /**
+     * Same forecast as {@link #getForecastForLocationAsync(Location, Priority)}, parsed straight
+     * into the compact form it is cached in. Completes exceptionally with
+     * {@link ForecastApiCallException}.
+     */
+    public CompletableFuture<ForecastSeries> getForecastSeriesForLocationAsync(Location location, Priority priority) {
+        return sendAsync(
+                buildUriForForecastRequest(location),
+                FORECAST_SERIES_READER,
+                priority,
+                ForecastApiCallException::new,
+                "for location with id = " + location.getId()
+        );
+    }
+
+    /**
+     * Opens a connection to the api ahead of the first real call, so no user request pays
+     * for the TLS handshake
+     */
+    public CompletableFuture<Void> warmUpConnection() {
+        HttpRequest request = HttpRequest.newBuilder(URI.create(baseApiUrl + "/"))
+                .method("HEAD", HttpRequest.BodyPublishers.noBody())
+                .timeout(HttpClientUtil.getRequestTimeout())
+                .build();
+
+        return client.sendAsync(request, HttpResponse.BodyHandlers.discarding())
+                .thenAccept(HttpClientUtil::recordResponse);
+    }
+
+    private <T> T send(URI uri, ObjectReader reader, Priority priority) throws IOException, InterruptedException {
+        Optional<String> rejection = admit(priority);
+        if (rejection.isPresent()) {
+            throw new IOException(rejection.get() + ", rejected call to " + uri.getPath());
+        }
+
+        long startTime = System.nanoTime();
+        HttpResponse<InputStream> response;
+
+        try {
+            // The calling thread is blocked anyway, so the body is parsed while it is being received
+            response = client.send(buildRequest(uri), HttpResponse.BodyHandlers.ofInputStream());
+        } catch (IOException | RuntimeException e) {
+            concurrencyLimiter.onDropped();
+            throw e;
+        } catch (InterruptedException e) {
+            concurrencyLimiter.onIgnored();
+            throw e;
+        }
+
+        recordCompletion(response, System.nanoTime() - startTime);
+
+        try (InputStream body = response.body()) {
+            if (response.statusCode() != 200) {
+                throw new IOException("Api responded with status " + response.statusCode());
+            }
+
+            try (InputStream decodedBody = ContentEncodingUtil.decode(body, getContentEncoding(response))) {
+                return reader.readValue(decodedBody);
+            }
+        }
+    }
+
+    private <T> CompletableFuture<T> sendAsync(URI uri, ObjectReader reader, Priority priority,
+                                               Function<String, ? extends ServletException> exceptionFactory,
+                                               String target) {
+        Optional<String> rejection = admit(priority);
+        if (rejection.isPresent()) {
+            return CompletableFuture.failedFuture(exceptionFactory.apply(rejection.get() + ", rejected call " + target));
+        }
+
+        CompletableFuture<T> result = new CompletableFuture<>();
+
+        sendHedgedAsync(uri, priority).whenComplete((response, throwable) -> {
+            if (throwable != null || response.statusCode() != 200) {
+                result.completeExceptionally(exceptionFactory.apply("Issues with calling api " + target));
+                return;
+            }
+
+            // Compressed bodies are inflated while the parser reads them
+            try (InputStream decodedBody = ContentEncodingUtil.decode(
+                    new ByteArrayInputStream(response.body()), getContentEncoding(response))) {
+                T body = reader.readValue(decodedBody);
+                result.complete(body);
+
+            } catch (Exception e) {
+                result.completeExceptionally(exceptionFactory.apply("Issues with calling api " + target));
+            }
+        });
+
+        return result;
+    }
+
+    /**
+     * Sends an admitted call and, when it is still running after the hedge delay, a duplicate
+     * of it. The first successful response is used, a failure only when both failed. The
+     * duplicate needs a slot and a quota token like any other call, and the slower response is
+     * still received and counted by the limiter.
+     */
+    private CompletableFuture<HttpResponse<byte[]>> sendHedgedAsync(URI uri, Priority priority) {
+        CompletableFuture<HttpResponse<byte[]>> primary = sendAttemptAsync(uri, priority);
+
+        Optional<Duration> hedgeDelay = HEDGING_ENABLED && priority != Priority.BACKGROUND
+                ? hedgingPolicy.onCall()
+                : Optional.empty();
+        if (hedgeDelay.isEmpty()) {
+            return primary;
+        }
+
+        CompletableFuture<HttpResponse<byte[]>> result = new CompletableFuture<>();
+        AtomicInteger pendingAttempts = new AtomicInteger(1);
+        primary.whenComplete((response, throwable) ->
+                completeAttempt(result, pendingAttempts, response, throwable, false));
+
+        Executor delayedExecutor = CompletableFuture.delayedExecutor(hedgeDelay.get().toNanos(), TimeUnit.NANOSECONDS);
+        delayedExecutor.execute(() -> {
+            if (result.isDone() || !hedgingPolicy.tryHedge()) {
+                return;
+            }
+            if (admit(priority).isPresent()) {
+                hedgingPolicy.onHedgeRejected();
+                return;
+            }
+            // The primary call may have failed since the check above and completed the result
+            if (pendingAttempts.getAndUpdate(pending -> pending == 0 ? 0 : pending + 1) == 0) {
+                concurrencyLimiter.onIgnored();
+                quotaBudget.release(priority);
+                hedgingPolicy.onHedgeRejected();
+                return;
+            }
+
+            sendAttemptAsync(uri, priority).whenComplete((response, throwable) ->
+                    completeAttempt(result, pendingAttempts, response, throwable, true));
+        });
+
+        return result;
+    }
+
+    private void completeAttempt(CompletableFuture<HttpResponse<byte[]>> result, AtomicInteger pendingAttempts,
+                                 HttpResponse<byte[]> response, Throwable throwable, boolean hedge) {
+        if (throwable == null && response.statusCode() == 200) {
+            if (result.complete(response) && hedge) {
+                hedgingPolicy.onHedgeWon();
+            }
+            return;
+        }
+
+        if (pendingAttempts.decrementAndGet() == 0) {
+            if (throwable != null) {
+                result.completeExceptionally(throwable);
+            } else {
+                result.complete(response);
+            }
+        }
+    }
+
+    /**
+     * One admitted call, its completion is reported to the limiter and the hedging policy.
+     * A call the client refuses to send gives back its slot and its quota token.
+     */
+    private CompletableFuture<HttpResponse<byte[]>> sendAttemptAsync(URI uri, Priority priority) {
+        long startTime = System.nanoTime();
+
+        // Blocking stream reads on the client executor could starve it, so the raw bytes
+        // are collected first and parsed without building a String
+        CompletableFuture<HttpResponse<byte[]>> sent;
+        try {
+            sent = client.sendAsync(buildRequest(uri), HttpResponse.BodyHandlers.ofByteArray());
+        } catch (RuntimeException e) {
+            concurrencyLimiter.onIgnored();
+            quotaBudget.release(priority);
+            return CompletableFuture.failedFuture(e);
+        }
+
+        return sent.whenComplete((response, throwable) -> {
+            if (response != null) {
+                long latencyNanos = System.nanoTime() - startTime;
+                recordCompletion(response, latencyNanos);
+                hedgingPolicy.recordLatency(latencyNanos);
+            } else {
+                concurrencyLimiter.onDropped();
+            }
+        });
+    }
+
+    /**
+     * Takes a slot of the concurrency limit and a token of the quota, or tells why the call
+     * must not be sent
+     */
+    private Optional<String> admit(Priority priority) {
+        if (!concurrencyLimiter.tryAcquire()) {
+            return Optional.of("Too many in-flight api calls");
+        }
+        if (!quotaBudget.tryAcquire(priority)) {
+            concurrencyLimiter.onIgnored();
+            return Optional.of("Api quota is running low for " + priority + " calls");
+        }
+        return Optional.empty();
+    }
+
+    private void recordCompletion(HttpResponse<?> response, long latencyNanos) {
+        HttpClientUtil.recordResponse(response);
+
+        // Throttling and server errors mean the api is overloaded no matter how fast they came back
+        if (response.statusCode() == 429 || response.statusCode() >= 500) {
+            concurrencyLimiter.onDropped();
+        } else {
+            concurrencyLimiter.onSuccess(latencyNanos);
+        }
+    }
+
+    private static String getContentEncoding(HttpResponse<?> response) {
+        return response.headers().firstValue("Content-Encoding").orElse(null);
+    }
+
     private static HttpRequest buildRequest(URI uri) {
+        // The client does not decompress by itself, so the header is set here
         return HttpRequest.newBuilder(uri)
                 .GET()
+                .header("Accept-Encoding", ContentEncodingUtil.ACCEPT_ENCODING)
+                .timeout(HttpClientUtil.getRequestTimeout())
                 .build();
     }
 
-    private static URI buildUriForWeatherRequest(Location location) {
-        return URI.create(BASE_API_URL + WEATHER_API_URL_SUFFIX
+    private URI buildUriForWeatherRequest(Location location) {
+        return URI.create(baseApiUrl + WEATHER_API_URL_SUFFIX
                 + "?lat=" + location.getLatitude()
                 + "&lon=" + location.getLongitude()
                 + "&appid=" + APP_ID
                 + "&units=" + "metric");
     }
 
-    private static URI buildUriForForecastRequest(Location location) {
-        return URI.create(BASE_API_URL + FORECAST_API_URL_SUFFIX
+    private URI buildUriForForecastRequest(Location location) {
+        return URI.create(baseApiUrl + FORECAST_API_URL_SUFFIX
                 + "?lat=" + location.getLatitude()
                 + "&lon=" + location.getLongitude()
                 + "&appid=" + APP_ID
                 + "&units=" + "metric");
     }
 
-    private static URI buildUriForGeocodingRequest(String nameOfLocation) {
+    private URI buildUriForGeocodingRequest(String nameOfLocation) {
         // Somehow without explicit limit api returns only 1 object
-        return URI.create(BASE_API_URL + GEOCODING_API_URL_SUFFIX
-                + "?q=" + nameOfLocation
+        return URI.create(baseApiUrl + GEOCODING_API_URL_SUFFIX
+                + "?q=" + URLEncoder.encode(nameOfLocation, StandardCharsets.UTF_8)
                 + "&limit=5"
                 + "&appid=" + APP_ID);
     }
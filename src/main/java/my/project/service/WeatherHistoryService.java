@@ -0,0 +1,262 @@
+package my.project.service;
+
+import lombok.extern.slf4j.Slf4j;
+import my.project.history.Metric;
+import my.project.history.Observation;
+import my.project.history.Resolution;
+import my.project.history.Rollup;
+import my.project.history.WeatherHistoryStore;
+import my.project.model.Location;
+import my.project.model.api.WeatherApiResponse;
+import my.project.model.api.entity.Weather;
+import my.project.model.dto.TemperatureTrendDto;
+import my.project.model.dto.WeatherDto;
+import my.project.model.dto.enums.TimeOfDay;
+import my.project.model.dto.enums.WeatherCondition;
+import my.project.util.HistoryUtil;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.function.Function;
+
+/**
+ * Keeps every current weather received from the api in the weather history and reads recent
+ * history back for the pages. History is a nice-to-have, so failures are logged and never reach
+ * the caller, and nothing happens while the store is not open.
+ */
+@Slf4j
+public class WeatherHistoryService {
+    private Timer timer;
+
+    /**
+     * The same response may be recorded several times, it is kept once
+     */
+    public void record(Location location, WeatherApiResponse weather) {
+        Optional<WeatherHistoryStore> store = HistoryUtil.getStore();
+        if (store.isEmpty() || location.getId() == null || weather.getDate() == null) {
+            return;
+        }
+
+        try {
+            store.get().append(location.getId(), toObservation(weather));
+
+        } catch (IOException | IllegalStateException e) {
+            log.warn("Failed to record weather of location: " + location.getId() + ": " + e.getMessage());
+        }
+    }
+
+    public List<Observation> getObservations(Location location, Duration period) {
+        Optional<WeatherHistoryStore> store = HistoryUtil.getStore();
+        if (store.isEmpty() || location.getId() == null) {
+            return Collections.emptyList();
+        }
+
+        Instant now = Instant.now();
+        try {
+            return store.get().query(location.getId(), now.minus(period), now.plusSeconds(1));
+
+        } catch (RuntimeException e) {
+            log.warn("Failed to read weather history of location: " + location.getId() + ": " + e.getMessage());
+            return Collections.emptyList();
+        }
+    }
+
+    /**
+     * Read from the hourly rollups, so a period of a day reads about 24 of them instead of every
+     * observation. Empty with fewer than two hours of observed temperatures in the period.
+     */
+    public Optional<TemperatureTrendDto> getTemperatureTrend(Location location, Duration period) {
+        List<Rollup> rollups = readRollups(location, store -> {
+            Instant now = Instant.now();
+            return store.queryRollups(location.getId(), Resolution.HOUR, now.minus(period), now.plusSeconds(1));
+        });
+
+        double minimum = Double.POSITIVE_INFINITY;
+        double maximum = Double.NEGATIVE_INFINITY;
+        double first = Double.NaN;
+        double last = Double.NaN;
+        Instant since = null;
+        int hours = 0;
+        int observations = 0;
+
+        for (Rollup rollup : rollups) {
+            double mean = rollup.getMean(Metric.TEMPERATURE);
+            if (Double.isNaN(mean)) {
+                continue;
+            }
+
+            if (hours == 0) {
+                first = mean;
+                since = Instant.ofEpochSecond(rollup.getTime());
+            }
+            minimum = Math.min(minimum, rollup.getMinimum(Metric.TEMPERATURE));
+            maximum = Math.max(maximum, rollup.getMaximum(Metric.TEMPERATURE));
+            last = mean;
+            hours++;
+            observations += rollup.getCount();
+        }
+
+        if (hours < 2) {
+            return Optional.empty();
+        }
+
+        return Optional.of(TemperatureTrendDto.builder()
+                .minimum(minimum)
+                .maximum(maximum)
+                // Rounded like the values sent by the api
+                .change(Math.round((last - first) * 100) / 100.0)
+                .since(since)
+                .observations(observations)
+                .build());
+    }
+
+    /**
+     * Observed weather of the period at the finest rollup resolution that fits in
+     * {@code maxPoints}, in time order. Buckets without observations are left out.
+     */
+    public List<WeatherDto> getPastWeather(Location location, Duration period, int maxPoints) {
+        List<Rollup> rollups = readRollups(location, store -> {
+            Instant now = Instant.now();
+            return store.queryRollups(location.getId(), now.minus(period), now.plusSeconds(1), maxPoints);
+        });
+
+        List<WeatherDto> pastWeather = new ArrayList<>();
+        for (Rollup rollup : rollups) {
+            long bucketSeconds = rollup.getResolution().getSeconds();
+            pastWeather.add(WeatherDto.builder()
+                    // Buckets are aligned to UTC, their middle falls on the same date in every time zone
+                    .date(Instant.ofEpochSecond(rollup.getTime() + bucketSeconds / 2))
+                    .timeOfDay(TimeOfDay.DAY)
+                    .weatherCondition(rollup.getDominantCondition())
+                    .temperature(rollup.getMean(Metric.TEMPERATURE))
+                    .temperatureMinimum(rollup.getMinimum(Metric.TEMPERATURE))
+                    .temperatureMaximum(rollup.getMaximum(Metric.TEMPERATURE))
+                    .build());
+        }
+        return pastWeather;
+    }
+
+    /**
+     * Observed weather of the period in time order, at least {@code spacing} apart so it can be
+     * shown like the forecast steps. Picked from the newest one back, so the latest is always in.
+     */
+    public List<WeatherDto> getRecentWeather(Location location, Duration period, Duration spacing) {
+        List<Observation> observations = getObservations(location, period);
+        List<WeatherDto> recentWeather = new ArrayList<>();
+        long nextTime = Long.MAX_VALUE;
+
+        for (int i = observations.size() - 1; i >= 0; i--) {
+            Observation observation = observations.get(i);
+            if (observation.getTime() > nextTime) {
+                continue;
+            }
+
+            recentWeather.add(toWeatherDto(observation));
+            nextTime = observation.getTime() - spacing.getSeconds();
+        }
+
+        Collections.reverse(recentWeather);
+        return recentWeather;
+    }
+
+    public synchronized void scheduleFlushes(long interval) {
+        if (timer != null) {
+            timer.cancel();
+        }
+
+        HistoryFlushTask historyFlushTask = new HistoryFlushTask();
+        timer = new Timer("weather-history-flush", true);
+
+        timer.schedule(historyFlushTask, interval, interval);
+    }
+
+    public synchronized void cancelFlushes() {
+        if (timer != null) {
+            timer.cancel();
+            timer = null;
+        }
+    }
+
+    private List<Rollup> readRollups(Location location, Function<WeatherHistoryStore, List<Rollup>> query) {
+        Optional<WeatherHistoryStore> store = HistoryUtil.getStore();
+        if (store.isEmpty() || location.getId() == null) {
+            return Collections.emptyList();
+        }
+
+        try {
+            return query.apply(store.get());
+
+        } catch (RuntimeException e) {
+            log.warn("Failed to read weather rollups of location: " + location.getId() + ": " + e.getMessage());
+            return Collections.emptyList();
+        }
+    }
+
+    private static Observation toObservation(WeatherApiResponse weather) {
+        double[] values = new double[Metric.values().length];
+        values[Metric.TEMPERATURE.ordinal()] = toValue(weather.getMain() == null ? null : weather.getMain().getTemperature());
+        values[Metric.FEELS_LIKE_TEMPERATURE.ordinal()] = toValue(weather.getMain() == null ? null : weather.getMain().getTemperatureFeelsLike());
+        values[Metric.HUMIDITY.ordinal()] = toValue(weather.getMain() == null ? null : weather.getMain().getHumidity());
+        values[Metric.PRESSURE.ordinal()] = toValue(weather.getMain() == null ? null : weather.getMain().getPressure());
+        values[Metric.WIND_SPEED.ordinal()] = toValue(weather.getWind() == null ? null : weather.getWind().getSpeed());
+        values[Metric.CLOUDINESS.ordinal()] = toValue(weather.getClouds() == null ? null : weather.getClouds().getCloudiness());
+
+        List<Weather> weatherList = weather.getWeatherList();
+        Integer conditionCode = weatherList == null || weatherList.isEmpty() ? null : weatherList.get(0).getId();
+
+        long time = weather.getDate().atZone(ZoneId.systemDefault()).toEpochSecond();
+        return new Observation(time, values, conditionCode == null ? 0 : conditionCode);
+    }
+
+    private static double toValue(Number value) {
+        return value == null ? Double.NaN : value.doubleValue();
+    }
+
+    private static WeatherDto toWeatherDto(Observation observation) {
+        Instant time = Instant.ofEpochSecond(observation.getTime());
+        LocalDateTime localTime = LocalDateTime.ofInstant(time, ZoneId.systemDefault());
+
+        return WeatherDto.builder()
+                .date(time)
+                .timeOfDay(TimeOfDay.getTimeOfDayForTime(localTime))
+                .weatherCondition(WeatherCondition.getWeatherConditionForCode(observation.getConditionCode()))
+                .temperature(observation.getValue(Metric.TEMPERATURE))
+                .temperatureFeelsLike(observation.getValue(Metric.FEELS_LIKE_TEMPERATURE))
+                .humidity(toWholeNumber(observation.getValue(Metric.HUMIDITY)))
+                .pressure(toWholeNumber(observation.getValue(Metric.PRESSURE)))
+                .windSpeed(observation.getValue(Metric.WIND_SPEED))
+                .cloudiness(toWholeNumber(observation.getValue(Metric.CLOUDINESS)))
+                .build();
+    }
+
+    private static int toWholeNumber(double value) {
+        return Double.isNaN(value) ? WeatherDto.MISSING : (int) value;
+    }
+
+    private static class HistoryFlushTask extends TimerTask {
+        @Override
+        public void run() {
+            Optional<WeatherHistoryStore> store = HistoryUtil.getStore();
+            if (store.isEmpty()) {
+                return;
+            }
+
+            // An exception would cancel the timer together with all the following runs
+            try {
+                store.get().flush(Instant.now());
+
+            } catch (IOException | RuntimeException e) {
+                log.warn("Flushing weather history failed: " + e.getMessage());
+            }
+        }
+    }
+}
@@ -0,0 +1,188 @@
+package my.project.service;
+
+import lombok.extern.slf4j.Slf4j;
+import my.project.cache.CoordinatesKey;
+import my.project.dao.LocationDao;
+import my.project.limit.Priority;
+import my.project.limit.QuotaBudget;
+import my.project.model.Location;
+import my.project.model.api.WeatherApiResponse;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps current weather of every tracked location in the cache, so the home page is served
+ * from memory instead of waiting for the api
+ */
+@Slf4j
+public class WeatherRefreshService {
+    private final LocationDao locationDao = new LocationDao();
+    private final WeatherService weatherService = new WeatherService();
+    private final WeatherHistoryService weatherHistoryService = new WeatherHistoryService();
+    private final QuotaBudget quotaBudget = WeatherApiService.getQuotaBudget();
+
+    private final Duration freshnessTarget;
+    private final int parallelism;
+
+    private final AtomicLong refreshedLocations = new AtomicLong();
+    private final AtomicLong failedRefreshes = new AtomicLong();
+    private final AtomicLong deferredRefreshes = new AtomicLong();
+    private volatile int trackedLocations;
+    private volatile int distinctCoordinates;
+    private volatile int distinctKeys;
+
+    private Timer timer;
+
+    public WeatherRefreshService(Duration freshnessTarget, int parallelism) {
+        this.freshnessTarget = freshnessTarget;
+        this.parallelism = parallelism;
+    }
+
+    public synchronized void scheduleWeatherRefresh(long interval) {
+        if (timer != null) {
+            timer.cancel();
+        }
+
+        WeatherRefreshTask weatherRefreshTask = new WeatherRefreshTask();
+        timer = new Timer("weather-refresh", true);
+
+        timer.schedule(weatherRefreshTask, 0, interval);
+    }
+
+    public synchronized void cancelWeatherRefresh() {
+        if (timer != null) {
+            timer.cancel();
+            timer = null;
+        }
+    }
+
+    public long getRefreshedLocations() {
+        return refreshedLocations.get();
+    }
+
+    public long getFailedRefreshes() {
+        return failedRefreshes.get();
+    }
+
+    public long getDeferredRefreshes() {
+        return deferredRefreshes.get();
+    }
+
+    public int getTrackedLocations() {
+        return trackedLocations;
+    }
+
+    public int getDistinctCoordinates() {
+        return distinctCoordinates;
+    }
+
+    public int getDistinctKeys() {
+        return distinctKeys;
+    }
+
+    private void refreshTrackedLocations() {
+        List<Location> locations = locationDao.findTracked();
+
+        // Locations in the same grid cell share a cache entry, so one of them is fetched for all
+        Map<CoordinatesKey, Location> locationsByKey = new LinkedHashMap<>();
+        Map<CoordinatesKey, List<Location>> trackedByKey = new HashMap<>();
+        Set<List<Double>> coordinates = new HashSet<>();
+
+        for (Location location : locations) {
+            CoordinatesKey key = CoordinatesKey.of(location);
+            locationsByKey.putIfAbsent(key, location);
+            trackedByKey.computeIfAbsent(key, k -> new ArrayList<>()).add(location);
+            coordinates.add(List.of(location.getLatitude(), location.getLongitude()));
+        }
+
+        trackedLocations = locations.size();
+        distinctCoordinates = coordinates.size();
+        distinctKeys = locationsByKey.size();
+
+        Instant staleBefore = Instant.now().minus(freshnessTarget);
+        List<Location> staleLocations = new ArrayList<>();
+
+        for (Location location : locationsByKey.values()) {
+            Optional<Instant> retrievalTime = weatherService.getWeatherRetrievalTime(location);
+            if (retrievalTime.isEmpty() || !retrievalTime.get().isAfter(staleBefore)) {
+                staleLocations.add(location);
+            }
+        }
+
+        log.info("Refreshing weather for " + staleLocations.size() + " of " + distinctKeys + " grid cells, "
+                + "covering " + distinctCoordinates + " distinct coordinates of " + locations.size() + " tracked locations");
+
+        // The rest stays stale until the quota refills, it is picked up again by the next run
+        int affordable = countAffordableCalls(staleLocations.size());
+        if (affordable < staleLocations.size()) {
+            int deferred = staleLocations.size() - affordable;
+            deferredRefreshes.addAndGet(deferred);
+            log.info("Api quota is running low, deferred refresh of " + deferred + " locations");
+        }
+
+        List<Location> batch = staleLocations.subList(0, affordable);
+        Map<Location, WeatherApiResponse> weatherByLocation =
+                weatherService.refreshWeatherForLocationsAsync(batch, parallelism).join();
+
+        refreshedLocations.addAndGet(weatherByLocation.size());
+        failedRefreshes.addAndGet(batch.size() - weatherByLocation.size());
+
+        recordHistory(trackedByKey, weatherByLocation);
+    }
+
+    /**
+     * Largest count of background calls, up to {@code calls}, that the quota grants now
+     */
+    private int countAffordableCalls(int calls) {
+        int low = 0;
+        int high = calls;
+        while (low < high) {
+            int middle = (low + high + 1) >>> 1;
+            if (quotaBudget.hasBudget(Priority.BACKGROUND, middle)) {
+                low = middle;
+            } else {
+                high = middle - 1;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * History is kept per location, so weather fetched for a grid cell is recorded for every
+     * tracked location in it. The fetch has recorded it for one of them already, the store skips
+     * that one.
+     */
+    private void recordHistory(Map<CoordinatesKey, List<Location>> trackedByKey,
+                               Map<Location, WeatherApiResponse> weatherByLocation) {
+        weatherByLocation.forEach((fetchedLocation, weather) -> {
+            for (Location location : trackedByKey.getOrDefault(CoordinatesKey.of(fetchedLocation), List.of())) {
+                weatherHistoryService.record(location, weather);
+            }
+        });
+    }
+
+    private class WeatherRefreshTask extends TimerTask {
+        @Override
+        public void run() {
+            // An exception would cancel the timer together with all the following runs
+            try {
+                refreshTrackedLocations();
+
+            } catch (RuntimeException e) {
+                log.warn("Refreshing weather failed: " + e.getMessage());
+            }
+        }
+    }
+}
@@ -0,0 +1,352 @@
+package my.project.service;
+
+import jakarta.servlet.ServletException;
+import my.project.cache.CacheEntry;
+import my.project.cache.CoordinatesKey;
+import my.project.cache.LruCache;
+import my.project.cache.SingleFlight;
+import my.project.exception.api.ForecastApiCallException;
+import my.project.exception.api.GeocodingApiCallException;
+import my.project.exception.api.WeatherApiCallException;
+import my.project.limit.Priority;
+import my.project.model.Location;
+import my.project.model.api.ForecastSeries;
+import my.project.model.api.LocationApiResponse;
+import my.project.model.api.WeatherApiResponse;
+import my.project.model.dto.ForecastDto;
+import my.project.model.dto.WeatherDto;
+import my.project.util.CacheUtil;
+import my.project.util.ConfigUtil;
+
+import java.text.Normalizer;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * Serves weather, forecasts and geocoding results from the application-wide caches and calls
+ * the api only on a miss. Locations are shared between users, so the caches are keyed by
+ * coordinates rather than by user. Concurrent misses for the same key share one api call.
+ * <p>
+ * Stale weather and forecasts are served as they are and fetched again in the background, only
+ * expired ones make the caller wait for the api.
+ */
+public class WeatherService {
+    // Misspelled names may become known later, so empty results are kept for a shorter time
+    private static final Duration EMPTY_GEOCODING_RESULT_TTL =
+            Duration.ofSeconds(ConfigUtil.getLong("GEOCODING_CACHE_EMPTY_RESULT_TTL_SECONDS", 24 * 60 * 60));
+
+    // Furthest the first forecast step may be ahead of now for its values to pass as current weather
+    private static final Duration DERIVED_WEATHER_MAX_GAP =
+            Duration.ofMinutes(ConfigUtil.getLong("DERIVED_WEATHER_MAX_GAP_MINUTES", 90));
+
+    private static final AtomicLong DERIVED_WEATHER = new AtomicLong();
+    private static final AtomicLong DERIVED_WEATHER_FALLBACKS = new AtomicLong();
+
+    private final WeatherApiService weatherApiService = new WeatherApiService();
+    private final ForecastService forecastService = new ForecastService();
+    private final WeatherHistoryService weatherHistoryService = new WeatherHistoryService();
+
+    private final LruCache<CoordinatesKey, WeatherApiResponse> weatherCache = CacheUtil.getWeatherCache();
+    private final LruCache<CoordinatesKey, ForecastSeries> forecastCache = CacheUtil.getForecastCache();
+    private final LruCache<ForecastSeries, ForecastDto> forecastViewCache = CacheUtil.getForecastViewCache();
+    private final LruCache<String, List<LocationApiResponse>> geocodingCache = CacheUtil.getGeocodingCache();
+
+    private final SingleFlight<CoordinatesKey, WeatherApiResponse> weatherFlight = CacheUtil.getWeatherFlight();
+    private final SingleFlight<CoordinatesKey, ForecastSeries> forecastFlight = CacheUtil.getForecastFlight();
+    private final SingleFlight<String, List<LocationApiResponse>> geocodingFlight = CacheUtil.getGeocodingFlight();
+
+    public WeatherApiResponse getWeatherForLocation(Location location) throws WeatherApiCallException {
+        return await(
+                getWeatherForLocationAsync(location),
+                WeatherApiCallException.class,
+                WeatherApiCallException::new
+        );
+    }
+
+    public CompletableFuture<WeatherApiResponse> getWeatherForLocationAsync(Location location) {
+        CoordinatesKey key = CoordinatesKey.of(location);
+
+        Optional<CacheEntry<WeatherApiResponse>> cachedWeather = weatherCache.getEntry(key);
+        if (cachedWeather.isPresent()) {
+            if (cachedWeather.get().isStaleAt(Instant.now())) {
+                // Failures are not reported, the stale entry is kept until it expires
+                fetchWeatherForLocationAsync(key, location, Priority.BACKGROUND);
+            }
+            return CompletableFuture.completedFuture(cachedWeather.get().getValue());
+        }
+
+        return fetchWeatherForLocationAsync(key, location, Priority.INTERACTIVE);
+    }
+
+    /**
+     * Fetches current weather for a batch of locations even if the cached one is still valid, used
+     * to refresh entries before they expire. At most {@code parallelism} calls are in flight, the
+     * next one starts as soon as one completes. Calls go through the same single flight as page
+     * loads, so a location that is being fetched already is not fetched again. Sent as background
+     * calls, locations whose call failed are missing from the result.
+     */
+    public CompletableFuture<Map<Location, WeatherApiResponse>> refreshWeatherForLocationsAsync(List<Location> locations,
+                                                                                               int parallelism) {
+        Iterator<Location> pending = locations.iterator();
+        Map<Location, WeatherApiResponse> weatherByLocation = Collections.synchronizedMap(new LinkedHashMap<>());
+
+        List<CompletableFuture<Void>> lanes = new ArrayList<>();
+        for (int i = 0; i < Math.min(parallelism, locations.size()); i++) {
+            CompletableFuture<Void> lane = new CompletableFuture<>();
+            lanes.add(lane);
+            refreshNext(pending, weatherByLocation, lane);
+        }
+
+        return CompletableFuture.allOf(lanes.toArray(new CompletableFuture[0])).thenApply(ignored -> weatherByLocation);
+    }
+
+    /**
+     * Current weather estimated from the cached forecast, so no weather call is needed while the
+     * forecast is still usable. Empty when there is no cached forecast around the current time,
+     * callers then fall back to {@link #getWeatherForLocationAsync(Location)}. A stale forecast is
+     * still used and fetched again in the background.
+     */
+    public Optional<WeatherDto> getWeatherFromForecast(Location location) {
+        CoordinatesKey key = CoordinatesKey.of(location);
+        Instant now = Instant.now();
+
+        // Peeked, so home page lookups do not count as forecast cache hits or misses
+        Optional<CacheEntry<ForecastSeries>> cachedForecast = forecastCache.peekEntry(key);
+        if (cachedForecast.isEmpty()) {
+            DERIVED_WEATHER_FALLBACKS.incrementAndGet();
+            return Optional.empty();
+        }
+
+        CacheEntry<ForecastSeries> entry = cachedForecast.get();
+        ForecastSeries forecast = entry.getValue();
+
+        // Sunrise and sunset are shown with the current weather
+        Optional<WeatherDto> weather = forecast.getSunriseTime() == 0 || forecast.getSunsetTime() == 0
+                ? Optional.empty()
+                : forecastService.getWeatherAt(forecast, now, DERIVED_WEATHER_MAX_GAP);
+
+        if (weather.isEmpty()) {
+            DERIVED_WEATHER_FALLBACKS.incrementAndGet();
+            return Optional.empty();
+        }
+
+        if (entry.isStaleAt(now)) {
+            fetchForecastForLocationAsync(key, location, Priority.BACKGROUND);
+        }
+
+        WeatherDto weatherDto = weather.get().toBuilder()
+                .sunrise(Instant.ofEpochSecond(forecast.getSunriseTime()))
+                .sunset(Instant.ofEpochSecond(forecast.getSunsetTime()))
+                .dataAgeMinutes(Duration.between(entry.getStoredAt(), now).toMinutes())
+                .build();
+
+        DERIVED_WEATHER.incrementAndGet();
+        return Optional.of(weatherDto);
+    }
+
+    public static long getDerivedWeather() {
+        return DERIVED_WEATHER.get();
+    }
+
+    public static long getDerivedWeatherFallbacks() {
+        return DERIVED_WEATHER_FALLBACKS.get();
+    }
+
+    public Optional<Instant> getWeatherRetrievalTime(Location location) {
+        return weatherCache.peekEntry(CoordinatesKey.of(location))
+                .map(CacheEntry::getStoredAt);
+    }
+
+    /**
+     * Forecasts are cached in their compact form, hourly and daily ones are built from it once
+     * per fetched forecast and kept for the most viewed locations
+     */
+    public ForecastDto getForecastForLocation(Location location) throws ForecastApiCallException {
+        CoordinatesKey key = CoordinatesKey.of(location);
+
+        Optional<CacheEntry<ForecastSeries>> cachedForecast = forecastCache.getEntry(key);
+        if (cachedForecast.isPresent()) {
+            if (cachedForecast.get().isStaleAt(Instant.now())) {
+                fetchForecastForLocationAsync(key, location, Priority.BACKGROUND);
+            }
+            return getForecast(cachedForecast.get().getValue());
+        }
+
+        ForecastSeries forecast = await(
+                fetchForecastForLocationAsync(key, location, Priority.INTERACTIVE),
+                ForecastApiCallException.class,
+                ForecastApiCallException::new
+        );
+        return getForecast(forecast);
+    }
+
+    public Optional<Instant> getForecastRetrievalTime(Location location) {
+        return forecastCache.peekEntry(CoordinatesKey.of(location))
+                .map(CacheEntry::getStoredAt);
+    }
+
+    /**
+     * Names that differ only in case, surrounding whitespace or Unicode form share one cache entry
+     * and are sent to the api in the normalized form
+     */
+    public List<LocationApiResponse> getLocationsByName(String nameOfLocation) throws GeocodingApiCallException {
+        String query = normalizeLocationName(nameOfLocation);
+
+        Optional<List<LocationApiResponse>> cachedLocations = geocodingCache.get(query);
+        if (cachedLocations.isPresent()) {
+            return cachedLocations.get();
+        }
+
+        CompletableFuture<List<LocationApiResponse>> locations = geocodingFlight.execute(query, () ->
+                weatherApiService.getLocationsByNameAsync(query, Priority.SEARCH)
+                        .thenApply(response -> cacheLocations(query, response)));
+
+        return await(locations, GeocodingApiCallException.class, GeocodingApiCallException::new);
+    }
+
+    static String normalizeLocationName(String nameOfLocation) {
+        String normalized = Normalizer.normalize(nameOfLocation, Normalizer.Form.NFKC);
+        return normalized.strip()
+                .replaceAll("\\s+", " ")
+                .toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * A fresh response is recorded in the history of the location it was fetched for, once. The
+     * weather of a grid cell does belong to the history of every location in it, but only the
+     * refresher knows the tracked locations of a cell, so it records it for the others.
+     */
+    private CompletableFuture<WeatherApiResponse> fetchWeatherForLocationAsync(CoordinatesKey key, Location location,
+                                                                               Priority priority) {
+        return weatherFlight.execute(key, () -> weatherApiService.getWeatherForLocationAsync(location, priority)
+                .thenApply(weather -> {
+                    weatherCache.put(key, weather);
+                    weatherHistoryService.record(location, weather);
+                    return weather;
+                }));
+    }
+
+    /**
+     * Keeps one lane of {@link #refreshWeatherForLocationsAsync(List, int)} busy until no location
+     * is left. Calls that complete right away, such as ones rejected by the quota, are handled in
+     * the loop rather than by nested callbacks, so a long run of them can not overflow the stack.
+     */
+    private void refreshNext(Iterator<Location> pending, Map<Location, WeatherApiResponse> weatherByLocation,
+                             CompletableFuture<Void> lane) {
+        while (true) {
+            Location location;
+            synchronized (pending) {
+                if (!pending.hasNext()) {
+                    lane.complete(null);
+                    return;
+                }
+                location = pending.next();
+            }
+
+            CompletableFuture<WeatherApiResponse> weather =
+                    fetchWeatherForLocationAsync(CoordinatesKey.of(location), location, Priority.BACKGROUND);
+
+            if (!weather.isDone()) {
+                weather.whenComplete((response, throwable) -> {
+                    if (throwable == null) {
+                        weatherByLocation.put(location, response);
+                    }
+                    refreshNext(pending, weatherByLocation, lane);
+                });
+                return;
+            }
+
+            if (!weather.isCompletedExceptionally()) {
+                weatherByLocation.put(location, weather.join());
+            }
+        }
+    }
+
+    // Concurrent first views may both build it, which is cheaper than making them wait
+    private ForecastDto getForecast(ForecastSeries series) {
+        Optional<ForecastDto> cachedForecast = forecastViewCache.get(series);
+        if (cachedForecast.isPresent()) {
+            return cachedForecast.get();
+        }
+
+        ForecastDto forecast = forecastService.getForecast(series);
+        forecastViewCache.put(series, forecast);
+        return forecast;
+    }
+
+    private CompletableFuture<ForecastSeries> fetchForecastForLocationAsync(CoordinatesKey key, Location location,
+                                                                            Priority priority) {
+        return forecastFlight.execute(key, () -> weatherApiService.getForecastSeriesForLocationAsync(location, priority)
+                .thenApply(forecast -> cacheForecast(key, forecast)));
+    }
+
+    private ForecastSeries cacheForecast(CoordinatesKey key, ForecastSeries forecast) {
+        Optional<Instant> nextForecastTime = getNextForecastTime(forecast);
+        if (nextForecastTime.isPresent()) {
+            forecastCache.put(key, forecast, nextForecastTime.get());
+        } else {
+            forecastCache.put(key, forecast);
+        }
+
+        return forecast;
+    }
+
+    private List<LocationApiResponse> cacheLocations(String query, List<LocationApiResponse> response) {
+        List<LocationApiResponse> locations = List.copyOf(response);
+
+        if (locations.isEmpty()) {
+            geocodingCache.put(query, locations, Instant.now().plus(EMPTY_GEOCODING_RESULT_TTL));
+        } else {
+            geocodingCache.put(query, locations);
+        }
+
+        return locations;
+    }
+
+    /**
+     * The api publishes forecasts in fixed steps and the first step is always in the future,
+     * so the forecast stays the same until the first step time has passed.
+     */
+    private static Optional<Instant> getNextForecastTime(ForecastSeries forecast) {
+        long now = Instant.now().getEpochSecond();
+
+        for (int step = 0; step < forecast.size(); step++) {
+            if (forecast.getTime(step) > now) {
+                return Optional.of(Instant.ofEpochSecond(forecast.getTime(step)));
+            }
+        }
+
+        return Optional.empty();
+    }
+
+    private static <T, E extends ServletException> T await(CompletableFuture<T> future,
+                                                           Class<E> exceptionType,
+                                                           Function<String, E> exceptionFactory) throws E {
+        try {
+            return future.get();
+
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (exceptionType.isInstance(cause)) {
+                throw exceptionType.cast(cause);
+            }
+            throw exceptionFactory.apply(String.valueOf(cause.getMessage()));
+
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw exceptionFactory.apply("Interrupted while waiting for the api call");
+        }
+    }
+}
@@ -14,22 +14,30 @@ import my.project.dao.LocationDao;
 import my.project.dao.SessionDao;
 import my.project.model.Location;
 import my.project.model.Session;
-import my.project.model.api.ForecastApiResponse;
-import my.project.model.dto.WeatherDto;
-import my.project.service.ForecastService;
-import my.project.service.WeatherApiService;
+import my.project.model.dto.ForecastDto;
+import my.project.service.WeatherHistoryService;
+import my.project.service.WeatherService;
 
 import java.io.IOException;
-import java.util.List;
+import java.time.Duration;
+import java.time.Instant;
 import java.util.UUID;
 
 @Slf4j
 @WebServlet("/forecast")
 public class ForecastServlet extends WeatherTrackerBaseServlet {
+    // Observed weather of the past day, spaced like the hourly forecast
+    private static final Duration RECENT_WEATHER_PERIOD = Duration.ofHours(24);
+    private static final Duration RECENT_WEATHER_SPACING = Duration.ofHours(3);
+
+    // Daily rollups of the past week
+    private static final Duration PAST_WEATHER_PERIOD = Duration.ofDays(7);
+    private static final int PAST_WEATHER_POINTS = 8;
+
     private final SessionDao sessionDao = new SessionDao();
     private final LocationDao locationDao = new LocationDao();
-    private final WeatherApiService weatherApiService = new WeatherApiService();
-    private final ForecastService forecastService = new ForecastService();
+    private final WeatherService weatherService = new WeatherService();
+    private final WeatherHistoryService weatherHistoryService = new WeatherHistoryService();
 
     @Override
     protected void doGet(HttpServletRequest req, HttpServletResponse resp) throws ServletException, IOException {
@@ -60,15 +68,19 @@ public class ForecastServlet extends WeatherTrackerBaseServlet {
         Location location = locationDao.findById(locationId)
                 .orElseThrow(() -> new LocationNotFoundException("Location: " + locationId + " is not found"));
 
-        ForecastApiResponse forecastForLocation = weatherApiService.getForecastForLocation(location);
-
-        List<WeatherDto> hourlyForecast = forecastService.getHourlyForecast(forecastForLocation);
-        List<WeatherDto> dailyForecast = forecastService.getDailyForecast(forecastForLocation);
+        ForecastDto forecast = weatherService.getForecastForLocation(location);
 
         context.setVariable("login", session.getUser().getLogin());
         context.setVariable("locationName", location.getName());
-        context.setVariable("hourlyForecast", hourlyForecast);
-        context.setVariable("dailyForecast", dailyForecast);
+        context.setVariable("hourlyForecast", forecast.getHourlyForecast());
+        context.setVariable("dailyForecast", forecast.getDailyForecast());
+        context.setVariable("forecastAgeMinutes", weatherService.getForecastRetrievalTime(location)
+                .map(time -> Duration.between(time, Instant.now()).toMinutes())
+                .orElse(null));
+        context.setVariable("recentWeather", weatherHistoryService.getRecentWeather(location,
+                RECENT_WEATHER_PERIOD, RECENT_WEATHER_SPACING));
+        context.setVariable("pastWeather", weatherHistoryService.getPastWeather(location,
+                PAST_WEATHER_PERIOD, PAST_WEATHER_POINTS));
 
         templateEngine.process("forecast", context, resp.getWriter());
     }
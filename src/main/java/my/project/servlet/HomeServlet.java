@@ -11,30 +11,46 @@ import my.project.exception.LocationNotFoundException;
 import my.project.exception.SessionExpiredException;
 import my.project.dao.LocationDao;
 import my.project.dao.SessionDao;
-import my.project.exception.api.WeatherApiCallException;
 import my.project.model.Location;
 import my.project.model.Session;
 import my.project.model.User;
 import my.project.model.api.WeatherApiResponse;
 import my.project.model.api.entity.Weather;
+import my.project.model.dto.TemperatureTrendDto;
 import my.project.model.dto.WeatherDto;
 import my.project.model.dto.enums.TimeOfDay;
 import my.project.model.dto.enums.WeatherCondition;
-import my.project.service.WeatherApiService;
+import my.project.service.WeatherHistoryService;
+import my.project.service.WeatherService;
+import my.project.util.ConfigUtil;
 
 import java.io.IOException;
+import java.time.Duration;
+import java.time.Instant;
 import java.time.ZoneId;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 @Slf4j
 @WebServlet("")
 public class HomeServlet extends WeatherTrackerBaseServlet {
+    private static final long PAGE_DEADLINE_MILLIS = ConfigUtil.getLong("HOME_PAGE_DEADLINE_MILLIS", 3000);
+
+    // Current weather is estimated from cached forecasts, the weather api is only called without one
+    private static final boolean WEATHER_FROM_FORECAST = ConfigUtil.getBoolean("HOME_WEATHER_FROM_FORECAST", false);
+
+    private static final Duration TREND_PERIOD = Duration.ofHours(24);
+
     private final SessionDao sessionDao = new SessionDao();
     private final LocationDao locationDao = new LocationDao();
-    private final WeatherApiService weatherApiService = new WeatherApiService();
+    private final WeatherService weatherService = new WeatherService();
+    private final WeatherHistoryService weatherHistoryService = new WeatherHistoryService();
 
     @Override
-    protected void doGet(HttpServletRequest req, HttpServletResponse resp) throws IOException, CookieNotFoundException, SessionExpiredException, WeatherApiCallException {
+    protected void doGet(HttpServletRequest req, HttpServletResponse resp) throws IOException, CookieNotFoundException, SessionExpiredException {
         log.info("Finding cookie with session id");
         Cookie[] cookies = req.getCookies();
         Cookie cookie = findCookieByName(cookies, "sessionId")
@@ -56,15 +72,66 @@ public class HomeServlet extends WeatherTrackerBaseServlet {
         List<Location> userLocations = locationDao.findByUser(user);
 
         log.info("Finding current weather for user locations");
-        Map<Location, WeatherDto> locationWeatherMap = new HashMap<>();
+        Map<Location, WeatherDto> derivedWeathers = new HashMap<>();
+        Map<Location, CompletableFuture<WeatherApiResponse>> weatherFutures = new HashMap<>();
+
+        for (Location location : userLocations) {
+            Optional<WeatherDto> derivedWeather = WEATHER_FROM_FORECAST
+                    ? weatherService.getWeatherFromForecast(location)
+                    : Optional.empty();
+
+            if (derivedWeather.isPresent()) {
+                derivedWeathers.put(location, derivedWeather.get());
+            } else {
+                weatherFutures.put(location, weatherService.getWeatherForLocationAsync(location));
+            }
+        }
+
+        // Locations without weather are mapped to null and rendered as unavailable
+        Map<Location, WeatherDto> locationWeatherMap = new LinkedHashMap<>();
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(PAGE_DEADLINE_MILLIS);
+
+        for (Location location : userLocations) {
+            if (derivedWeathers.containsKey(location)) {
+                locationWeatherMap.put(location, derivedWeathers.get(location));
+                continue;
+            }
+
+            long remaining = Math.max(0, deadline - System.nanoTime());
+
+            try {
+                WeatherApiResponse weather = weatherFutures.get(location).get(remaining, TimeUnit.NANOSECONDS);
+                long dataAgeMinutes = getDataAgeMinutes(weatherService.getWeatherRetrievalTime(location));
+                locationWeatherMap.put(location, buildWeatherDto(weather, dataAgeMinutes));
+
+            } catch (TimeoutException e) {
+                log.warn("Weather for location: " + location.getId() + " is not received before the page deadline");
+                locationWeatherMap.put(location, null);
+
+            } catch (ExecutionException e) {
+                log.warn(e.getCause().getMessage());
+                locationWeatherMap.put(location, null);
+
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                locationWeatherMap.put(location, null);
+
+            } catch (RuntimeException e) {
+                // A response without the expected sections fails only the card of its location
+                log.warn("Weather for location: " + location.getId() + " is malformed: " + e);
+                locationWeatherMap.put(location, null);
+            }
+        }
 
+        // Locations without enough history have no trend
+        Map<Long, TemperatureTrendDto> locationTrendMap = new HashMap<>();
         for (Location location : userLocations) {
-            WeatherApiResponse weather = weatherApiService.getWeatherForLocation(location);
-            WeatherDto weatherDto = buildWeatherDto(weather);
-            locationWeatherMap.put(location, weatherDto);
+            weatherHistoryService.getTemperatureTrend(location, TREND_PERIOD)
+                    .ifPresent(trend -> locationTrendMap.put(location.getId(), trend));
         }
 
         context.setVariable("locationWeatherMap", locationWeatherMap);
+        context.setVariable("locationTrendMap", locationTrendMap);
         context.setVariable("login", user.getLogin());
 
         log.info("Processing home page");
@@ -112,25 +179,41 @@ public class HomeServlet extends WeatherTrackerBaseServlet {
         resp.sendRedirect(req.getContextPath());
     }
 
-    private static WeatherDto buildWeatherDto(WeatherApiResponse weatherApiResponse) {
+    // Negative when unknown
+    private static long getDataAgeMinutes(Optional<Instant> retrievalTime) {
+        return retrievalTime
+                .map(time -> Duration.between(time, Instant.now()).toMinutes())
+                .orElse(-1L);
+    }
+
+    private static WeatherDto buildWeatherDto(WeatherApiResponse weatherApiResponse, long dataAgeMinutes) {
         Weather weather = weatherApiResponse.getWeatherList().get(0);
         return WeatherDto.builder()
                 .weatherCondition(WeatherCondition.getWeatherConditionForCode(weather.getId()))
                 .timeOfDay(TimeOfDay.getTimeOfDayForTime(weatherApiResponse.getDate()))
                 .description(weather.getDescription())
-                .temperature(weatherApiResponse.getMain().getTemperature())
-                .temperatureFeelsLike(weatherApiResponse.getMain().getTemperatureFeelsLike())
-                .temperatureMinimum(weatherApiResponse.getMain().getTemperatureMinimal())
-                .temperatureMaximum(weatherApiResponse.getMain().getTemperatureMaximum())
-                .humidity(weatherApiResponse.getMain().getHumidity())
-                .pressure(weatherApiResponse.getMain().getPressure())
-                .windSpeed(weatherApiResponse.getWind().getSpeed())
-                .windDirection(weatherApiResponse.getWind().getDeg())
-                .windGust(weatherApiResponse.getWind().getGust())
-                .cloudiness(weatherApiResponse.getClouds().getCloudiness())
-                .date(Date.from(weatherApiResponse.getDate().atZone(ZoneId.systemDefault()).toInstant()))
-                .sunrise(Date.from(weatherApiResponse.getSys().getSunriseTime().atZone(ZoneId.systemDefault()).toInstant()))
-                .sunset(Date.from(weatherApiResponse.getSys().getSunsetTime().atZone(ZoneId.systemDefault()).toInstant()))
+                .temperature(toDecimal(weatherApiResponse.getMain().getTemperature()))
+                .temperatureFeelsLike(toDecimal(weatherApiResponse.getMain().getTemperatureFeelsLike()))
+                .temperatureMinimum(toDecimal(weatherApiResponse.getMain().getTemperatureMinimal()))
+                .temperatureMaximum(toDecimal(weatherApiResponse.getMain().getTemperatureMaximum()))
+                .humidity(toWholeNumber(weatherApiResponse.getMain().getHumidity()))
+                .pressure(toWholeNumber(weatherApiResponse.getMain().getPressure()))
+                .windSpeed(toDecimal(weatherApiResponse.getWind().getSpeed()))
+                .windDirection(toWholeNumber(weatherApiResponse.getWind().getDeg()))
+                .windGust(toDecimal(weatherApiResponse.getWind().getGust()))
+                .cloudiness(toWholeNumber(weatherApiResponse.getClouds().getCloudiness()))
+                .date(weatherApiResponse.getDate().atZone(ZoneId.systemDefault()).toInstant())
+                .sunrise(weatherApiResponse.getSys().getSunriseTime().atZone(ZoneId.systemDefault()).toInstant())
+                .sunset(weatherApiResponse.getSys().getSunsetTime().atZone(ZoneId.systemDefault()).toInstant())
+                .dataAgeMinutes(dataAgeMinutes)
                 .build();
     }
+
+    private static double toDecimal(Double value) {
+        return value == null ? Double.NaN : value;
+    }
+
+    private static int toWholeNumber(Integer value) {
+        return value == null ? WeatherDto.MISSING : value;
+    }
 }
@@ -0,0 +1,122 @@
+package my.project.servlet;
+
+import jakarta.servlet.annotation.WebServlet;
+import jakarta.servlet.http.HttpServlet;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import my.project.cache.CacheStats;
+import my.project.cache.SingleFlight;
+import my.project.history.WeatherHistoryStore;
+import my.project.limit.AimdLimiter;
+import my.project.limit.HedgingPolicy;
+import my.project.limit.Priority;
+import my.project.limit.QuotaBudget;
+import my.project.service.WeatherApiService;
+import my.project.service.WeatherRefreshService;
+import my.project.service.WeatherService;
+import my.project.util.CacheUtil;
+import my.project.util.ContentEncodingUtil;
+import my.project.util.HistoryUtil;
+import my.project.util.HttpClientUtil;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.time.Duration;
+import java.util.Locale;
+import java.util.Optional;
+
+/**
+ * Plain text metrics, one "name value" pair per line. Access is restricted by
+ * {@link my.project.MetricsAccessFilter}.
+ */
+@WebServlet("/metrics")
+public class MetricsServlet extends HttpServlet {
+    @Override
+    protected void doGet(HttpServletRequest req, HttpServletResponse resp) throws IOException {
+        resp.setContentType("text/plain");
+        PrintWriter writer = resp.getWriter();
+
+        writeCacheStats(writer, "weather_cache", CacheUtil.getWeatherCache().getStats());
+        writeCacheStats(writer, "forecast_cache", CacheUtil.getForecastCache().getStats());
+        writeCacheStats(writer, "forecast_view_cache", CacheUtil.getForecastViewCache().getStats());
+        writeCacheStats(writer, "geocoding_cache", CacheUtil.getGeocodingCache().getStats());
+
+        writeFlightStats(writer, "weather_flight", CacheUtil.getWeatherFlight());
+        writeFlightStats(writer, "forecast_flight", CacheUtil.getForecastFlight());
+        writeFlightStats(writer, "geocoding_flight", CacheUtil.getGeocodingFlight());
+
+        AimdLimiter limiter = WeatherApiService.getConcurrencyLimiter();
+        writeMetric(writer, "weather_api_limit", limiter.getLimit());
+        writeMetric(writer, "weather_api_in_flight", limiter.getInFlight());
+        writeMetric(writer, "weather_api_rejections", limiter.getRejections());
+
+        QuotaBudget quotaBudget = WeatherApiService.getQuotaBudget();
+        writeMetric(writer, "weather_api_quota_minute_tokens", quotaBudget.getMinuteTokens());
+        writeMetric(writer, "weather_api_quota_day_tokens", quotaBudget.getDayTokens());
+        for (Priority priority : Priority.values()) {
+            String name = "weather_api_quota_" + priority.name().toLowerCase(Locale.ROOT);
+            writeMetric(writer, name + "_granted", quotaBudget.getGranted(priority));
+            writeMetric(writer, name + "_rejected", quotaBudget.getRejected(priority));
+        }
+
+        HedgingPolicy hedgingPolicy = WeatherApiService.getHedgingPolicy();
+        writeMetric(writer, "weather_api_hedge_delay_millis", hedgingPolicy.getHedgeDelay().map(Duration::toMillis).orElse(0L));
+        writeMetric(writer, "weather_api_hedgeable_calls", hedgingPolicy.getCalls());
+        writeMetric(writer, "weather_api_hedges_fired", hedgingPolicy.getHedgesFired());
+        writeMetric(writer, "weather_api_hedges_won", hedgingPolicy.getHedgesWon());
+        writeMetric(writer, "weather_api_hedges_rejected", hedgingPolicy.getHedgesRejected());
+
+        writeMetric(writer, "http_client_responses", HttpClientUtil.getResponses());
+        writeMetric(writer, "http_client_http2_responses", HttpClientUtil.getHttp2Responses());
+        writeMetric(writer, "http_client_new_tls_session_responses", HttpClientUtil.getNewSessionResponses());
+        writeMetric(writer, "http_client_wire_bytes", ContentEncodingUtil.getWireBytes());
+        writeMetric(writer, "http_client_decoded_bytes", ContentEncodingUtil.getDecodedBytes());
+
+        writeMetric(writer, "derived_weather", WeatherService.getDerivedWeather());
+        writeMetric(writer, "derived_weather_fallbacks", WeatherService.getDerivedWeatherFallbacks());
+
+        WeatherRefreshService weatherRefreshService =
+                (WeatherRefreshService) getServletContext().getAttribute("weatherRefreshService");
+        if (weatherRefreshService != null) {
+            writeMetric(writer, "weather_refresh_tracked_locations", weatherRefreshService.getTrackedLocations());
+            writeMetric(writer, "weather_refresh_distinct_coordinates", weatherRefreshService.getDistinctCoordinates());
+            writeMetric(writer, "weather_refresh_distinct_keys", weatherRefreshService.getDistinctKeys());
+            writeMetric(writer, "weather_refresh_refreshed", weatherRefreshService.getRefreshedLocations());
+            writeMetric(writer, "weather_refresh_failed", weatherRefreshService.getFailedRefreshes());
+            writeMetric(writer, "weather_refresh_deferred", weatherRefreshService.getDeferredRefreshes());
+        }
+
+        Optional<WeatherHistoryStore> historyStore = HistoryUtil.getStore();
+        if (historyStore.isPresent()) {
+            WeatherHistoryStore store = historyStore.get();
+            writeMetric(writer, "weather_history_locations", store.getLocations());
+            writeMetric(writer, "weather_history_appended", store.getAppendedObservations());
+            writeMetric(writer, "weather_history_skipped", store.getSkippedObservations());
+            writeMetric(writer, "weather_history_blocks", store.getBlocks());
+            writeMetric(writer, "weather_history_segments", store.getSegments());
+            writeMetric(writer, "weather_history_bytes", store.getStoredBytes());
+            writeMetric(writer, "weather_history_rollup_blocks", store.getRollupBlocks());
+            writeMetric(writer, "weather_history_rollup_locations", store.getRollupLocations());
+        }
+    }
+
+    private static void writeCacheStats(PrintWriter writer, String name, CacheStats stats) {
+        writeMetric(writer, name + "_hits", stats.getHits());
+        writeMetric(writer, name + "_stale_hits", stats.getStaleHits());
+        writeMetric(writer, name + "_misses", stats.getMisses());
+        writeMetric(writer, name + "_evictions", stats.getEvictions());
+        writeMetric(writer, name + "_size", stats.getSize());
+        writeMetric(writer, name + "_weight_bytes", stats.getWeight());
+        writeMetric(writer, name + "_hit_ratio", stats.getHitRatio());
+    }
+
+    private static void writeFlightStats(PrintWriter writer, String name, SingleFlight<?, ?> flight) {
+        writeMetric(writer, name + "_calls", flight.getCalls());
+        writeMetric(writer, name + "_coalesced_calls", flight.getCoalescedCalls());
+        writeMetric(writer, name + "_in_flight", flight.getInFlightCalls());
+    }
+
+    private static void writeMetric(PrintWriter writer, String name, Number value) {
+        writer.println(name + " " + value);
+    }
+}
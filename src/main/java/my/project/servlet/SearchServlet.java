@@ -16,7 +16,7 @@ import my.project.model.Location;
 import my.project.model.Session;
 import my.project.model.User;
 import my.project.model.api.LocationApiResponse;
-import my.project.service.WeatherApiService;
+import my.project.service.WeatherService;
 
 import java.io.IOException;
 import java.util.List;
@@ -28,7 +28,7 @@ import java.util.UUID;
 public class SearchServlet extends WeatherTrackerBaseServlet {
     private final SessionDao sessionDao = new SessionDao();
     private final LocationDao locationDao = new LocationDao();
-    private final WeatherApiService weatherApiService = new WeatherApiService();
+    private final WeatherService weatherService = new WeatherService();
 
     @Override
     protected void doGet(HttpServletRequest req, HttpServletResponse resp) throws IOException, SessionExpiredException, InvalidParameterException, GeocodingApiCallException, UnauthorizedSearchException {
@@ -56,7 +56,7 @@ public class SearchServlet extends WeatherTrackerBaseServlet {
         }
 
         log.info("Calling openweather geocoding API: " + searchQuery);
-        List<LocationApiResponse> foundLocations = weatherApiService.getLocationsByName(searchQuery);
+        List<LocationApiResponse> foundLocations = weatherService.getLocationsByName(searchQuery);
 
         context.setVariable("login", user.getLogin());
         context.setVariable("foundLocations", foundLocations);
@@ -11,7 +11,6 @@ import my.project.exception.*;
 import my.project.exception.api.GeocodingApiCallException;
 import org.thymeleaf.ITemplateEngine;
 import org.thymeleaf.context.WebContext;
-import pet.project.exception.*;
 import my.project.exception.api.WeatherApiCallException;
 import my.project.exception.authentication.UserExistsException;
 import my.project.exception.authentication.UserNotFoundException;
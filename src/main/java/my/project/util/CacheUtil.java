@@ -0,0 +1,117 @@
+package my.project.util;
+
+import my.project.cache.CoordinatesKey;
+import my.project.cache.LruCache;
+import my.project.cache.SingleFlight;
+import my.project.model.api.ForecastSeries;
+import my.project.model.api.LocationApiResponse;
+import my.project.model.api.WeatherApiResponse;
+import my.project.model.dto.ForecastDto;
+
+import java.time.Duration;
+import java.util.List;
+
+public class CacheUtil {
+    private static final LruCache<CoordinatesKey, WeatherApiResponse> WEATHER_CACHE_INSTANCE;
+    private static final LruCache<CoordinatesKey, ForecastSeries> FORECAST_CACHE_INSTANCE;
+    private static final LruCache<ForecastSeries, ForecastDto> FORECAST_VIEW_CACHE_INSTANCE;
+    private static final LruCache<String, List<LocationApiResponse>> GEOCODING_CACHE_INSTANCE;
+
+    // Concurrent requests for the same entry share one api call
+    private static final SingleFlight<CoordinatesKey, WeatherApiResponse> WEATHER_FLIGHT_INSTANCE = new SingleFlight<>();
+    private static final SingleFlight<CoordinatesKey, ForecastSeries> FORECAST_FLIGHT_INSTANCE = new SingleFlight<>();
+    private static final SingleFlight<String, List<LocationApiResponse>> GEOCODING_FLIGHT_INSTANCE = new SingleFlight<>();
+
+    // Rough object header and reference overhead, in bytes
+    private static final long OBJECT_OVERHEAD = 16;
+
+    static {
+        int weatherCacheMaxSize = ConfigUtil.getInt("WEATHER_CACHE_MAX_SIZE", 10_000);
+        long weatherCacheTtlSeconds = ConfigUtil.getLong("WEATHER_CACHE_TTL_SECONDS", 600);
+        // Stale weather is still shown while a fresh one is fetched, or when the api is unavailable
+        long weatherCacheMaxStalenessSeconds = ConfigUtil.getLong("WEATHER_CACHE_MAX_STALENESS_SECONDS", 50 * 60);
+
+        WEATHER_CACHE_INSTANCE = new LruCache<>(
+                weatherCacheMaxSize,
+                Duration.ofSeconds(weatherCacheTtlSeconds),
+                Duration.ofSeconds(weatherCacheMaxStalenessSeconds)
+        );
+
+        // Forecast entries become stale at the next forecast step, the TTL is only used when it can not be derived
+        int forecastCacheMaxSize = ConfigUtil.getInt("FORECAST_CACHE_MAX_SIZE", 10_000);
+        long forecastCacheTtlSeconds = ConfigUtil.getLong("FORECAST_CACHE_TTL_SECONDS", 3 * 60 * 60);
+        long forecastCacheMaxStalenessSeconds = ConfigUtil.getLong("FORECAST_CACHE_MAX_STALENESS_SECONDS", 3 * 60 * 60);
+
+        FORECAST_CACHE_INSTANCE = new LruCache<>(
+                forecastCacheMaxSize,
+                Duration.ofSeconds(forecastCacheTtlSeconds),
+                Duration.ofSeconds(forecastCacheMaxStalenessSeconds)
+        );
+
+        // Built forecasts of the most viewed locations, keyed by the cached series they were built from.
+        // Series have no equals, so a series that was fetched again is a new key and the old one ages out.
+        int forecastViewCacheMaxSize = ConfigUtil.getInt("FORECAST_VIEW_CACHE_MAX_SIZE", 1_000);
+
+        FORECAST_VIEW_CACHE_INSTANCE = new LruCache<>(
+                forecastViewCacheMaxSize,
+                Duration.ofSeconds(forecastCacheTtlSeconds + forecastCacheMaxStalenessSeconds)
+        );
+
+        // City coordinates practically never change, so geocoding results live for a long time
+        int geocodingCacheMaxSize = ConfigUtil.getInt("GEOCODING_CACHE_MAX_SIZE", 50_000);
+        long geocodingCacheMaxBytes = ConfigUtil.getLong("GEOCODING_CACHE_MAX_BYTES", 32L * 1024 * 1024);
+        long geocodingCacheTtlSeconds = ConfigUtil.getLong("GEOCODING_CACHE_TTL_SECONDS", 30L * 24 * 60 * 60);
+
+        GEOCODING_CACHE_INSTANCE = new LruCache<>(
+                geocodingCacheMaxSize,
+                geocodingCacheMaxBytes,
+                Duration.ofSeconds(geocodingCacheTtlSeconds),
+                CacheUtil::estimateGeocodingEntrySize
+        );
+    }
+
+    public static LruCache<CoordinatesKey, WeatherApiResponse> getWeatherCache() {
+        return WEATHER_CACHE_INSTANCE;
+    }
+
+    public static LruCache<CoordinatesKey, ForecastSeries> getForecastCache() {
+        return FORECAST_CACHE_INSTANCE;
+    }
+
+    public static LruCache<ForecastSeries, ForecastDto> getForecastViewCache() {
+        return FORECAST_VIEW_CACHE_INSTANCE;
+    }
+
+    public static LruCache<String, List<LocationApiResponse>> getGeocodingCache() {
+        return GEOCODING_CACHE_INSTANCE;
+    }
+
+    public static SingleFlight<CoordinatesKey, WeatherApiResponse> getWeatherFlight() {
+        return WEATHER_FLIGHT_INSTANCE;
+    }
+
+    public static SingleFlight<CoordinatesKey, ForecastSeries> getForecastFlight() {
+        return FORECAST_FLIGHT_INSTANCE;
+    }
+
+    public static SingleFlight<String, List<LocationApiResponse>> getGeocodingFlight() {
+        return GEOCODING_FLIGHT_INSTANCE;
+    }
+
+    private static long estimateGeocodingEntrySize(String query, List<LocationApiResponse> locations) {
+        long size = estimateStringSize(query) + OBJECT_OVERHEAD;
+
+        for (LocationApiResponse location : locations) {
+            // Object itself with two boxed coordinates
+            size += 3 * OBJECT_OVERHEAD + 2 * Double.BYTES;
+            size += estimateStringSize(location.getName()) + estimateStringSize(location.getCountry());
+        }
+
+        return size;
+    }
+
+    private static long estimateStringSize(String value) {
+        // Latin-1 strings take a byte per character, others take two
+        return value == null ? 0 : 2 * OBJECT_OVERHEAD + 2L * value.length();
+    }
+}
@@ -0,0 +1,299 @@
+package my.project.util;
+
+import java.io.ByteArrayInputStream;
+import java.io.EOFException;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PushbackInputStream;
+import java.io.SequenceInputStream;
+import java.util.Locale;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Decodes gzip and deflate response bodies while they are read. Every {@link Inflater} holds
+ * native memory, so they are pooled instead of being created for each response, which also
+ * rules out {@link java.util.zip.GZIPInputStream} and its own inflater. Gzip headers are
+ * skipped here and the raw deflate data is inflated by a pooled inflater. Like
+ * {@code GZIPInputStream}, every member of a gzip body is decoded and its trailer is checked
+ * against the CRC32 and the length of the decoded bytes.
+ */
+public class ContentEncodingUtil {
+    public static final String ACCEPT_ENCODING = "gzip, deflate";
+
+    private static final int INFLATER_POOL_SIZE = ConfigUtil.getInt("INFLATER_POOL_SIZE", 16);
+
+    // Raw deflate data, used for gzip and for deflate sent without the zlib wrapper
+    private static final BlockingQueue<Inflater> RAW_INFLATERS = new ArrayBlockingQueue<>(INFLATER_POOL_SIZE);
+    private static final BlockingQueue<Inflater> ZLIB_INFLATERS = new ArrayBlockingQueue<>(INFLATER_POOL_SIZE);
+
+    private static final AtomicLong WIRE_BYTES = new AtomicLong();
+    private static final AtomicLong DECODED_BYTES = new AtomicLong();
+
+    private static final int GZIP_MAGIC = 0x8b1f;
+    private static final int GZIP_FLAG_HEADER_CRC = 2;
+    private static final int GZIP_FLAG_EXTRA = 4;
+    private static final int GZIP_FLAG_NAME = 8;
+    private static final int GZIP_FLAG_COMMENT = 16;
+
+    /**
+     * Wraps a response body in a stream that yields decoded bytes, closing it returns
+     * the inflater to the pool
+     *
+     * @param contentEncoding value of the Content-Encoding header, null when absent
+     */
+    public static InputStream decode(InputStream body, String contentEncoding) throws IOException {
+        String encoding = contentEncoding == null ? "identity" : contentEncoding.trim().toLowerCase(Locale.ROOT);
+        CountingInputStream wire = new CountingInputStream(body, WIRE_BYTES);
+
+        switch (encoding) {
+            case "identity":
+                return new CountingInputStream(wire, DECODED_BYTES);
+            case "gzip":
+            case "x-gzip":
+                skipGzipHeader(wire);
+                return new CountingInputStream(new PooledGzipInputStream(wire), DECODED_BYTES);
+            case "deflate":
+                PushbackInputStream pushback = new PushbackInputStream(wire, 2);
+                boolean zlibWrapped = hasZlibHeader(pushback);
+                return new CountingInputStream(
+                        new PooledInflaterInputStream(pushback, zlibWrapped ? ZLIB_INFLATERS : RAW_INFLATERS, !zlibWrapped),
+                        DECODED_BYTES
+                );
+            default:
+                throw new IOException("Unsupported content encoding: " + contentEncoding);
+        }
+    }
+
+    public static long getWireBytes() {
+        return WIRE_BYTES.get();
+    }
+
+    public static long getDecodedBytes() {
+        return DECODED_BYTES.get();
+    }
+
+    private static void skipGzipHeader(InputStream in) throws IOException {
+        if (readUnsignedShort(in) != GZIP_MAGIC) {
+            throw new IOException("Not in gzip format");
+        }
+        if (readUnsignedByte(in) != 8) {
+            throw new IOException("Unsupported gzip compression method");
+        }
+        int flags = readUnsignedByte(in);
+
+        // Modification time, extra flags and operating system
+        skipBytes(in, 6);
+
+        if ((flags & GZIP_FLAG_EXTRA) != 0) {
+            skipBytes(in, readUnsignedShort(in));
+        }
+        if ((flags & GZIP_FLAG_NAME) != 0) {
+            skipZeroTerminated(in);
+        }
+        if ((flags & GZIP_FLAG_COMMENT) != 0) {
+            skipZeroTerminated(in);
+        }
+        if ((flags & GZIP_FLAG_HEADER_CRC) != 0) {
+            skipBytes(in, 2);
+        }
+    }
+
+    private static boolean hasZlibHeader(PushbackInputStream in) throws IOException {
+        int first = readUnsignedByte(in);
+        int second = readUnsignedByte(in);
+        in.unread(new byte[]{(byte) first, (byte) second});
+
+        // Deflate method and a header checksum that is a multiple of 31
+        return (first & 0x0f) == 8 && ((first << 8) | second) % 31 == 0;
+    }
+
+    private static long readUnsignedInt(InputStream in) throws IOException {
+        // Little-endian
+        return readUnsignedShort(in) | ((long) readUnsignedShort(in) << 16);
+    }
+
+    private static int readUnsignedShort(InputStream in) throws IOException {
+        // Little-endian
+        return readUnsignedByte(in) | (readUnsignedByte(in) << 8);
+    }
+
+    private static int readUnsignedByte(InputStream in) throws IOException {
+        int value = in.read();
+        if (value == -1) {
+            throw new EOFException("Unexpected end of compressed body");
+        }
+        return value;
+    }
+
+    private static void skipBytes(InputStream in, int count) throws IOException {
+        for (int i = 0; i < count; i++) {
+            readUnsignedByte(in);
+        }
+    }
+
+    private static void skipZeroTerminated(InputStream in) throws IOException {
+        while (readUnsignedByte(in) != 0) {
+            // Skipping
+        }
+    }
+
+    private static class PooledInflaterInputStream extends InflaterInputStream {
+        private final BlockingQueue<Inflater> pool;
+        private boolean closed;
+
+        private PooledInflaterInputStream(InputStream in, BlockingQueue<Inflater> pool, boolean nowrap) {
+            super(in, acquire(pool, nowrap));
+            this.pool = pool;
+        }
+
+        private static Inflater acquire(BlockingQueue<Inflater> pool, boolean nowrap) {
+            Inflater inflater = pool.poll();
+            return inflater == null ? new Inflater(nowrap) : inflater;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (closed) {
+                return;
+            }
+            closed = true;
+
+            try {
+                super.close();
+            } finally {
+                inf.reset();
+                if (!pool.offer(inf)) {
+                    inf.end();
+                }
+            }
+        }
+    }
+
+    private static class PooledGzipInputStream extends PooledInflaterInputStream {
+        // Of the decoded bytes of the current member
+        private final CRC32 crc = new CRC32();
+        private boolean ended;
+
+        private PooledGzipInputStream(InputStream in) {
+            super(in, RAW_INFLATERS, true);
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            if (ended) {
+                return -1;
+            }
+
+            int read = super.read(buffer, offset, length);
+            while (read == -1) {
+                if (!readTrailer()) {
+                    ended = true;
+                    return -1;
+                }
+                read = super.read(buffer, offset, length);
+            }
+
+            crc.update(buffer, offset, read);
+            return read;
+        }
+
+        /**
+         * Reads the rest of the body first, as the parser stops at the end of its value and would
+         * leave the trailer unchecked
+         */
+        @Override
+        public void close() throws IOException {
+            try {
+                byte[] rest = new byte[512];
+                while (!ended && read(rest, 0, rest.length) != -1) {
+                    // Checking the trailer
+                }
+            } finally {
+                ended = true;
+                super.close();
+            }
+        }
+
+        /**
+         * Checks the trailer of the member that was just inflated and starts the next one
+         *
+         * @return false when no member follows
+         */
+        private boolean readTrailer() throws IOException {
+            // The inflater may have taken more input than the deflate data of the member
+            int remaining = inf.getRemaining();
+            InputStream rest = remaining > 0
+                    ? new SequenceInputStream(new ByteArrayInputStream(buf, len - remaining, remaining), in)
+                    : in;
+
+            long expectedCrc = readUnsignedInt(rest);
+            long expectedSize = readUnsignedInt(rest);
+            if (expectedCrc != crc.getValue()) {
+                throw new IOException("Corrupt gzip trailer: CRC32 mismatch");
+            }
+            // Modulo 2^32
+            if (expectedSize != (inf.getBytesWritten() & 0xffffffffL)) {
+                throw new IOException("Corrupt gzip trailer: length mismatch");
+            }
+
+            PushbackInputStream next = new PushbackInputStream(rest, 1);
+            int first = next.read();
+            if (first == -1) {
+                return false;
+            }
+            next.unread(first);
+
+            try {
+                skipGzipHeader(next);
+            } catch (IOException e) {
+                // Trailing bytes that are not a gzip member are ignored, like GZIPInputStream does
+                return false;
+            }
+
+            in = next;
+            inf.reset();
+            crc.reset();
+            return true;
+        }
+    }
+
+    private static class CountingInputStream extends FilterInputStream {
+        private final AtomicLong counter;
+
+        private CountingInputStream(InputStream in, AtomicLong counter) {
+            super(in);
+            this.counter = counter;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int value = super.read();
+            if (value != -1) {
+                counter.incrementAndGet();
+            }
+            return value;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            int read = super.read(buffer, offset, length);
+            if (read > 0) {
+                counter.addAndGet(read);
+            }
+            return read;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = super.skip(n);
+            counter.addAndGet(skipped);
+            return skipped;
+        }
+    }
+}
@@ -0,0 +1,44 @@
+package my.project.util;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermissions;
+
+/**
+ * Files the application keeps across restarts are readable by its own user only. Permissions
+ * are left to the file system where it does not support POSIX ones.
+ */
+public class FileUtil {
+    private static final String PRIVATE_DIRECTORY_PERMISSIONS = "rwx------";
+    private static final String PRIVATE_FILE_PERMISSIONS = "rw-------";
+
+    /**
+     * Creates the directory and its missing parents, an existing directory is left as it is
+     */
+    public static void createPrivateDirectories(Path directory) throws IOException {
+        if (directory == null || Files.isDirectory(directory)) {
+            return;
+        }
+
+        if (isPosix(directory)) {
+            Files.createDirectories(directory, PosixFilePermissions.asFileAttribute(
+                    PosixFilePermissions.fromString(PRIVATE_DIRECTORY_PERMISSIONS)));
+        } else {
+            Files.createDirectories(directory);
+        }
+    }
+
+    public static void createPrivateFile(Path path) throws IOException {
+        if (isPosix(path)) {
+            Files.createFile(path, PosixFilePermissions.asFileAttribute(
+                    PosixFilePermissions.fromString(PRIVATE_FILE_PERMISSIONS)));
+        } else {
+            Files.createFile(path);
+        }
+    }
+
+    private static boolean isPosix(Path path) {
+        return path.getFileSystem().supportedFileAttributeViews().contains("posix");
+    }
+}
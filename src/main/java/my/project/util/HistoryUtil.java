@@ -0,0 +1,42 @@
+package my.project.util;
+
+import my.project.history.WeatherHistoryStore;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Optional;
+
+/**
+ * The one weather history store of the application. Absent until it is opened on startup, and
+ * for good when history is disabled or the store can not be opened, history is then neither
+ * kept nor shown.
+ */
+public class HistoryUtil {
+    private static volatile WeatherHistoryStore storeInstance;
+
+    public static synchronized void open(Path directory) throws IOException {
+        if (storeInstance != null) {
+            return;
+        }
+
+        // Observations of the open block are lost on a crash, so a block should not span too long
+        long blockMinutes = ConfigUtil.getLong("WEATHER_HISTORY_BLOCK_MINUTES", 2 * 60);
+        long maxSegmentBytes = ConfigUtil.getLong("WEATHER_HISTORY_MAX_SEGMENT_BYTES", 64L * 1024 * 1024);
+
+        storeInstance = WeatherHistoryStore.open(directory, Duration.ofMinutes(blockMinutes), maxSegmentBytes);
+    }
+
+    public static Optional<WeatherHistoryStore> getStore() {
+        return Optional.ofNullable(storeInstance);
+    }
+
+    public static synchronized void close() throws IOException {
+        WeatherHistoryStore store = storeInstance;
+        storeInstance = null;
+
+        if (store != null) {
+            store.close();
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package my.project.util;
+
+import javax.net.ssl.SSLSession;
+import java.math.BigInteger;
+import java.net.http.HttpClient;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The one outbound http client of the application. Every client has its own selector thread
+ * and connection pool, so sharing it lets all calls reuse the same connections.
+ */
+public class HttpClientUtil {
+    private static final HttpClient HTTP_CLIENT_INSTANCE;
+    private static final ExecutorService EXECUTOR_INSTANCE;
+    private static final Duration REQUEST_TIMEOUT;
+
+    // Connections are not observable through the client api, a TLS session seen for the first
+    // time is the closest sign of a new connection
+    private static final int MAX_TRACKED_SESSIONS = 1024;
+    private static final Set<String> KNOWN_SESSIONS = ConcurrentHashMap.newKeySet();
+    private static final AtomicLong RESPONSES = new AtomicLong();
+    private static final AtomicLong HTTP_2_RESPONSES = new AtomicLong();
+    private static final AtomicLong NEW_SESSION_RESPONSES = new AtomicLong();
+
+    static {
+        long connectTimeoutMillis = ConfigUtil.getLong("HTTP_CLIENT_CONNECT_TIMEOUT_MILLIS", 2000);
+        long requestTimeoutMillis = ConfigUtil.getLong("HTTP_CLIENT_REQUEST_TIMEOUT_MILLIS", 5000);
+        int executorThreads = ConfigUtil.getInt("WEATHER_API_EXECUTOR_THREADS", 4);
+
+        EXECUTOR_INSTANCE = Executors.newFixedThreadPool(executorThreads, new HttpClientThreadFactory());
+        REQUEST_TIMEOUT = Duration.ofMillis(requestTimeoutMillis);
+
+        // HTTP/2 multiplexes concurrent calls over one connection, the client falls back to 1.1 by itself
+        HTTP_CLIENT_INSTANCE = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_2)
+                .connectTimeout(Duration.ofMillis(connectTimeoutMillis))
+                .executor(EXECUTOR_INSTANCE)
+                .build();
+    }
+
+    public static HttpClient getHttpClient() {
+        return HTTP_CLIENT_INSTANCE;
+    }
+
+    public static Duration getRequestTimeout() {
+        return REQUEST_TIMEOUT;
+    }
+
+    public static void recordResponse(HttpResponse<?> response) {
+        RESPONSES.incrementAndGet();
+
+        if (response.version() == HttpClient.Version.HTTP_2) {
+            HTTP_2_RESPONSES.incrementAndGet();
+        }
+
+        Optional<SSLSession> sslSession = response.sslSession();
+        if (sslSession.isPresent()) {
+            String sessionId = new BigInteger(1, sslSession.get().getId()).toString(16);
+
+            if (KNOWN_SESSIONS.size() >= MAX_TRACKED_SESSIONS) {
+                KNOWN_SESSIONS.clear();
+            }
+            if (KNOWN_SESSIONS.add(sessionId)) {
+                NEW_SESSION_RESPONSES.incrementAndGet();
+            }
+        }
+    }
+
+    public static long getResponses() {
+        return RESPONSES.get();
+    }
+
+    public static long getHttp2Responses() {
+        return HTTP_2_RESPONSES.get();
+    }
+
+    public static long getNewSessionResponses() {
+        return NEW_SESSION_RESPONSES.get();
+    }
+
+    public static void shutdown() {
+        EXECUTOR_INSTANCE.shutdown();
+    }
+
+    private static class HttpClientThreadFactory implements ThreadFactory {
+        private final AtomicInteger counter = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "http-client-" + counter.incrementAndGet());
+            // Must not keep the container from shutting down
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
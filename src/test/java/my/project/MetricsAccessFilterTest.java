@@ -0,0 +1,54 @@
+package my.project;
+
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class MetricsAccessFilterTest {
+    @Mock
+    private HttpServletRequest request;
+    @Mock
+    private HttpServletResponse response;
+    @Mock
+    private FilterChain chain;
+
+    @Test
+    public void doFilter_remoteRequestWithoutToken_shouldRespondNotFound() throws Exception {
+        when(request.getRemoteAddr()).thenReturn("203.0.113.7");
+
+        new MetricsAccessFilter(null).doFilter(request, response, chain);
+
+        verify(response).sendError(HttpServletResponse.SC_NOT_FOUND);
+        verifyNoInteractions(chain);
+    }
+
+    @Test
+    public void doFilter_localRequestWithoutToken_shouldPassOn() throws Exception {
+        when(request.getRemoteAddr()).thenReturn("0:0:0:0:0:0:0:1");
+
+        new MetricsAccessFilter(null).doFilter(request, response, chain);
+
+        verify(chain).doFilter(request, response);
+    }
+
+    @Test
+    public void doFilter_tokenIsSet_shouldRequireItEvenFromLocalHost() throws Exception {
+        MetricsAccessFilter filter = new MetricsAccessFilter("secret");
+
+        when(request.getHeader("Authorization")).thenReturn("Bearer wrong");
+        filter.doFilter(request, response, chain);
+        verify(response).sendError(HttpServletResponse.SC_NOT_FOUND);
+        verifyNoInteractions(chain);
+
+        when(request.getHeader("Authorization")).thenReturn("Bearer secret");
+        filter.doFilter(request, response, chain);
+        verify(chain).doFilter(request, response);
+    }
+}
@@ -0,0 +1,126 @@
+package my.project.cache;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CacheSnapshotTest {
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+    private static final CacheSnapshot.KeyCodec<String> KEY_CODEC = new CacheSnapshot.KeyCodec<>() {
+        @Override
+        public void write(DataOutputStream out, String key) throws IOException {
+            CacheSnapshot.writeString(out, key);
+        }
+
+        @Override
+        public String read(ByteBuffer buffer) {
+            return CacheSnapshot.readString(buffer);
+        }
+    };
+
+    @TempDir
+    private Path tempDir;
+
+    @Test
+    public void load_writtenSnapshot_shouldRestoreEntriesWithTimestamps() throws IOException {
+        LruCache<String, String> cache = new LruCache<>(10, Duration.ofMinutes(10));
+        cache.put("london", "rain");
+        cache.put("paris", "clear");
+        Path path = tempDir.resolve("cache.snapshot");
+
+        assertEquals(2, snapshotOf(cache).write(path));
+
+        LruCache<String, String> restoredCache = new LruCache<>(10, Duration.ofMinutes(10));
+        assertEquals(2, snapshotOf(restoredCache).load(path));
+
+        assertEquals(Optional.of("rain"), restoredCache.get("london"));
+        assertEquals(
+                cache.peekEntry("paris").get().getStoredAt().toEpochMilli(),
+                restoredCache.peekEntry("paris").get().getStoredAt().toEpochMilli()
+        );
+    }
+
+    @Test
+    public void load_expiredEntry_shouldDropEntry() throws IOException {
+        LruCache<String, String> cache = new LruCache<>(10, Duration.ofMinutes(10));
+        cache.put("london", "rain");
+        cache.put("paris", "clear", Instant.now().plusMillis(50));
+        Path path = tempDir.resolve("cache.snapshot");
+        snapshotOf(cache).write(path);
+
+        Instant loadTime = Instant.now().plusMillis(100);
+        while (Instant.now().isBefore(loadTime)) {
+            Thread.onSpinWait();
+        }
+
+        LruCache<String, String> restoredCache = new LruCache<>(10, Duration.ofMinutes(10));
+        assertEquals(1, snapshotOf(restoredCache).load(path));
+        assertFalse(restoredCache.get("paris").isPresent());
+    }
+
+    @Test
+    public void load_notSnapshotFile_shouldThrowIOException() throws IOException {
+        Path path = tempDir.resolve("cache.snapshot");
+        Files.writeString(path, "not a snapshot");
+
+        assertThrows(
+                IOException.class,
+                () -> snapshotOf(new LruCache<>(10, Duration.ofMinutes(10))).load(path)
+        );
+    }
+
+    @Test
+    public void load_unparsableValue_shouldSkipEntryAndRestoreOthers() throws IOException {
+        LruCache<String, String> cache = new LruCache<>(10, Duration.ofMinutes(10));
+        cache.put("london", "12");
+        cache.put("paris", "clear");
+        cache.put("berlin", "7");
+        Path path = tempDir.resolve("cache.snapshot");
+        snapshotOf(cache).write(path);
+
+        LruCache<String, Integer> restoredCache = new LruCache<>(10, Duration.ofMinutes(10));
+        CacheSnapshot snapshot = new CacheSnapshot().register(
+                "test", restoredCache, KEY_CODEC,
+                OBJECT_MAPPER.writerFor(Integer.class),
+                OBJECT_MAPPER.readerFor(Integer.class)
+        );
+
+        assertEquals(2, snapshot.load(path));
+        assertEquals(1, snapshot.getSkippedEntries());
+        assertEquals(Optional.of(7), restoredCache.get("berlin"));
+    }
+
+    @Test
+    public void load_symbolicLink_shouldThrowIOException() throws IOException {
+        LruCache<String, String> cache = new LruCache<>(10, Duration.ofMinutes(10));
+        cache.put("london", "rain");
+        Path target = tempDir.resolve("elsewhere.snapshot");
+        snapshotOf(cache).write(target);
+        Path path = Files.createSymbolicLink(tempDir.resolve("cache.snapshot"), target);
+
+        assertThrows(
+                IOException.class,
+                () -> snapshotOf(new LruCache<>(10, Duration.ofMinutes(10))).load(path)
+        );
+    }
+
+    private static CacheSnapshot snapshotOf(LruCache<String, String> cache) {
+        return new CacheSnapshot().register(
+                "test", cache, KEY_CODEC,
+                OBJECT_MAPPER.writerFor(String.class),
+                OBJECT_MAPPER.readerFor(String.class)
+        );
+    }
+}
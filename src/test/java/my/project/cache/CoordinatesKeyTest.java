@@ -0,0 +1,26 @@
+package my.project.cache;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CoordinatesKeyTest {
+    @Test
+    public void of_nearbyCoordinates_shouldGiveSameKey() {
+        CoordinatesKey first = CoordinatesKey.of(51.5073219, -0.1276474);
+        CoordinatesKey second = CoordinatesKey.of(51.5085, -0.1257);
+
+        assertEquals(first, second);
+        assertEquals(first.hashCode(), second.hashCode());
+    }
+
+    @Test
+    public void of_coordinatesInDifferentCells_shouldGiveDifferentKeys() {
+        assertNotEquals(CoordinatesKey.of(51.5073, -0.1276), CoordinatesKey.of(51.5273, -0.1276));
+    }
+
+    @Test
+    public void quantize_zeroGrid_shouldKeepExactCoordinate() {
+        assertEquals(51.5073219, CoordinatesKey.quantize(51.5073219, 0));
+    }
+}
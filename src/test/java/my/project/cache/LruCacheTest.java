@@ -0,0 +1,140 @@
+package my.project.cache;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LruCacheTest {
+    private MutableClock clock;
+    private LruCache<String, String> cache;
+
+    @BeforeEach
+    public void setUp() {
+        clock = new MutableClock(Instant.parse("2023-01-01T00:00:00Z"));
+        cache = new LruCache<>(2, Duration.ofMinutes(10), clock);
+    }
+
+    @Test
+    public void get_storedEntry_shouldReturnValueAndCountHit() {
+        cache.put("london", "rain");
+
+        assertEquals(Optional.of("rain"), cache.get("london"));
+        assertEquals(1, cache.getStats().getHits());
+        assertEquals(0, cache.getStats().getMisses());
+    }
+
+    @Test
+    public void get_missingEntry_shouldReturnEmptyAndCountMiss() {
+        assertEquals(Optional.empty(), cache.get("london"));
+        assertEquals(1, cache.getStats().getMisses());
+    }
+
+    @Test
+    public void get_expiredEntry_shouldReturnEmptyAndRemoveEntry() {
+        cache.put("london", "rain");
+        clock.advance(Duration.ofMinutes(10));
+
+        assertEquals(Optional.empty(), cache.get("london"));
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void put_overMaxSize_shouldEvictLeastRecentlyUsedEntry() {
+        cache.put("london", "rain");
+        cache.put("paris", "clear");
+        cache.get("london");
+        cache.put("berlin", "clouds");
+
+        assertTrue(cache.get("london").isPresent());
+        assertTrue(cache.get("berlin").isPresent());
+        assertFalse(cache.get("paris").isPresent());
+        assertEquals(1, cache.getStats().getEvictions());
+    }
+
+    @Test
+    public void peekEntry_eldestEntry_shouldNotKeepItFromEviction() {
+        cache.put("london", "rain");
+        cache.put("paris", "clear");
+        assertTrue(cache.peekEntry("london").isPresent());
+        cache.put("berlin", "clouds");
+
+        assertFalse(cache.peekEntry("london").isPresent());
+        assertTrue(cache.peekEntry("paris").isPresent());
+        assertEquals(0, cache.getStats().getHits() + cache.getStats().getMisses());
+    }
+
+    @Test
+    public void put_explicitExpiration_shouldOverrideTimeToLive() {
+        cache.put("london", "rain", clock.instant().plus(Duration.ofMinutes(1)));
+        clock.advance(Duration.ofMinutes(2));
+
+        assertEquals(Optional.empty(), cache.get("london"));
+    }
+
+    @Test
+    public void getEntry_staleEntry_shouldReturnEntryUntilMaxStalenessPassed() {
+        LruCache<String, String> staleCache = new LruCache<>(2, Duration.ofMinutes(10), Duration.ofMinutes(5), clock);
+        staleCache.put("london", "rain");
+        clock.advance(Duration.ofMinutes(12));
+
+        Optional<CacheEntry<String>> entry = staleCache.getEntry("london");
+        assertTrue(entry.isPresent());
+        assertTrue(entry.get().isStaleAt(clock.instant()));
+        assertEquals(1, staleCache.getStats().getStaleHits());
+
+        clock.advance(Duration.ofMinutes(3));
+
+        assertEquals(Optional.empty(), staleCache.getEntry("london"));
+    }
+
+    @Test
+    public void restore_newerEntryStored_shouldKeepNewerEntry() {
+        Instant snapshotTime = clock.instant();
+        clock.advance(Duration.ofMinutes(1));
+        cache.put("london", "rain");
+
+        assertFalse(cache.restore("london", "clear", snapshotTime, snapshotTime.plus(Duration.ofMinutes(10)),
+                snapshotTime.plus(Duration.ofMinutes(10))));
+        assertEquals(Optional.of("rain"), cache.get("london"));
+
+        Instant later = clock.instant().plus(Duration.ofSeconds(1));
+        assertTrue(cache.restore("london", "snow", later, later.plus(Duration.ofMinutes(10)),
+                later.plus(Duration.ofMinutes(10))));
+        assertEquals(Optional.of("snow"), cache.get("london"));
+    }
+
+    private static class MutableClock extends Clock {
+        private Instant instant;
+
+        MutableClock(Instant instant) {
+            this.instant = instant;
+        }
+
+        void advance(Duration duration) {
+            instant = instant.plus(duration);
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public Instant instant() {
+            return instant;
+        }
+    }
+}
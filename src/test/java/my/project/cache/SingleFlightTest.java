@@ -0,0 +1,69 @@
+package my.project.cache;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SingleFlightTest {
+    private final SingleFlight<String, String> singleFlight = new SingleFlight<>();
+
+    @Test
+    public void execute_sameKeyInFlight_shouldShareOneCall() throws Exception {
+        AtomicInteger callCount = new AtomicInteger();
+        CompletableFuture<String> call = new CompletableFuture<>();
+
+        CompletableFuture<String> first = singleFlight.execute("london", () -> {
+            callCount.incrementAndGet();
+            return call;
+        });
+        CompletableFuture<String> second = singleFlight.execute("london", () -> {
+            callCount.incrementAndGet();
+            return CompletableFuture.completedFuture("other");
+        });
+        call.complete("rain");
+
+        assertEquals("rain", first.get());
+        assertEquals("rain", second.get());
+        assertEquals(1, callCount.get());
+        assertEquals(1, singleFlight.getCoalescedCalls());
+    }
+
+    @Test
+    public void execute_differentKeys_shouldNotShareCalls() throws Exception {
+        CompletableFuture<String> first = singleFlight.execute("london", () -> new CompletableFuture<>());
+        CompletableFuture<String> second = singleFlight.execute("paris", () -> CompletableFuture.completedFuture("clear"));
+
+        assertFalse(first.isDone());
+        assertEquals("clear", second.get());
+        assertEquals(0, singleFlight.getCoalescedCalls());
+    }
+
+    @Test
+    public void execute_afterCompletion_shouldStartNewCall() throws Exception {
+        singleFlight.execute("london", () -> CompletableFuture.completedFuture("rain")).get();
+
+        CompletableFuture<String> next = singleFlight.execute("london", () -> CompletableFuture.completedFuture("snow"));
+
+        assertEquals("snow", next.get());
+        assertEquals(0, singleFlight.getInFlightCalls());
+    }
+
+    @Test
+    public void execute_failedCall_shouldFailEveryCallerWithOriginalException() {
+        CompletableFuture<String> call = new CompletableFuture<>();
+        CompletableFuture<String> first = singleFlight.execute("london", () -> call);
+        CompletableFuture<String> second = singleFlight.execute("london", () -> call);
+        IllegalStateException failure = new IllegalStateException("Api is unavailable");
+
+        call.completeExceptionally(failure);
+
+        ExecutionException firstException = assertThrows(ExecutionException.class, first::get);
+        ExecutionException secondException = assertThrows(ExecutionException.class, second::get);
+        assertSame(failure, firstException.getCause());
+        assertSame(failure, secondException.getCause());
+    }
+}
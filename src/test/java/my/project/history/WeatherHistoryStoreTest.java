@@ -0,0 +1,323 @@
+package my.project.history;
+
+import my.project.model.dto.enums.WeatherCondition;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class WeatherHistoryStoreTest {
+    private static final Duration BLOCK_SPAN = Duration.ofHours(2);
+    private static final long MAX_SEGMENT_BYTES = 1024 * 1024;
+
+    // Start of a block span
+    private static final long START = 1_700_000_000L / 7200 * 7200;
+
+    @TempDir
+    private Path tempDir;
+
+    @Test
+    public void open_missingDirectory_shouldCreateItForOwnerOnly() throws IOException {
+        Path directory = tempDir.resolve("weather-app").resolve("history");
+
+        try (WeatherHistoryStore ignored = WeatherHistoryStore.open(directory, BLOCK_SPAN, MAX_SEGMENT_BYTES)) {
+            assertTrue(Files.isDirectory(directory));
+            if (directory.getFileSystem().supportedFileAttributeViews().contains("posix")) {
+                assertEquals("rwx------", PosixFilePermissions.toString(Files.getPosixFilePermissions(directory)));
+            }
+        }
+    }
+
+    @Test
+    public void query_appendedObservations_shouldReturnThemInRange() throws IOException {
+        List<Observation> observations = new ArrayList<>();
+        // Irregular gaps over several block spans
+        long time = START;
+        for (int i = 0; i < 100; i++) {
+            time += i % 7 == 0 ? 600 + i : 600;
+            observations.add(observation(time, 10 + i * 0.25, i % 3 == 0 ? 800 : 500));
+        }
+        observations.add(new Observation(time + 600, new double[]{Double.NaN, 1, 2, 3, Double.NaN, 5}, 0));
+
+        try (WeatherHistoryStore store = openStore()) {
+            for (Observation observation : observations) {
+                assertTrue(store.append(1, observation));
+            }
+            store.flush(Instant.ofEpochSecond(time));
+
+            // Written blocks and the open one
+            assertEquals(observations, store.query(1, Instant.ofEpochSecond(START), Instant.ofEpochSecond(time + 601)));
+
+            List<Observation> expected = observations.subList(10, 20);
+            Instant from = Instant.ofEpochSecond(expected.get(0).getTime());
+            Instant to = Instant.ofEpochSecond(observations.get(20).getTime());
+            assertEquals(expected, store.query(1, from, to));
+
+            assertTrue(store.query(2, Instant.ofEpochSecond(START), Instant.ofEpochSecond(time)).isEmpty());
+        }
+    }
+
+    @Test
+    public void open_closedStore_shouldRestoreObservationsAndSkipOlderOnes() throws IOException {
+        try (WeatherHistoryStore store = openStore()) {
+            store.append(1, observation(START, 12.5, 800));
+            store.append(1, observation(START + 600, 13, 801));
+            store.append(2, observation(START + 300, -4, 600));
+        }
+
+        try (WeatherHistoryStore store = openStore()) {
+            assertEquals(2, store.getLocations());
+            assertEquals(
+                    List.of(observation(START, 12.5, 800), observation(START + 600, 13, 801)),
+                    store.query(1, Instant.ofEpochSecond(START), Instant.ofEpochSecond(START + 3600))
+            );
+
+            assertFalse(store.append(1, observation(START + 600, 13, 801)));
+            assertTrue(store.append(1, observation(START + 1200, 14, 802)));
+            assertEquals(3, store.query(1, Instant.ofEpochSecond(START), Instant.ofEpochSecond(START + 3600)).size());
+        }
+    }
+
+    @Test
+    public void open_segmentWithTornBlock_shouldCutItOffAndKeepAppending() throws IOException {
+        try (WeatherHistoryStore store = openStore()) {
+            store.append(1, observation(START, 12.5, 800));
+            store.flush(Instant.ofEpochSecond(START + BLOCK_SPAN.getSeconds()));
+            store.append(1, observation(START + BLOCK_SPAN.getSeconds(), 13, 800));
+        }
+
+        // Half of the last block is lost
+        Path segment = segments().get(0);
+        long size = Files.size(segment);
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.WRITE)) {
+            channel.truncate(size - 20);
+        }
+
+        try (WeatherHistoryStore store = openStore()) {
+            assertEquals(1, store.getBlocks());
+            assertTrue(store.append(1, observation(START + 600, 14, 800)));
+        }
+
+        try (WeatherHistoryStore store = openStore()) {
+            assertEquals(
+                    List.of(observation(START, 12.5, 800), observation(START + 600, 14, 800)),
+                    store.query(1, Instant.ofEpochSecond(START), Instant.ofEpochSecond(START + 3600))
+            );
+        }
+    }
+
+    @Test
+    public void append_fullSegment_shouldStartNextSegment() throws IOException {
+        try (WeatherHistoryStore store = WeatherHistoryStore.open(tempDir, BLOCK_SPAN, 256)) {
+            for (int i = 0; i < 10; i++) {
+                store.append(1, observation(START + i * BLOCK_SPAN.getSeconds(), i, 800));
+            }
+        }
+
+        assertTrue(segments().size() > 1);
+
+        try (WeatherHistoryStore store = WeatherHistoryStore.open(tempDir, BLOCK_SPAN, 256)) {
+            List<Observation> observations = store.query(1, Instant.ofEpochSecond(START),
+                    Instant.ofEpochSecond(START + 10 * BLOCK_SPAN.getSeconds()));
+
+            assertEquals(10, observations.size());
+            assertEquals(9, observations.get(9).getValue(Metric.TEMPERATURE));
+        }
+    }
+
+    @Test
+    public void append_closedStore_shouldThrowIllegalStateException() throws IOException {
+        WeatherHistoryStore store = openStore();
+        store.close();
+
+        assertThrows(IllegalStateException.class, () -> store.append(1, observation(START, 1, 800)));
+    }
+
+    @Test
+    public void queryRollups_appendedObservations_shouldAggregatePerBucket() throws IOException {
+        try (WeatherHistoryStore store = openStore()) {
+            store.append(1, observation(START, 10, 800));
+            store.append(1, observation(START + 1200, 14, 500));
+            store.append(1, observation(START + 2400, 12, 501));
+            store.append(1, new Observation(START + 3600, new double[]{Double.NaN, 1, 2, 3, 4, 5}, 0));
+
+            List<Rollup> rollups = store.queryRollups(1, Resolution.HOUR,
+                    Instant.ofEpochSecond(START), Instant.ofEpochSecond(START + 7200));
+
+            assertEquals(2, rollups.size());
+            Rollup first = rollups.get(0);
+            assertEquals(START, first.getTime());
+            assertEquals(3, first.getCount());
+            assertEquals(10, first.getMinimum(Metric.TEMPERATURE));
+            assertEquals(14, first.getMaximum(Metric.TEMPERATURE));
+            assertEquals(12, first.getMean(Metric.TEMPERATURE));
+            assertEquals(WeatherCondition.RAIN, first.getDominantCondition());
+
+            Rollup second = rollups.get(1);
+            assertTrue(Double.isNaN(second.getMean(Metric.TEMPERATURE)));
+            assertEquals(4, second.getMean(Metric.WIND_SPEED));
+            assertEquals(WeatherCondition.UNDEFINED, second.getDominantCondition());
+        }
+    }
+
+    @Test
+    public void queryRollups_observationsAfterFirstQuery_shouldBeIncluded() throws IOException {
+        try (WeatherHistoryStore store = openStore()) {
+            store.append(1, observation(START, 10, 800));
+            store.flush(Instant.ofEpochSecond(START + BLOCK_SPAN.getSeconds()));
+            store.append(1, observation(START + 600, 20, 800));
+
+            Instant from = Instant.ofEpochSecond(START);
+            Instant to = Instant.ofEpochSecond(START + 86400);
+            assertEquals(15, store.queryRollups(1, Resolution.DAY, from, to).get(0).getMean(Metric.TEMPERATURE));
+
+            store.append(1, observation(START + 1200, 30, 800));
+            assertEquals(20, store.queryRollups(1, Resolution.DAY, from, to).get(0).getMean(Metric.TEMPERATURE));
+            assertEquals(3, store.queryRollups(1, Resolution.WEEK, from, to).get(0).getCount());
+        }
+    }
+
+    @Test
+    public void queryRollups_daysOverBeforeClose_shouldBeReadFromRollupBlocksAfterReopen() throws IOException {
+        long day = Resolution.DAY.getSeconds();
+        long monday = Resolution.WEEK.getBucketStart(START) + Resolution.WEEK.getSeconds();
+        Instant from = Instant.ofEpochSecond(monday);
+        Instant to = Instant.ofEpochSecond(monday + 7 * day);
+
+        try (WeatherHistoryStore store = openStore()) {
+            // Every three hours for three days
+            for (int i = 0; i < 24; i++) {
+                store.append(1, observation(monday + i * 3 * 3600, i, 800));
+            }
+            store.flush(Instant.ofEpochSecond(monday + 3 * day + 7200));
+
+            assertEquals(3, store.getRollupBlocks());
+        }
+
+        try (WeatherHistoryStore store = openStore()) {
+            assertEquals(3, store.getRollupBlocks());
+
+            List<Rollup> days = store.queryRollups(1, Resolution.DAY, from, to);
+            assertEquals(3, days.size());
+            assertEquals(monday + day, days.get(1).getTime());
+            assertEquals(8, days.get(1).getCount());
+            assertEquals(11.5, days.get(1).getMean(Metric.TEMPERATURE));
+
+            List<Rollup> hours = store.queryRollups(1, Resolution.HOUR, from, to);
+            assertEquals(24, hours.size());
+            assertEquals(monday + 69 * 3600, hours.get(23).getTime());
+            assertEquals(23, hours.get(23).getMaximum(Metric.TEMPERATURE));
+
+            List<Rollup> weeks = store.queryRollups(1, Resolution.WEEK, from, to);
+            assertEquals(1, weeks.size());
+            assertEquals(24, weeks.get(0).getCount());
+            assertEquals(0, weeks.get(0).getMinimum(Metric.TEMPERATURE));
+
+            // The week goes on from the written days
+            store.append(1, observation(monday + 3 * day + 3600, 30, 800));
+            weeks = store.queryRollups(1, Resolution.WEEK, from, to);
+            assertEquals(1, weeks.size());
+            assertEquals(25, weeks.get(0).getCount());
+            assertEquals(30, weeks.get(0).getMaximum(Metric.TEMPERATURE));
+            assertEquals(4, store.queryRollups(1, Resolution.DAY, from, to).size());
+        }
+    }
+
+    @Test
+    public void open_rollupBlockOfOtherLayout_shouldSkipIt() throws IOException {
+        long day = Resolution.DAY.getSeconds();
+        long monday = Resolution.WEEK.getBucketStart(START) + Resolution.WEEK.getSeconds();
+        Instant from = Instant.ofEpochSecond(monday);
+        Instant to = Instant.ofEpochSecond(monday + 7 * day);
+
+        try (WeatherHistoryStore store = openStore()) {
+            for (int i = 0; i < 24; i++) {
+                store.append(1, observation(monday + i * 3 * 3600, i, 800));
+            }
+            store.flush(Instant.ofEpochSecond(monday + 3 * day + 7200));
+        }
+
+        // As if written before a metric was added, the checksum of the block is still right
+        int records = SeriesRollups.FIRST_HOUR_RECORD + 1;
+        ByteBuffer payload = ByteBuffer.allocate(SeriesRollups.LAYOUT_BYTES + records * SeriesRollups.RECORD_BYTES)
+                .putInt(Metric.values().length - 1)
+                .putInt(WeatherCondition.values().length);
+        try (HistorySegment segment = HistorySegment.open(segments().get(0), true,
+                (seriesId, kind, firstTime, lastTime, count, payloadOffset, length) -> {
+                })) {
+            segment.append(1, HistorySegment.ROLLUPS, monday + 3 * day, monday + 3 * day, records, payload.array());
+        }
+
+        try (WeatherHistoryStore store = openStore()) {
+            assertEquals(3, store.getRollupBlocks());
+
+            List<Rollup> days = store.queryRollups(1, Resolution.DAY, from, to);
+            assertEquals(3, days.size());
+            assertEquals(11.5, days.get(1).getMean(Metric.TEMPERATURE));
+            assertEquals(24, store.queryRollups(1, Resolution.WEEK, from, to).get(0).getCount());
+        }
+    }
+
+    @Test
+    public void queryRollups_observationOfWrittenDay_shouldOnlyBeStoredAsObservation() throws IOException {
+        long midnight = Resolution.DAY.getBucketStart(START) + Resolution.DAY.getSeconds();
+        Instant from = Instant.ofEpochSecond(midnight - 7200);
+        Instant to = Instant.ofEpochSecond(midnight);
+
+        try (WeatherHistoryStore store = openStore()) {
+            store.append(1, observation(midnight - 7200, 10, 800));
+            store.flush(Instant.ofEpochSecond(midnight + 5400));
+            assertEquals(1, store.getRollupBlocks());
+
+            // Comes late with the time of the api data
+            assertTrue(store.append(1, observation(midnight - 600, 20, 800)));
+
+            assertEquals(2, store.query(1, from, to).size());
+            List<Rollup> days = store.queryRollups(1, Resolution.DAY, from, to);
+            assertEquals(1, days.size());
+            assertEquals(1, days.get(0).getCount());
+        }
+    }
+
+    @Test
+    public void forRange_pointBudget_shouldPickFinestResolutionThatFits() {
+        long day = Resolution.DAY.getSeconds();
+
+        assertEquals(Resolution.HOUR, Resolution.forRange(START, START + day, 24));
+        assertEquals(Resolution.DAY, Resolution.forRange(START, START + 90 * day, 100));
+        long midnight = Resolution.DAY.getBucketStart(START);
+        assertEquals(90, Resolution.DAY.countBuckets(midnight, midnight + 90 * day));
+        assertEquals(91, Resolution.DAY.countBuckets(START, START + 90 * day));
+        assertEquals(Resolution.WEEK, Resolution.forRange(START, START + 90 * day, 20));
+        assertEquals(Resolution.WEEK, Resolution.forRange(START, START + 5 * 365 * day, 100));
+        assertEquals(Resolution.HOUR, Resolution.forRange(START, START + 365 * day, 10_000));
+    }
+
+    private WeatherHistoryStore openStore() throws IOException {
+        return WeatherHistoryStore.open(tempDir, BLOCK_SPAN, MAX_SEGMENT_BYTES);
+    }
+
+    private List<Path> segments() throws IOException {
+        try (Stream<Path> files = Files.list(tempDir)) {
+            return files.sorted().collect(Collectors.toList());
+        }
+    }
+
+    private static Observation observation(long time, double temperature, int conditionCode) {
+        return new Observation(time, new double[]{temperature, temperature - 1.5, 80, 1013, 3.6, 75}, conditionCode);
+    }
+}
@@ -0,0 +1,54 @@
+package my.project.limit;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AimdLimiterTest {
+    private static final long FAST = TimeUnit.MILLISECONDS.toNanos(10);
+    private static final long SLOW = TimeUnit.MILLISECONDS.toNanos(5000);
+
+    private final AimdLimiter limiter = new AimdLimiter(2, 1, 4, 1000, 0.5);
+
+    @Test
+    public void tryAcquire_limitReached_shouldRejectCall() {
+        assertTrue(limiter.tryAcquire());
+        assertTrue(limiter.tryAcquire());
+
+        assertFalse(limiter.tryAcquire());
+        assertEquals(2, limiter.getInFlight());
+        assertEquals(1, limiter.getRejections());
+    }
+
+    @Test
+    public void onSuccess_fastCalls_shouldIncreaseLimitUpToMax() {
+        for (int i = 0; i < 100; i++) {
+            limiter.tryAcquire();
+            limiter.onSuccess(FAST);
+        }
+
+        assertEquals(4, limiter.getLimit());
+        assertEquals(0, limiter.getInFlight());
+    }
+
+    @Test
+    public void onSuccess_slowCall_shouldDecreaseLimit() {
+        limiter.tryAcquire();
+        limiter.onSuccess(SLOW);
+
+        assertEquals(1, limiter.getLimit());
+    }
+
+    @Test
+    public void onDropped_repeatedly_shouldNotDecreaseLimitBelowMin() {
+        for (int i = 0; i < 10; i++) {
+            limiter.tryAcquire();
+            limiter.onDropped();
+        }
+
+        assertEquals(1, limiter.getLimit());
+        assertTrue(limiter.tryAcquire());
+    }
+}
@@ -0,0 +1,48 @@
+package my.project.limit;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HedgingPolicyTest {
+    private final HedgingPolicy policy = new HedgingPolicy(90, 0.1, 0, 10, 5);
+
+    @Test
+    public void onCall_notEnoughLatencies_shouldNotHedge() {
+        for (int i = 0; i < 4; i++) {
+            policy.recordLatency(TimeUnit.MILLISECONDS.toNanos(100));
+        }
+
+        assertTrue(policy.onCall().isEmpty());
+    }
+
+    @Test
+    public void onCall_enoughLatencies_shouldHedgeAfterPercentile() {
+        for (int i = 1; i <= 10; i++) {
+            policy.recordLatency(TimeUnit.MILLISECONDS.toNanos(i * 100));
+        }
+
+        assertEquals(Duration.ofMillis(900), policy.onCall().orElseThrow());
+    }
+
+    @Test
+    public void tryHedge_manyCalls_shouldHedgeOnlyTheirShare() {
+        int hedges = 0;
+        for (int i = 0; i < 100; i++) {
+            policy.onCall();
+            if (policy.tryHedge()) {
+                hedges++;
+            }
+        }
+
+        assertEquals(10, hedges);
+        assertEquals(10, policy.getHedgesFired());
+
+        policy.onHedgeRejected();
+        assertEquals(9, policy.getHedgesFired());
+        assertEquals(1, policy.getHedgesRejected());
+    }
+}
@@ -0,0 +1,114 @@
+package my.project.limit;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class QuotaBudgetTest {
+    private MutableClock clock;
+    private QuotaBudget quotaBudget;
+
+    @BeforeEach
+    public void setUp() {
+        clock = new MutableClock(Instant.parse("2023-01-01T00:00:00Z"));
+        quotaBudget = new QuotaBudget(10, 1000, Map.of(Priority.SEARCH, 0.2, Priority.BACKGROUND, 0.5), clock);
+    }
+
+    @Test
+    public void tryAcquire_reserveReached_shouldShedLowerPrioritiesFirst() {
+        for (int i = 0; i < 5; i++) {
+            assertTrue(quotaBudget.tryAcquire(Priority.BACKGROUND));
+        }
+
+        assertFalse(quotaBudget.tryAcquire(Priority.BACKGROUND));
+        assertTrue(quotaBudget.tryAcquire(Priority.SEARCH));
+        assertTrue(quotaBudget.tryAcquire(Priority.SEARCH));
+        assertTrue(quotaBudget.tryAcquire(Priority.SEARCH));
+        assertFalse(quotaBudget.tryAcquire(Priority.SEARCH));
+        assertTrue(quotaBudget.tryAcquire(Priority.INTERACTIVE));
+        assertTrue(quotaBudget.tryAcquire(Priority.INTERACTIVE));
+        assertFalse(quotaBudget.tryAcquire(Priority.INTERACTIVE));
+
+        assertEquals(5, quotaBudget.getGranted(Priority.BACKGROUND));
+        assertEquals(1, quotaBudget.getRejected(Priority.BACKGROUND));
+        assertEquals(3, quotaBudget.getGranted(Priority.SEARCH));
+        assertEquals(1, quotaBudget.getRejected(Priority.SEARCH));
+    }
+
+    @Test
+    public void release_acquiredToken_shouldGiveItBackUpToCapacity() {
+        for (int i = 0; i < 10; i++) {
+            quotaBudget.tryAcquire(Priority.INTERACTIVE);
+        }
+        assertFalse(quotaBudget.tryAcquire(Priority.INTERACTIVE));
+
+        quotaBudget.release(Priority.INTERACTIVE);
+
+        assertEquals(1, quotaBudget.getMinuteTokens());
+        assertEquals(991, quotaBudget.getDayTokens());
+        assertEquals(9, quotaBudget.getGranted(Priority.INTERACTIVE));
+        assertTrue(quotaBudget.tryAcquire(Priority.INTERACTIVE));
+
+        clock.advance(Duration.ofMinutes(1));
+        quotaBudget.release(Priority.INTERACTIVE);
+
+        assertEquals(10, quotaBudget.getMinuteTokens());
+    }
+
+    @Test
+    public void tryAcquire_afterMinute_shouldRefillMinuteBucket() {
+        for (int i = 0; i < 10; i++) {
+            quotaBudget.tryAcquire(Priority.INTERACTIVE);
+        }
+        assertFalse(quotaBudget.tryAcquire(Priority.INTERACTIVE));
+
+        clock.advance(Duration.ofMinutes(1));
+
+        assertEquals(10, quotaBudget.getMinuteTokens());
+        assertEquals(990, quotaBudget.getDayTokens());
+        assertTrue(quotaBudget.tryAcquire(Priority.BACKGROUND));
+    }
+
+    @Test
+    public void hasBudget_shouldNotTakeTokens() {
+        assertTrue(quotaBudget.hasBudget(Priority.BACKGROUND, 5));
+        assertFalse(quotaBudget.hasBudget(Priority.BACKGROUND, 6));
+
+        assertEquals(10, quotaBudget.getMinuteTokens());
+    }
+
+    private static class MutableClock extends Clock {
+        private Instant instant;
+
+        MutableClock(Instant instant) {
+            this.instant = instant;
+        }
+
+        void advance(Duration duration) {
+            instant = instant.plus(duration);
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public Instant instant() {
+            return instant;
+        }
+    }
+}
@@ -0,0 +1,123 @@
+package my.project.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.module.SimpleModule;
+import my.project.model.api.ForecastSeries;
+import my.project.model.api.util.ForecastSeriesDeserializer;
+import my.project.model.dto.ForecastDto;
+import my.project.model.dto.WeatherDto;
+import my.project.model.dto.enums.WeatherCondition;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ForecastServiceTest {
+    private static final Instant START = Instant.parse("2024-05-01T12:00:00Z");
+    private static final Duration MAX_GAP = Duration.ofMinutes(90);
+
+    private final ForecastService forecastService = new ForecastService();
+
+    private final ForecastSeries hourlyForecast = ForecastSeries.builder()
+            .addStep(START.getEpochSecond()).temperature(10.0).humidity(80).conditionCode(800)
+            .addStep(START.plus(Duration.ofHours(3)).getEpochSecond()).temperature(16.0).humidity(50).conditionCode(500)
+            .build();
+
+    @Test
+    public void getWeatherAt_betweenSteps_shouldInterpolateValuesAndTakeNearerCondition() {
+        WeatherDto weather = forecastService.getWeatherAt(hourlyForecast, START.plus(Duration.ofHours(2)), MAX_GAP)
+                .orElseThrow();
+
+        assertEquals(14.0, weather.getTemperature());
+        assertEquals(60, weather.getHumidity());
+        assertEquals(WeatherCondition.RAIN, weather.getWeatherCondition());
+        assertEquals(START.plus(Duration.ofHours(2)), weather.getDate());
+    }
+
+    @Test
+    public void getWeatherAt_shortlyBeforeFirstStep_shouldReturnFirstStep() {
+        WeatherDto weather = forecastService.getWeatherAt(hourlyForecast, START.minus(Duration.ofMinutes(30)), MAX_GAP)
+                .orElseThrow();
+
+        assertEquals(10.0, weather.getTemperature());
+        assertEquals(WeatherCondition.CLEAR, weather.getWeatherCondition());
+        assertFalse(weather.isWindGustKnown());
+        assertEquals(WeatherDto.MISSING, weather.getPressure());
+    }
+
+    @Test
+    public void getWeatherAt_outsideForecast_shouldReturnEmpty() {
+        Optional<WeatherDto> tooEarly = forecastService.getWeatherAt(hourlyForecast, START.minus(Duration.ofHours(2)), MAX_GAP);
+        Optional<WeatherDto> tooLate = forecastService.getWeatherAt(hourlyForecast, START.plus(Duration.ofHours(4)), MAX_GAP);
+
+        assertTrue(tooEarly.isEmpty());
+        assertTrue(tooLate.isEmpty());
+    }
+
+    @Test
+    public void deserialize_nullAndOutOfRangeValues_shouldKeepThemMissing() throws Exception {
+        String json = "{\"list\":[{\"dt\":" + START.getEpochSecond()
+                + ",\"main\":{\"temp\":null,\"humidity\":null,\"pressure\":40000,\"temp_max\":1e6,\"temp_min\":-3.5}"
+                + ",\"weather\":[{\"id\":null,\"description\":null}],\"wind\":{\"speed\":null},\"clouds\":{\"all\":null}}]}";
+
+        ForecastSeries series = new ObjectMapper()
+                .registerModule(new SimpleModule().addDeserializer(ForecastSeries.class, new ForecastSeriesDeserializer()))
+                .readValue(json, ForecastSeries.class);
+
+        assertEquals(1, series.size());
+        assertTrue(Double.isNaN(series.getTemperature(0)));
+        assertTrue(Double.isNaN(series.getMaximumTemperature(0)));
+        assertTrue(Double.isNaN(series.getWindSpeed(0)));
+        assertEquals(ForecastSeries.MISSING, series.getHumidity(0));
+        assertEquals(ForecastSeries.MISSING, series.getPressure(0));
+        assertEquals(ForecastSeries.MISSING, series.getCloudiness(0));
+        assertEquals(ForecastSeries.MISSING, series.getConditionCode(0));
+        assertNull(series.getDescription(0));
+        assertEquals(-3.5, series.getMinimumTemperature(0));
+    }
+
+    @Test
+    public void getForecast_severalDays_shouldAggregateEveryDayButTheLast() throws Exception {
+        long firstDay = LocalDate.of(2024, 5, 1).atStartOfDay(ZoneId.systemDefault()).toEpochSecond();
+        StringBuilder forecasts = new StringBuilder();
+
+        // Two full days in 3 hour steps and the first step of a third day
+        for (int i = 0; i < 17; i++) {
+            double temperature = i < 8 ? i : 20 + i;
+            int code = i % 8 < 5 ? 500 : 800;
+
+            // The weather comes before the time on purpose
+            forecasts.append(i == 0 ? "" : ",")
+                    .append("{\"weather\":[{\"id\":").append(code).append(",\"description\":\"rain\"}]")
+                    .append(",\"dt\":").append(firstDay + i * 3 * 60 * 60)
+                    .append(",\"main\":{\"temp\":").append(temperature).append(",\"temp_kf\":0}}");
+        }
+        ForecastSeries series = new ObjectMapper()
+                .registerModule(new SimpleModule().addDeserializer(ForecastSeries.class, new ForecastSeriesDeserializer()))
+                .readValue("{\"list\":[" + forecasts + "],\"city\":{\"sunrise\":" + firstDay + "}}", ForecastSeries.class);
+
+        ForecastDto forecast = forecastService.getForecast(series);
+        List<WeatherDto> dailyForecast = forecast.getDailyForecast();
+
+        assertEquals(17, forecast.getHourlyForecast().size());
+        assertSame(forecast.getHourlyForecast().get(8).getDate(), dailyForecast.get(1).getDate());
+        assertThrows(UnsupportedOperationException.class, () -> dailyForecast.remove(0));
+
+        assertEquals(2, dailyForecast.size());
+        assertEquals(0.0, dailyForecast.get(0).getTemperatureMinimum());
+        assertEquals(7.0, dailyForecast.get(0).getTemperatureMaximum());
+        assertEquals(3.5, dailyForecast.get(0).getTemperature());
+        assertEquals(WeatherCondition.RAIN, dailyForecast.get(0).getWeatherCondition());
+        assertEquals("rain", forecast.getHourlyForecast().get(0).getDescription());
+        assertEquals(28.0, dailyForecast.get(1).getTemperatureMinimum());
+        assertEquals(Instant.ofEpochSecond(firstDay + 24 * 60 * 60), dailyForecast.get(1).getDate());
+        assertEquals(Instant.ofEpochSecond(firstDay), forecast.getSunrise());
+        assertNull(forecast.getSunset());
+    }
+}
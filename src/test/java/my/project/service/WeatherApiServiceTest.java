@@ -0,0 +1,227 @@
+package my.project.service;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import my.project.limit.AimdLimiter;
+import my.project.limit.HedgingPolicy;
+import my.project.limit.QuotaBudget;
+import my.project.model.Location;
+import my.project.model.api.WeatherApiResponse;
+import my.project.util.ContentEncodingUtil;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BooleanSupplier;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class WeatherApiServiceTest {
+    private static final String WEATHER_BODY = "{" +
+            "\"weather\":[{\"id\":500,\"main\":\"Rain\",\"description\":\"light rain\"}]," +
+            "\"main\":{\"temp\":12.5,\"feels_like\":11.0,\"pressure\":1012,\"humidity\":81}," +
+            "\"wind\":{\"speed\":4.1,\"deg\":230},\"clouds\":{\"all\":75},\"dt\":1700000000," +
+            "\"sys\":{\"sunrise\":1699946000,\"sunset\":1699978000}}";
+
+    // Latitudes the stub answers slowly the first time and with an error, see handleWeatherRequest
+    private static final String SLOW_LATITUDE = "lat=10.0";
+    private static final String FAILING_LATITUDE = "lat=20.0";
+
+    private static final CountDownLatch SLOW_RESPONSE = new CountDownLatch(1);
+    private static final AtomicBoolean SLOW_REQUEST_RECEIVED = new AtomicBoolean();
+
+    private HttpServer server;
+    private WeatherApiService weatherApiService;
+
+    @BeforeEach
+    public void setUp() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/data/2.5/weather", WeatherApiServiceTest::handleWeatherRequest);
+        // A held response must not hold up the others
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.start();
+
+        weatherApiService = new WeatherApiService("http://localhost:" + server.getAddress().getPort());
+    }
+
+    @AfterEach
+    public void tearDown() {
+        server.stop(0);
+    }
+
+    @Test
+    public void getWeatherForLocationsAsync_allCallsSucceed_shouldMapEveryLocation() {
+        Location london = new Location("London", List.of(), 51.5, -0.12);
+        Location paris = new Location("Paris", List.of(), 48.85, 2.35);
+
+        Map<Location, WeatherApiResponse> weatherByLocation =
+                weatherApiService.getWeatherForLocationsAsync(List.of(london, paris)).join();
+
+        assertEquals(2, weatherByLocation.size());
+        assertEquals(12.5, weatherByLocation.get(london).getMain().getTemperature());
+        assertEquals(500, weatherByLocation.get(paris).getWeatherList().get(0).getId());
+    }
+
+    @Test
+    public void getWeatherForLocationsAsync_oneCallFails_shouldLeaveOutFailedLocation() {
+        Location london = new Location("London", List.of(), 51.5, -0.12);
+        Location nowhere = new Location("Nowhere", List.of(), 91.0, 0.0);
+
+        Map<Location, WeatherApiResponse> weatherByLocation =
+                weatherApiService.getWeatherForLocationsAsync(List.of(london, nowhere)).join();
+
+        assertEquals(List.of(london), List.copyOf(weatherByLocation.keySet()));
+    }
+
+    @Test
+    public void getWeatherForLocationAsync_gzipResponse_shouldDecodeBody() {
+        Location london = new Location("London", List.of(), 51.5, -0.12);
+        long decodedBytesBefore = ContentEncodingUtil.getDecodedBytes();
+
+        WeatherApiResponse weather = weatherApiService.getWeatherForLocationAsync(london).join();
+
+        assertEquals(12.5, weather.getMain().getTemperature());
+        assertEquals(WEATHER_BODY.length(), ContentEncodingUtil.getDecodedBytes() - decodedBytesBefore);
+    }
+
+    @Test
+    public void getWeatherForLocationAsync_slowFirstResponse_shouldBeWonByHedge() throws Exception {
+        AimdLimiter limiter = newLimiter();
+        QuotaBudget quotaBudget = newQuotaBudget();
+        HedgingPolicy hedgingPolicy = newHedgingPolicy();
+        WeatherApiService hedgedService = newHedgedService(limiter, quotaBudget, hedgingPolicy);
+        long minuteTokensBefore = quotaBudget.getMinuteTokens();
+
+        try {
+            WeatherApiResponse weather = hedgedService
+                    .getWeatherForLocationAsync(new Location("Slow", List.of(), 10.0, 0.0))
+                    .get(5, TimeUnit.SECONDS);
+
+            assertEquals(12.5, weather.getMain().getTemperature());
+            assertTrue(SLOW_REQUEST_RECEIVED.get());
+            // Counted right after the result is completed
+            awaitCondition(() -> hedgingPolicy.getHedgesWon() == 1);
+            assertEquals(1, hedgingPolicy.getHedgesFired());
+
+        } finally {
+            SLOW_RESPONSE.countDown();
+        }
+
+        // The slower primary call is still received and gives back its slot, both calls were sent
+        awaitCondition(() -> limiter.getInFlight() == 0);
+        assertEquals(minuteTokensBefore - 2, quotaBudget.getMinuteTokens());
+    }
+
+    @Test
+    public void getWeatherForLocationAsync_primaryFailsBeforeHedgeDelay_shouldGiveBackSlotAndSendNoHedge() throws Exception {
+        AimdLimiter limiter = newLimiter();
+        QuotaBudget quotaBudget = newQuotaBudget();
+        HedgingPolicy hedgingPolicy = newHedgingPolicy();
+        WeatherApiService hedgedService = newHedgedService(limiter, quotaBudget, hedgingPolicy);
+        long minuteTokensBefore = quotaBudget.getMinuteTokens();
+
+        CompletableFuture<WeatherApiResponse> weather =
+                hedgedService.getWeatherForLocationAsync(new Location("Failing", List.of(), 20.0, 0.0));
+        assertThrows(ExecutionException.class, () -> weather.get(5, TimeUnit.SECONDS));
+
+        // Past the hedge delay, when the hedge would have been sent
+        Thread.sleep(hedgingPolicy.getHedgeDelay().orElseThrow().toMillis() + 200);
+
+        awaitCondition(() -> limiter.getInFlight() == 0);
+        assertEquals(0, hedgingPolicy.getHedgesFired());
+        assertEquals(minuteTokensBefore - 1, quotaBudget.getMinuteTokens());
+    }
+
+    private static AimdLimiter newLimiter() {
+        return new AimdLimiter(16, 4, 32, 1000, 0.9);
+    }
+
+    // The clock stands still, so tokens are not refilled while the test runs
+    private static QuotaBudget newQuotaBudget() {
+        return new QuotaBudget(1000, 100_000, Map.of(), Clock.fixed(Instant.parse("2024-05-01T12:00:00Z"), ZoneOffset.UTC));
+    }
+
+    // Every call earns a whole hedge, which is sent after the median latency
+    private static HedgingPolicy newHedgingPolicy() {
+        return new HedgingPolicy(50, 1, 50, 20, 10);
+    }
+
+    /**
+     * Service with limits of its own, after fast calls that tell the hedging policy the latencies
+     */
+    private WeatherApiService newHedgedService(AimdLimiter limiter, QuotaBudget quotaBudget, HedgingPolicy hedgingPolicy) {
+        WeatherApiService hedgedService = new WeatherApiService(
+                "http://localhost:" + server.getAddress().getPort(), limiter, quotaBudget, hedgingPolicy);
+
+        Location london = new Location("London", List.of(), 51.5, -0.12);
+        for (int i = 0; i < 10; i++) {
+            hedgedService.getWeatherForLocationAsync(london).join();
+        }
+        assertTrue(hedgingPolicy.getHedgeDelay().isPresent());
+        return hedgedService;
+    }
+
+    private static void awaitCondition(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!condition.getAsBoolean() && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        assertTrue(condition.getAsBoolean());
+    }
+
+    private static void handleWeatherRequest(HttpExchange exchange) throws IOException {
+        String query = exchange.getRequestURI().getQuery();
+
+        // The first call is held until its hedge has won
+        if (query.contains(SLOW_LATITUDE) && SLOW_REQUEST_RECEIVED.compareAndSet(false, true)) {
+            try {
+                SLOW_RESPONSE.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        if (query.contains(FAILING_LATITUDE)) {
+            exchange.sendResponseHeaders(500, -1);
+            exchange.close();
+            return;
+        }
+
+        // Latitude out of range is answered the way the api does it
+        boolean invalidLatitude = query.contains("lat=91.0");
+        byte[] body = (invalidLatitude ? "{\"cod\":\"400\",\"message\":\"wrong latitude\"}" : WEATHER_BODY)
+                .getBytes(StandardCharsets.UTF_8);
+
+        String acceptEncoding = exchange.getRequestHeaders().getFirst("Accept-Encoding");
+        if (acceptEncoding != null && acceptEncoding.contains("gzip")) {
+            ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+            try (GZIPOutputStream gzip = new GZIPOutputStream(compressed)) {
+                gzip.write(body);
+            }
+            body = compressed.toByteArray();
+            exchange.getResponseHeaders().set("Content-Encoding", "gzip");
+        }
+
+        exchange.sendResponseHeaders(invalidLatitude ? 400 : 200, body.length);
+        try (OutputStream responseBody = exchange.getResponseBody()) {
+            responseBody.write(body);
+        }
+    }
+}
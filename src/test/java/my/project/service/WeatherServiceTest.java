@@ -0,0 +1,153 @@
+package my.project.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpServer;
+import my.project.cache.CoordinatesKey;
+import my.project.history.WeatherHistoryStore;
+import my.project.model.Location;
+import my.project.model.api.ForecastSeries;
+import my.project.model.api.WeatherApiResponse;
+import my.project.model.dto.ForecastDto;
+import my.project.util.CacheUtil;
+import my.project.util.HistoryUtil;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.OutputStream;
+import java.lang.reflect.Field;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+class WeatherServiceTest {
+    @TempDir
+    private Path tempDir;
+
+    @Test
+    public void getWeatherForLocationAsync_cachedWeather_shouldNotRecordHistory() throws Exception {
+        Location location = new Location(1L, "London", null, 51.5, -0.12);
+        WeatherApiResponse weather = new ObjectMapper().readValue("{\"dt\":1700000000}", WeatherApiResponse.class);
+        CoordinatesKey key = CoordinatesKey.of(location);
+        CacheUtil.getWeatherCache().put(key, weather);
+
+        HistoryUtil.open(tempDir);
+        try {
+            WeatherHistoryStore store = HistoryUtil.getStore().orElseThrow();
+
+            assertSame(weather, new WeatherService().getWeatherForLocationAsync(location).join());
+            assertEquals(0, store.getAppendedObservations() + store.getSkippedObservations());
+
+        } finally {
+            HistoryUtil.close();
+            CacheUtil.getWeatherCache().invalidate(key);
+        }
+    }
+
+    @Test
+    public void refreshWeatherForLocationsAsync_locationBeingFetched_shouldShareTheCall() throws Exception {
+        Location location = new Location(3L, "Berlin", null, 52.52, 13.4);
+        CoordinatesKey key = CoordinatesKey.of(location);
+        AtomicInteger requests = new AtomicInteger();
+        CountDownLatch respond = new CountDownLatch(1);
+
+        HttpServer server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/data/2.5/weather", exchange -> {
+            requests.incrementAndGet();
+            try {
+                respond.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            byte[] body = "{\"dt\":1700000000,\"main\":{\"temp\":12.5}}".getBytes(StandardCharsets.UTF_8);
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream responseBody = exchange.getResponseBody()) {
+                responseBody.write(body);
+            }
+        });
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.start();
+
+        WeatherService weatherService = new WeatherService();
+        Field weatherApiServiceField = WeatherService.class.getDeclaredField("weatherApiService");
+        weatherApiServiceField.setAccessible(true);
+        weatherApiServiceField.set(weatherService, new WeatherApiService("http://localhost:" + server.getAddress().getPort()));
+
+        try {
+            CompletableFuture<WeatherApiResponse> pageLoad = weatherService.getWeatherForLocationAsync(location);
+            CompletableFuture<Map<Location, WeatherApiResponse>> refresh =
+                    weatherService.refreshWeatherForLocationsAsync(List.of(location), 2);
+            respond.countDown();
+
+            assertSame(pageLoad.join(), refresh.join().get(location));
+            assertEquals(1, requests.get());
+
+        } finally {
+            server.stop(0);
+            CacheUtil.getWeatherCache().invalidate(key);
+        }
+    }
+
+    @Test
+    public void getForecastForLocation_sameCachedForecast_shouldBuildItOnce() throws Exception {
+        Location location = new Location(2L, "Paris", null, 48.85, 2.35);
+        CoordinatesKey key = CoordinatesKey.of(location);
+        Instant start = Instant.now().plus(Duration.ofHours(1));
+        WeatherService weatherService = new WeatherService();
+
+        try {
+            CacheUtil.getForecastCache().put(key, forecastStartingAt(start));
+            ForecastDto forecast = weatherService.getForecastForLocation(location);
+            assertSame(forecast, weatherService.getForecastForLocation(location));
+
+            // Fetched again
+            CacheUtil.getForecastCache().put(key, forecastStartingAt(start));
+            assertNotSame(forecast, weatherService.getForecastForLocation(location));
+
+        } finally {
+            CacheUtil.getForecastCache().invalidate(key);
+        }
+    }
+
+    @Test
+    public void normalizeLocationName_differentCaseAndWhitespace_shouldReturnSameName() {
+        assertEquals("london", WeatherService.normalizeLocationName("london"));
+        assertEquals("london", WeatherService.normalizeLocationName(" London "));
+        assertEquals("london", WeatherService.normalizeLocationName("LONDON"));
+    }
+
+    @Test
+    public void normalizeLocationName_innerWhitespace_shouldCollapseToSingleSpace() {
+        assertEquals("new york", WeatherService.normalizeLocationName("New \t York"));
+    }
+
+    @Test
+    public void normalizeLocationName_differentUnicodeForms_shouldReturnSameName() {
+        String composed = "Z\u00fcrich";
+        String decomposed = "Zu\u0308rich";
+
+        assertEquals(
+                WeatherService.normalizeLocationName(composed),
+                WeatherService.normalizeLocationName(decomposed)
+        );
+    }
+
+    private static ForecastSeries forecastStartingAt(Instant start) {
+        return ForecastSeries.builder()
+                .addStep(start.getEpochSecond()).temperature(10.0).humidity(80).conditionCode(800)
+                .addStep(start.plus(Duration.ofHours(3)).getEpochSecond()).temperature(16.0).humidity(50).conditionCode(500)
+                .build();
+    }
+}
@@ -12,10 +12,9 @@ import my.project.exception.SessionExpiredException;
 import my.project.model.Location;
 import my.project.model.Session;
 import my.project.model.User;
-import my.project.model.api.ForecastApiResponse;
+import my.project.model.dto.ForecastDto;
 import my.project.model.dto.WeatherDto;
-import my.project.service.ForecastService;
-import my.project.service.WeatherApiService;
+import my.project.service.WeatherService;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
@@ -41,9 +40,7 @@ class ForecastServletTest {
     @Mock
     private LocationDao locationDao;
     @Mock
-    private WeatherApiService weatherApiService;
-    @Mock
-    private ForecastService forecastService;
+    private WeatherService weatherService;
 
     @Mock
     private WebContext context;
@@ -69,13 +66,9 @@ class ForecastServletTest {
         locationDaoField.setAccessible(true);
         locationDaoField.set(forecastServlet, locationDao);
 
-        Field weatherApiField = forecastServlet.getClass().getDeclaredField("weatherApiService");
-        weatherApiField.setAccessible(true);
-        weatherApiField.set(forecastServlet, weatherApiService);
-
-        Field forecastServiceFiled = forecastServlet.getClass().getDeclaredField("forecastService");
-        forecastServiceFiled.setAccessible(true);
-        forecastServiceFiled.set(forecastServlet, forecastService);
+        Field weatherServiceField = forecastServlet.getClass().getDeclaredField("weatherService");
+        weatherServiceField.setAccessible(true);
+        weatherServiceField.set(forecastServlet, weatherService);
 
         Field contextField = forecastServlet.getClass().getSuperclass().getDeclaredField("context");
         contextField.set(forecastServlet, context);
@@ -195,15 +188,12 @@ class ForecastServletTest {
         when(sessionDao.findById(any())).thenReturn(Optional.of(session));
         when(request.getParameter(any())).thenReturn("1");
         when(locationDao.findById(anyLong())).thenReturn(Optional.of(location));
-        when(weatherApiService.getForecastForLocation(any())).thenReturn(new ForecastApiResponse());
-        when(forecastService.getHourlyForecast(any())).thenReturn(List.of(new WeatherDto()));
-        when(forecastService.getDailyForecast(any())).thenReturn(List.of(new WeatherDto()));
+        when(weatherService.getForecastForLocation(any()))
+                .thenReturn(new ForecastDto(List.of(WeatherDto.builder().build()), List.of(WeatherDto.builder().build())));
 
         forecastServlet.doGet(request, response);
 
-        verify(weatherApiService, atMostOnce()).getForecastForLocation(eq(location));
-        verify(forecastService, atMostOnce()).getHourlyForecast(any(ForecastApiResponse.class));
-        verify(forecastService, atMostOnce()).getDailyForecast(any(ForecastApiResponse.class));
+        verify(weatherService, atMostOnce()).getForecastForLocation(eq(location));
         verify(context, atMostOnce()).setVariable(eq("login"), eq("login"));
         verify(context, atMostOnce()).setVariable(eq("locationName"), eq("Location"));
         verify(context, atMostOnce()).setVariable(eq("hourlyForecast"), any(List.class));
@@ -9,6 +9,7 @@ import my.project.exception.CookieNotFoundException;
 import my.project.exception.InvalidParameterException;
 import my.project.exception.LocationNotFoundException;
 import my.project.exception.SessionExpiredException;
+import my.project.exception.api.WeatherApiCallException;
 import my.project.model.Location;
 import my.project.model.Session;
 import my.project.model.User;
@@ -17,7 +18,8 @@ import my.project.model.api.entity.Clouds;
 import my.project.model.api.entity.Main;
 import my.project.model.api.entity.Weather;
 import my.project.model.api.entity.Wind;
-import my.project.service.WeatherApiService;
+import my.project.model.dto.WeatherDto;
+import my.project.service.WeatherService;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
@@ -29,9 +31,12 @@ import org.thymeleaf.context.WebContext;
 import java.lang.reflect.Field;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
 
 import static java.util.Arrays.asList;
 import static org.junit.jupiter.api.Assertions.assertEquals;
@@ -46,7 +51,7 @@ class HomeServletTest {
     @Mock
     private LocationDao locationDao;
     @Mock
-    private WeatherApiService weatherApiService;
+    private WeatherService weatherService;
 
     @Mock
     private WebContext context;
@@ -72,9 +77,9 @@ class HomeServletTest {
         locationDaoField.setAccessible(true);
         locationDaoField.set(homeServlet, locationDao);
 
-        Field weatherApiField = homeServlet.getClass().getDeclaredField("weatherApiService");
-        weatherApiField.setAccessible(true);
-        weatherApiField.set(homeServlet, weatherApiService);
+        Field weatherServiceField = homeServlet.getClass().getDeclaredField("weatherService");
+        weatherServiceField.setAccessible(true);
+        weatherServiceField.set(homeServlet, weatherService);
 
         Field contextField = homeServlet.getClass().getSuperclass().getDeclaredField("context");
         contextField.set(homeServlet, context);
@@ -145,7 +150,7 @@ class HomeServletTest {
         when(request.getCookies()).thenReturn(new Cookie[]{cookie});
         when(sessionDao.findById(any())).thenReturn(Optional.of(session));
         when(locationDao.findByUser(any())).thenReturn(List.of(new Location()));
-        when(weatherApiService.getWeatherForLocation(any())).thenReturn(apiResponse);
+        when(weatherService.getWeatherForLocationAsync(any())).thenReturn(CompletableFuture.completedFuture(apiResponse));
         when(apiResponse.getWeatherList()).thenReturn(List.of(new Weather()));
         when(apiResponse.getMain()).thenReturn(new Main());
         when(apiResponse.getWind()).thenReturn(new Wind());
@@ -162,6 +167,49 @@ class HomeServletTest {
         verify(templateEngine, atMostOnce()).process(eq("home"), eq(context), any());
     }
 
+    @Test
+    public void doGet_weatherApiCallFailed_shouldProcessHomePageWithUnavailableWeather() throws Exception {
+        Cookie cookie = new Cookie("sessionId", UUID.randomUUID().toString());
+        Session session = new Session();
+        session.setExpiresAt(LocalDateTime.MAX);
+        session.setUser(new User("login", "password"));
+        Location location = new Location();
+        when(request.getCookies()).thenReturn(new Cookie[]{cookie});
+        when(sessionDao.findById(any())).thenReturn(Optional.of(session));
+        when(locationDao.findByUser(any())).thenReturn(List.of(location));
+        when(weatherService.getWeatherForLocationAsync(any()))
+                .thenReturn(CompletableFuture.failedFuture(new WeatherApiCallException("Api is unavailable")));
+
+        homeServlet.doGet(request, response);
+
+        Map<Location, WeatherDto> expected = new HashMap<>();
+        expected.put(location, null);
+        verify(context).setVariable(eq("locationWeatherMap"), eq(expected));
+        verify(templateEngine).process(eq("home"), eq(context), any());
+    }
+
+    @Test
+    public void doGet_weatherApiResponseMalformed_shouldProcessHomePageWithUnavailableWeather() throws Exception {
+        Cookie cookie = new Cookie("sessionId", UUID.randomUUID().toString());
+        Session session = new Session();
+        session.setExpiresAt(LocalDateTime.MAX);
+        session.setUser(new User("login", "password"));
+        Location location = new Location();
+        WeatherApiResponse apiResponse = mock(WeatherApiResponse.class);
+        when(request.getCookies()).thenReturn(new Cookie[]{cookie});
+        when(sessionDao.findById(any())).thenReturn(Optional.of(session));
+        when(locationDao.findByUser(any())).thenReturn(List.of(location));
+        when(weatherService.getWeatherForLocationAsync(any())).thenReturn(CompletableFuture.completedFuture(apiResponse));
+        when(apiResponse.getWeatherList()).thenReturn(List.of());
+
+        homeServlet.doGet(request, response);
+
+        Map<Location, WeatherDto> expected = new HashMap<>();
+        expected.put(location, null);
+        verify(context).setVariable(eq("locationWeatherMap"), eq(expected));
+        verify(templateEngine).process(eq("home"), eq(context), any());
+    }
+
     @Test
     public void doPost_emptyCookies_shouldThrowCookieNotFoundException() {
         when(request.getCookies()).thenReturn(new Cookie[]{});
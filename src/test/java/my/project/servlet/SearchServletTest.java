@@ -13,7 +13,7 @@ import my.project.model.Location;
 import my.project.model.Session;
 import my.project.model.User;
 import my.project.model.api.LocationApiResponse;
-import my.project.service.WeatherApiService;
+import my.project.service.WeatherService;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
@@ -42,7 +42,7 @@ class SearchServletTest {
     @Mock
     private LocationDao locationDao;
     @Mock
-    private WeatherApiService weatherApiService;
+    private WeatherService weatherService;
 
     @Mock
     private WebContext context;
@@ -68,9 +68,9 @@ class SearchServletTest {
         locationDaoField.setAccessible(true);
         locationDaoField.set(searchServlet, locationDao);
 
-        Field weatherApiField = searchServlet.getClass().getDeclaredField("weatherApiService");
-        weatherApiField.setAccessible(true);
-        weatherApiField.set(searchServlet, weatherApiService);
+        Field weatherServiceField = searchServlet.getClass().getDeclaredField("weatherService");
+        weatherServiceField.setAccessible(true);
+        weatherServiceField.set(searchServlet, weatherService);
 
         Field contextField = searchServlet.getClass().getSuperclass().getDeclaredField("context");
         contextField.set(searchServlet, context);
@@ -155,11 +155,11 @@ class SearchServletTest {
         when(request.getCookies()).thenReturn(new Cookie[]{cookie});
         when(sessionDao.findById(any())).thenReturn(Optional.of(session));
         when(request.getParameter("q")).thenReturn("City");
-        when(weatherApiService.getLocationsByName(any())).thenReturn(apiResponse);
+        when(weatherService.getLocationsByName(any())).thenReturn(apiResponse);
 
         searchServlet.doGet(request, response);
 
-        verify(weatherApiService, atMostOnce()).getLocationsByName(eq("City"));
+        verify(weatherService, atMostOnce()).getLocationsByName(eq("City"));
         verify(context, atMostOnce()).setVariable(eq("login"), eq("login"));
         verify(context, atMostOnce()).setVariable(eq("foundLocations"), eq(apiResponse));
         verify(templateEngine, atMostOnce()).process(eq("search"), eq(context), any());
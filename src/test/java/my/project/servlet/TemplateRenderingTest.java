@@ -0,0 +1,97 @@
+package my.project.servlet;
+
+import my.project.model.Location;
+import my.project.model.dto.WeatherDto;
+import my.project.model.dto.enums.TimeOfDay;
+import my.project.model.dto.enums.WeatherCondition;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.thymeleaf.TemplateEngine;
+import org.thymeleaf.context.Context;
+import org.thymeleaf.context.IExpressionContext;
+import org.thymeleaf.linkbuilder.StandardLinkBuilder;
+import org.thymeleaf.templatemode.TemplateMode;
+import org.thymeleaf.templateresolver.FileTemplateResolver;
+
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TemplateRenderingTest {
+    private TemplateEngine templateEngine;
+
+    @BeforeEach
+    public void setUp() {
+        FileTemplateResolver templateResolver = new FileTemplateResolver();
+        templateResolver.setTemplateMode(TemplateMode.HTML);
+        templateResolver.setPrefix("src/main/webapp/templates/");
+        templateResolver.setSuffix(".html");
+        templateResolver.setCharacterEncoding("UTF-8");
+
+        templateEngine = new TemplateEngine();
+        templateEngine.setTemplateResolver(templateResolver);
+        // Rendered outside of a servlet container, so links have no context path
+        templateEngine.setLinkBuilder(new StandardLinkBuilder() {
+            @Override
+            protected String computeContextPath(IExpressionContext context, String base, Map<String, Object> parameters) {
+                return "";
+            }
+        });
+    }
+
+    @Test
+    public void process_homeWithMissingValues_shouldRenderDashes() {
+        Map<Location, WeatherDto> locationWeatherMap = new LinkedHashMap<>();
+        locationWeatherMap.put(new Location(1L, "London", null, 51.5, -0.12), weatherWithMissingValues());
+
+        Context context = new Context();
+        context.setVariable("locationWeatherMap", locationWeatherMap);
+        context.setVariable("locationTrendMap", Map.of());
+        context.setVariable("login", "user");
+
+        String html = templateEngine.process("home", context);
+
+        assertNoMissingNumbers(html);
+        assertTrue(html.contains("–°C"));
+        assertTrue(html.contains("Humidity –%"));
+        assertTrue(html.contains("Pressure – hPa"));
+        assertTrue(html.contains("–° – km/h"));
+    }
+
+    @Test
+    public void process_forecastWithMissingValues_shouldRenderDashes() {
+        List<WeatherDto> forecast = List.of(weatherWithMissingValues());
+
+        Context context = new Context();
+        context.setVariable("hourlyForecast", forecast);
+        context.setVariable("dailyForecast", forecast);
+        context.setVariable("recentWeather", forecast);
+        context.setVariable("pastWeather", forecast);
+        context.setVariable("locationName", "London");
+        context.setVariable("login", "user");
+
+        String html = templateEngine.process("forecast", context);
+
+        assertNoMissingNumbers(html);
+        assertTrue(html.contains(">–<"));
+    }
+
+    private static void assertNoMissingNumbers(String html) {
+        assertFalse(html.contains("NaN"));
+        assertFalse(html.contains(String.valueOf(WeatherDto.MISSING)));
+    }
+
+    private static WeatherDto weatherWithMissingValues() {
+        return WeatherDto.builder()
+                .weatherCondition(WeatherCondition.CLOUDS)
+                .timeOfDay(TimeOfDay.DAY)
+                .description("overcast clouds")
+                .date(Instant.now())
+                .sunrise(Instant.now())
+                .sunset(Instant.now())
+                .build();
+    }
+}
@@ -0,0 +1,470 @@
+package my.project.stub;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import my.project.util.ConfigUtil;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Stand-in for the OpenWeather api serving the current weather, forecast and geocoding endpoints
+ * with responses shaped like the real ones. Latency, errors and rate limiting are injected as
+ * configured, so caching, timeouts and fan-out can be tested without network access.
+ * <p>
+ * Lives with the tests, so it is not part of the application. Run {@link #main(String[])} from
+ * the test classpath and point WEATHER_API_BASE_URL of the application at it, or embed it in tests.
+ * <p>
+ * Latency, errors and other random values of a request are drawn from its own generator, seeded
+ * from the seed, the request URI and how many times that URI was requested before. Runs with the
+ * same seed thus agree even when requests are served concurrently, as long as every URI is
+ * requested the same number of times.
+ */
+@Slf4j
+public class OpenWeatherStubServer {
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+    private static final DateTimeFormatter FORECAST_TIME_FORMATTER =
+            DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss").withZone(ZoneOffset.UTC);
+
+    // Forecast steps of the api, 5 days in 3 hour steps
+    private static final int FORECAST_STEPS = 40;
+    private static final long FORECAST_STEP_SECONDS = 3 * 60 * 60;
+
+    private static final List<Condition> CONDITIONS = List.of(
+            new Condition(800, "Clear", "clear sky", "01"),
+            new Condition(801, "Clouds", "few clouds", "02"),
+            new Condition(803, "Clouds", "broken clouds", "04"),
+            new Condition(300, "Drizzle", "light intensity drizzle", "09"),
+            new Condition(500, "Rain", "light rain", "10"),
+            new Condition(211, "Thunderstorm", "thunderstorm", "11"),
+            new Condition(600, "Snow", "light snow", "13"),
+            new Condition(701, "Mist", "mist", "50")
+    );
+
+    private static final List<City> CITIES = List.of(
+            new City("London", 51.5073, -0.1276, "GB"),
+            new City("London", 42.9832, -81.2433, "CA"),
+            new City("Paris", 48.8589, 2.3200, "FR"),
+            new City("Paris", 33.6617, -95.5555, "US"),
+            new City("Berlin", 52.5170, 13.3889, "DE"),
+            new City("Madrid", 40.4167, -3.7036, "ES"),
+            new City("Rome", 41.8933, 12.4829, "IT"),
+            new City("Zürich", 47.3744, 8.5410, "CH"),
+            new City("Moscow", 55.7504, 37.6175, "RU"),
+            new City("Almaty", 43.2364, 76.9457, "KZ"),
+            new City("Tokyo", 35.6828, 139.7590, "JP"),
+            new City("New York", 40.7127, -74.0060, "US")
+    );
+
+    private final StubServerSettings settings;
+    private final Map<String, AtomicLong> requestsByUri = new ConcurrentHashMap<>();
+
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong injectedErrors = new AtomicLong();
+    private final AtomicLong throttledRequests = new AtomicLong();
+
+    private long rateLimitWindow;
+    private int rateLimitWindowRequests;
+
+    private HttpServer server;
+    private ExecutorService executor;
+
+    public OpenWeatherStubServer(StubServerSettings settings) {
+        this.settings = settings;
+    }
+
+    public static void main(String[] args) throws Exception {
+        StubServerSettings settings = StubServerSettings.builder()
+                .port(ConfigUtil.getInt("STUB_PORT", 8089))
+                .latency(LatencyDistribution.parse(ConfigUtil.getString("STUB_LATENCY", "lognormal:80:0.5")))
+                .errorRate(ConfigUtil.getDouble("STUB_ERROR_RATE", 0))
+                .rateLimitPerSecond(ConfigUtil.getInt("STUB_RATE_LIMIT_PER_SECOND", 0))
+                .seed(ConfigUtil.getLong("STUB_SEED", 42))
+                .threads(ConfigUtil.getInt("STUB_THREADS", 64))
+                .build();
+
+        OpenWeatherStubServer stubServer = new OpenWeatherStubServer(settings);
+        stubServer.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(stubServer::stop));
+
+        log.info("Stub of the weather api is listening on " + stubServer.getBaseUrl());
+        Thread.currentThread().join();
+    }
+
+    public synchronized void start() throws IOException {
+        executor = Executors.newFixedThreadPool(settings.getThreads(), runnable -> {
+            Thread thread = new Thread(runnable, "weather-api-stub");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        server = HttpServer.create(new InetSocketAddress("localhost", settings.getPort()), 0);
+        server.setExecutor(executor);
+        server.createContext("/data/2.5/weather", exchange -> handle(exchange, this::buildWeather));
+        server.createContext("/data/2.5/forecast", exchange -> handle(exchange, this::buildForecast));
+        server.createContext("/geo/1.0/direct", exchange -> handle(exchange, this::buildLocations));
+        server.start();
+    }
+
+    public synchronized void stop() {
+        if (server != null) {
+            server.stop(0);
+            executor.shutdownNow();
+            server = null;
+        }
+    }
+
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    public String getBaseUrl() {
+        return "http://localhost:" + getPort();
+    }
+
+    public long getRequests() {
+        return requests.get();
+    }
+
+    public long getInjectedErrors() {
+        return injectedErrors.get();
+    }
+
+    public long getThrottledRequests() {
+        return throttledRequests.get();
+    }
+
+    private void handle(HttpExchange exchange, ResponseBuilder responseBuilder) throws IOException {
+        requests.incrementAndGet();
+        Random random = buildRandom(exchange);
+
+        try {
+            sleep(settings.getLatency().sample(random));
+
+            if (!tryPassRateLimit()) {
+                throttledRequests.incrementAndGet();
+                sendError(exchange, 429, "Your account is temporary blocked due to exceeding of requests limitation "
+                        + "of your subscription type.");
+                return;
+            }
+            if (random.nextDouble() < settings.getErrorRate()) {
+                injectedErrors.incrementAndGet();
+                sendError(exchange, 500, "Internal server error");
+                return;
+            }
+
+            Map<String, String> params = parseQuery(exchange.getRequestURI().getRawQuery());
+            Object body;
+            try {
+                body = responseBuilder.build(params, random);
+            } catch (IllegalArgumentException e) {
+                sendError(exchange, 400, e.getMessage());
+                return;
+            }
+
+            send(exchange, 200, OBJECT_MAPPER.writeValueAsBytes(body));
+
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private Random buildRandom(HttpExchange exchange) {
+        String uri = exchange.getRequestURI().toString();
+        long occurrence = requestsByUri.computeIfAbsent(uri, key -> new AtomicLong()).getAndIncrement();
+
+        return new Random(Objects.hash(settings.getSeed(), uri, occurrence));
+    }
+
+    private synchronized boolean tryPassRateLimit() {
+        if (settings.getRateLimitPerSecond() <= 0) {
+            return true;
+        }
+
+        long window = System.currentTimeMillis() / 1000;
+        if (window != rateLimitWindow) {
+            rateLimitWindow = window;
+            rateLimitWindowRequests = 0;
+        }
+        return ++rateLimitWindowRequests <= settings.getRateLimitPerSecond();
+    }
+
+    private ObjectNode buildWeather(Map<String, String> params, Random random) {
+        double latitude = parseCoordinate(params, "lat", 90);
+        double longitude = parseCoordinate(params, "lon", 180);
+        Instant now = Instant.now();
+
+        ObjectNode weather = OBJECT_MAPPER.createObjectNode();
+        weather.set("coord", buildCoordinates(latitude, longitude));
+        addConditions(weather, latitude, longitude, now.getEpochSecond(), 0);
+        weather.put("base", "stations");
+        weather.put("visibility", 10000);
+        weather.put("dt", now.getEpochSecond());
+
+        ObjectNode sys = weather.putObject("sys");
+        sys.put("country", nearestCity(latitude, longitude).getCountry());
+        sys.put("sunrise", getSunrise(now, longitude));
+        sys.put("sunset", getSunrise(now, longitude) + 12 * 60 * 60);
+
+        weather.put("timezone", 0);
+        weather.put("id", 0);
+        weather.put("name", nearestCity(latitude, longitude).getName());
+        weather.put("cod", 200);
+        return weather;
+    }
+
+    private ObjectNode buildForecast(Map<String, String> params, Random random) {
+        double latitude = parseCoordinate(params, "lat", 90);
+        double longitude = parseCoordinate(params, "lon", 180);
+        Instant now = Instant.now();
+
+        // The first step is the next one on the 3 hour grid, like in the api
+        long firstStep = (now.getEpochSecond() / FORECAST_STEP_SECONDS + 1) * FORECAST_STEP_SECONDS;
+
+        ObjectNode forecast = OBJECT_MAPPER.createObjectNode();
+        forecast.put("cod", "200");
+        forecast.put("message", 0);
+        forecast.put("cnt", FORECAST_STEPS);
+
+        ArrayNode list = forecast.putArray("list");
+        for (int step = 0; step < FORECAST_STEPS; step++) {
+            long time = firstStep + step * FORECAST_STEP_SECONDS;
+
+            ObjectNode hourlyForecast = list.addObject();
+            hourlyForecast.put("dt", time);
+            addConditions(hourlyForecast, latitude, longitude, time, step);
+            hourlyForecast.put("visibility", 10000);
+            hourlyForecast.put("pop", Math.round(random.nextDouble() * 100) / 100.0);
+            hourlyForecast.putObject("sys").put("pod", isDay(time, longitude) ? "d" : "n");
+            hourlyForecast.put("dt_txt", FORECAST_TIME_FORMATTER.format(Instant.ofEpochSecond(time)));
+        }
+
+        City city = nearestCity(latitude, longitude);
+        ObjectNode cityNode = forecast.putObject("city");
+        cityNode.put("id", 0);
+        cityNode.put("name", city.getName());
+        cityNode.set("coord", buildCoordinates(latitude, longitude));
+        cityNode.put("country", city.getCountry());
+        cityNode.put("timezone", 0);
+        cityNode.put("sunrise", getSunrise(now, longitude));
+        cityNode.put("sunset", getSunrise(now, longitude) + 12 * 60 * 60);
+        return forecast;
+    }
+
+    private ArrayNode buildLocations(Map<String, String> params, Random random) {
+        String query = params.get("q");
+        if (query == null || query.isBlank()) {
+            throw new IllegalArgumentException("Nothing to geocode");
+        }
+
+        // The api returns a single location when no limit is given
+        int limit = params.containsKey("limit") ? Integer.parseInt(params.get("limit")) : 1;
+        String name = query.split(",")[0].strip().toLowerCase(Locale.ROOT);
+
+        ArrayNode locations = OBJECT_MAPPER.createArrayNode();
+        for (City city : CITIES) {
+            if (locations.size() < limit && city.getName().toLowerCase(Locale.ROOT).startsWith(name)) {
+                ObjectNode location = locations.addObject();
+                location.put("name", city.getName());
+                location.put("lat", city.getLatitude());
+                location.put("lon", city.getLongitude());
+                location.put("country", city.getCountry());
+            }
+        }
+        return locations;
+    }
+
+    /**
+     * Values depend on the coordinates and the time only, so repeated calls for the same place
+     * agree with each other
+     */
+    private static void addConditions(ObjectNode node, double latitude, double longitude, long time, int step) {
+        Random placeRandom = new Random(Double.hashCode(latitude) * 31L + Double.hashCode(longitude));
+        double baseTemperature = 25 - Math.abs(latitude) / 2 + placeRandom.nextGaussian() * 3;
+        double temperature = round(baseTemperature + 5 * Math.sin(2 * Math.PI * (time % 86400) / 86400.0));
+        Condition condition = CONDITIONS.get(Math.floorMod(placeRandom.nextInt() + step / 4, CONDITIONS.size()));
+
+        ObjectNode main = node.putObject("main");
+        main.put("temp", temperature);
+        main.put("feels_like", round(temperature - 1.5));
+        main.put("temp_min", round(temperature - 1));
+        main.put("temp_max", round(temperature + 1));
+        main.put("pressure", 1000 + placeRandom.nextInt(30));
+        main.put("humidity", 40 + placeRandom.nextInt(55));
+
+        ObjectNode weather = node.putArray("weather").addObject();
+        weather.put("id", condition.getId());
+        weather.put("main", condition.getMain());
+        weather.put("description", condition.getDescription());
+        weather.put("icon", condition.getIcon() + (isDay(time, longitude) ? "d" : "n"));
+
+        ObjectNode wind = node.putObject("wind");
+        wind.put("speed", round(placeRandom.nextDouble() * 10));
+        wind.put("deg", placeRandom.nextInt(360));
+        wind.put("gust", round(placeRandom.nextDouble() * 15));
+
+        node.putObject("clouds").put("all", placeRandom.nextInt(101));
+    }
+
+    private static ObjectNode buildCoordinates(double latitude, double longitude) {
+        ObjectNode coordinates = OBJECT_MAPPER.createObjectNode();
+        coordinates.put("lon", longitude);
+        coordinates.put("lat", latitude);
+        return coordinates;
+    }
+
+    private static City nearestCity(double latitude, double longitude) {
+        City nearest = CITIES.get(0);
+        double nearestDistance = Double.MAX_VALUE;
+
+        for (City city : CITIES) {
+            double distance = Math.pow(city.getLatitude() - latitude, 2) + Math.pow(city.getLongitude() - longitude, 2);
+            if (distance < nearestDistance) {
+                nearest = city;
+                nearestDistance = distance;
+            }
+        }
+        return nearest;
+    }
+
+    private static long getSunrise(Instant now, double longitude) {
+        // Six in the morning of local solar time
+        long startOfDay = now.getEpochSecond() / 86400 * 86400;
+        return startOfDay + 6 * 60 * 60 - Math.round(longitude / 15 * 60 * 60);
+    }
+
+    private static boolean isDay(long time, double longitude) {
+        long localSeconds = Math.floorMod(time + Math.round(longitude / 15 * 60 * 60), 86400L);
+        return localSeconds >= 6 * 60 * 60 && localSeconds < 18 * 60 * 60;
+    }
+
+    private static double parseCoordinate(Map<String, String> params, String name, double bound) {
+        String value = params.get(name);
+        if (value == null) {
+            throw new IllegalArgumentException("Nothing to geocode");
+        }
+
+        try {
+            double coordinate = Double.parseDouble(value);
+            if (Math.abs(coordinate) > bound) {
+                throw new IllegalArgumentException("wrong " + (name.equals("lat") ? "latitude" : "longitude"));
+            }
+            return coordinate;
+
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("wrong " + (name.equals("lat") ? "latitude" : "longitude"));
+        }
+    }
+
+    private static Map<String, String> parseQuery(String rawQuery) {
+        Map<String, String> params = new HashMap<>();
+        if (rawQuery == null) {
+            return params;
+        }
+
+        for (String pair : rawQuery.split("&")) {
+            int separator = pair.indexOf('=');
+            if (separator > 0) {
+                params.put(
+                        URLDecoder.decode(pair.substring(0, separator), StandardCharsets.UTF_8),
+                        URLDecoder.decode(pair.substring(separator + 1), StandardCharsets.UTF_8)
+                );
+            }
+        }
+        return params;
+    }
+
+    private static void sendError(HttpExchange exchange, int status, String message) throws IOException {
+        ObjectNode error = OBJECT_MAPPER.createObjectNode();
+        error.put("cod", String.valueOf(status));
+        error.put("message", message);
+        send(exchange, status, OBJECT_MAPPER.writeValueAsBytes(error));
+    }
+
+    private static void send(HttpExchange exchange, int status, byte[] body) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+
+        String acceptEncoding = exchange.getRequestHeaders().getFirst("Accept-Encoding");
+        if (acceptEncoding != null && acceptEncoding.contains("gzip")) {
+            ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+            try (GZIPOutputStream gzip = new GZIPOutputStream(compressed)) {
+                gzip.write(body);
+            }
+            body = compressed.toByteArray();
+            exchange.getResponseHeaders().set("Content-Encoding", "gzip");
+        }
+
+        exchange.sendResponseHeaders(status, body.length);
+        try (OutputStream responseBody = exchange.getResponseBody()) {
+            responseBody.write(body);
+        }
+    }
+
+    private static void sleep(long millis) {
+        if (millis <= 0) {
+            return;
+        }
+
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static double round(double value) {
+        return Math.round(value * 100) / 100.0;
+    }
+
+    private interface ResponseBuilder {
+        Object build(Map<String, String> params, Random random);
+    }
+
+    @Getter
+    @AllArgsConstructor
+    private static class Condition {
+        private final int id;
+
+        private final String main;
+
+        private final String description;
+
+        private final String icon;
+    }
+
+    @Getter
+    @AllArgsConstructor
+    private static class City {
+        private final String name;
+
+        private final double latitude;
+
+        private final double longitude;
+
+        private final String country;
+    }
+}
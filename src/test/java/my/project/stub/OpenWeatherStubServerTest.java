@@ -0,0 +1,71 @@
+package my.project.stub;
+
+import my.project.model.Location;
+import my.project.model.api.ForecastApiResponse;
+import my.project.model.api.LocationApiResponse;
+import my.project.model.api.WeatherApiResponse;
+import my.project.service.WeatherApiService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CompletionException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class OpenWeatherStubServerTest {
+    private OpenWeatherStubServer stubServer;
+
+    @AfterEach
+    public void tearDown() {
+        stubServer.stop();
+    }
+
+    @Test
+    public void start_defaultSettings_shouldServeResponsesParsedByApiService() throws IOException {
+        WeatherApiService weatherApiService = startStubServer(StubServerSettings.builder().build());
+        Location london = new Location("London", List.of(), 51.5073, -0.1276);
+
+        WeatherApiResponse weather = weatherApiService.getWeatherForLocationAsync(london).join();
+        ForecastApiResponse forecast = weatherApiService.getForecastForLocationAsync(london).join();
+        List<LocationApiResponse> locations = weatherApiService.getLocationsByNameAsync("london").join();
+
+        assertNotNull(weather.getMain().getTemperature());
+        assertNotNull(weather.getSys().getSunriseTime());
+        assertEquals(40, forecast.getForecasts().size());
+        assertEquals(2, locations.size());
+        assertEquals("GB", locations.get(0).getCountry());
+    }
+
+    @Test
+    public void start_fullErrorRate_shouldFailEveryCall() throws IOException {
+        WeatherApiService weatherApiService = startStubServer(StubServerSettings.builder().errorRate(1).build());
+        Location london = new Location("London", List.of(), 51.5073, -0.1276);
+
+        assertThrows(
+                CompletionException.class,
+                () -> weatherApiService.getWeatherForLocationAsync(london).join()
+        );
+        assertEquals(1, stubServer.getInjectedErrors());
+    }
+
+    @Test
+    public void start_rateLimitExceeded_shouldThrottleExcessCalls() throws IOException {
+        WeatherApiService weatherApiService = startStubServer(StubServerSettings.builder().rateLimitPerSecond(1).build());
+        Location london = new Location("London", List.of(), 51.5073, -0.1276);
+
+        // Both calls may land in different seconds, so a third one makes sure one window gets two
+        for (int i = 0; i < 3; i++) {
+            weatherApiService.getWeatherForLocationAsync(london).exceptionally(throwable -> null).join();
+        }
+
+        assertTrue(stubServer.getThrottledRequests() >= 1);
+    }
+
+    private WeatherApiService startStubServer(StubServerSettings settings) throws IOException {
+        stubServer = new OpenWeatherStubServer(settings);
+        stubServer.start();
+        return new WeatherApiService(stubServer.getBaseUrl());
+    }
+}
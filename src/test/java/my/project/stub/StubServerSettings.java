@@ -0,0 +1,30 @@
+package my.project.stub;
+
+import lombok.Builder;
+import lombok.Getter;
+
+@Getter
+@Builder
+public class StubServerSettings {
+    // Zero picks a free port
+    @Builder.Default
+    private final int port = 0;
+
+    @Builder.Default
+    private final LatencyDistribution latency = LatencyDistribution.fixed(0);
+
+    // Share of requests answered with 500, from 0 to 1
+    @Builder.Default
+    private final double errorRate = 0;
+
+    // Requests per second above which 429 is returned, zero means no limit
+    @Builder.Default
+    private final int rateLimitPerSecond = 0;
+
+    // Same seed gives the same latencies and errors for the same requests, see OpenWeatherStubServer
+    @Builder.Default
+    private final long seed = 42;
+
+    @Builder.Default
+    private final int threads = 64;
+}
@@ -0,0 +1,73 @@
+package my.project.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ContentEncodingUtilTest {
+    private static final String BODY = "{\"name\":\"London\",\"main\":{\"temp\":12.5,\"humidity\":80}}";
+
+    @Test
+    public void decode_concatenatedGzipMembers_shouldDecodeEveryMember() throws IOException {
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        body.write(gzip("{\"name\":"));
+        body.write(gzip("\"London\"}"));
+
+        try (InputStream decoded = ContentEncodingUtil.decode(new ByteArrayInputStream(body.toByteArray()), "gzip")) {
+            assertEquals("{\"name\":\"London\"}", new String(decoded.readAllBytes(), StandardCharsets.UTF_8));
+        }
+    }
+
+    @Test
+    public void decode_gzipWithWrongCrc_shouldThrowIOException() throws IOException {
+        byte[] body = gzip(BODY);
+        body[body.length - 8] ^= 1;
+
+        InputStream decoded = ContentEncodingUtil.decode(new ByteArrayInputStream(body), "gzip");
+
+        assertThrows(IOException.class, decoded::readAllBytes);
+    }
+
+    @Test
+    public void decode_gzipWithWrongLength_shouldThrowIOException() throws IOException {
+        byte[] body = gzip(BODY);
+        body[body.length - 4] ^= 1;
+
+        InputStream decoded = ContentEncodingUtil.decode(new ByteArrayInputStream(body), "gzip");
+
+        assertThrows(IOException.class, decoded::readAllBytes);
+    }
+
+    @Test
+    public void close_partlyReadGzip_shouldCheckTrailerAndCountEveryWireByte() throws IOException {
+        byte[] body = gzip(BODY);
+        long wireBytesBefore = ContentEncodingUtil.getWireBytes();
+
+        InputStream decoded = ContentEncodingUtil.decode(new ByteArrayInputStream(body), "gzip");
+        decoded.read();
+        decoded.close();
+
+        assertEquals(body.length, ContentEncodingUtil.getWireBytes() - wireBytesBefore);
+
+        body[body.length - 8] ^= 1;
+        InputStream corrupt = ContentEncodingUtil.decode(new ByteArrayInputStream(body), "gzip");
+        corrupt.read();
+
+        assertThrows(IOException.class, corrupt::close);
+    }
+
+    private static byte[] gzip(String text) throws IOException {
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        try (GZIPOutputStream gzip = new GZIPOutputStream(compressed)) {
+            gzip.write(text.getBytes(StandardCharsets.UTF_8));
+        }
+        return compressed.toByteArray();
+    }
+}